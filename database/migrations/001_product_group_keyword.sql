@@ -0,0 +1,25 @@
+-- 001: Từ khóa phân loại danh mục (CategoryClassifier)
+-- Server nạp bảng này khi khởi động; nếu bảng rỗng sẽ dùng bộ từ khóa có sẵn trong TikiScraperUtil.
+-- priority: số lớn thắng khi nhiều từ khóa cùng khớp; cùng priority thì từ khóa dài hơn thắng.
+
+CREATE TABLE IF NOT EXISTS product_group_keyword (
+  keyword_id INT AUTO_INCREMENT PRIMARY KEY,
+  group_id INT NOT NULL,
+  keyword VARCHAR(100) NOT NULL,
+  priority INT NOT NULL DEFAULT 20,
+  UNIQUE KEY uq_keyword (keyword),
+  FOREIGN KEY (group_id) REFERENCES product_group(group_id)
+);
+
+-- Dữ liệu ban đầu = bộ từ khóa có sẵn (30 = tên danh mục, 20 = sản phẩm, 10 = từ ngắn dễ nhầm)
+INSERT IGNORE INTO product_group_keyword (group_id, keyword, priority) VALUES
+  (1, 'điện tử', 30), (1, 'điện thoại', 20), (1, 'smartphone', 20), (1, 'laptop', 20),
+  (1, 'máy tính', 20), (1, 'tablet', 20), (1, 'ipad', 20),
+  (2, 'điện gia dụng', 30), (2, 'tủ lạnh', 20), (2, 'máy giặt', 20), (2, 'lò vi sóng', 20),
+  (2, 'nồi cơm', 20), (2, 'quạt', 10),
+  (3, 'thời trang', 30), (3, 'phụ kiện thời trang', 30), (3, 'quần áo', 20), (3, 'túi xách', 20),
+  (3, 'giày', 10),
+  (4, 'làm đẹp', 30), (4, 'mỹ phẩm', 20), (4, 'chăm sóc da', 20), (4, 'nước hoa', 20), (4, 'son', 10),
+  (5, 'nhà sách', 30), (5, 'văn học', 20), (5, 'tiểu thuyết', 20), (5, 'sách', 10),
+  (6, 'đồ chơi', 30), (6, 'mẹ và bé', 30), (6, 'đồ chơi trẻ em', 20),
+  (7, 'thể thao', 30), (7, 'dụng cụ thể thao', 20), (7, 'yoga', 20), (7, 'gym', 10);
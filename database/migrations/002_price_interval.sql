@@ -0,0 +1,52 @@
+-- 002: Lưu lịch sử giá dạng khoảng (run-length) thay cho từng dòng price_history
+-- Mỗi dòng = một mức giá (price, original_price, currency, deal_type) giữ nguyên từ valid_from đến valid_to.
+-- Quan sát giống khoảng đang mở chỉ kéo dài valid_to; khác thì mở khoảng mới (PriceHistoryBatchWriter).
+-- Khoảng đang mở của một sản phẩm = dòng có interval_id lớn nhất.
+-- Yêu cầu MySQL 8 / MariaDB 10.2+ (hàm cửa sổ LAG).
+
+CREATE TABLE IF NOT EXISTS price_interval (
+  interval_id INT AUTO_INCREMENT PRIMARY KEY,
+  product_id INT NOT NULL,
+  price DECIMAL(15,2),
+  original_price DECIMAL(15,2),
+  currency VARCHAR(10),
+  deal_type ENUM('NORMAL','FLASH_SALE','HOT_DEAL','TRENDING') DEFAULT 'NORMAL',
+  valid_from DATETIME NOT NULL,
+  valid_to DATETIME NOT NULL,
+  observation_count INT NOT NULL DEFAULT 1,
+  KEY idx_interval_product_from (product_id, valid_from),
+  FOREIGN KEY (product_id) REFERENCES product(product_id)
+);
+
+-- Nén dữ liệu price_history có sẵn: các dòng liên tiếp (theo recorded_at) cùng giá gộp thành một khoảng.
+-- is_change = 1 khi dòng khác dòng trước; tổng cộng dồn của is_change đánh số "run".
+-- Chỉ chạy khi price_interval còn rỗng để có thể chạy lại file này an toàn.
+INSERT INTO price_interval
+  (product_id, price, original_price, currency, deal_type, valid_from, valid_to, observation_count)
+SELECT product_id, price, original_price, currency, deal_type,
+       MIN(recorded_at), MAX(recorded_at), COUNT(*)
+FROM (
+  SELECT changes.*,
+         SUM(is_change) OVER (PARTITION BY product_id ORDER BY recorded_at, price_id) AS run_id
+  FROM (
+    SELECT ph.product_id, ph.price_id, ph.price, ph.original_price,
+           COALESCE(ph.currency, 'VND') AS currency,
+           COALESCE(ph.deal_type, 'NORMAL') AS deal_type,
+           ph.recorded_at,
+           CASE WHEN LAG(ph.price) OVER w <=> ph.price
+                 AND LAG(ph.original_price) OVER w <=> ph.original_price
+                 AND LAG(COALESCE(ph.currency, 'VND')) OVER w <=> COALESCE(ph.currency, 'VND')
+                 AND LAG(COALESCE(ph.deal_type, 'NORMAL')) OVER w <=> COALESCE(ph.deal_type, 'NORMAL')
+                THEN 0 ELSE 1 END AS is_change
+    FROM price_history ph
+    WHERE ph.product_id IS NOT NULL AND ph.recorded_at IS NOT NULL
+    WINDOW w AS (PARTITION BY ph.product_id ORDER BY ph.recorded_at, ph.price_id)
+  ) changes
+) runs
+WHERE NOT EXISTS (SELECT 1 FROM price_interval)
+GROUP BY product_id, run_id, price, original_price, currency, deal_type
+ORDER BY product_id, MIN(recorded_at);
+
+-- Kiểm tra: số khoảng so với số dòng gốc
+-- SELECT (SELECT COUNT(*) FROM price_history) AS raw_rows, (SELECT COUNT(*) FROM price_interval) AS intervals;
+-- price_history được giữ lại làm bản gốc; có thể xóa sau khi đã kiểm tra dữ liệu.
@@ -0,0 +1,61 @@
+-- 003: Giá tổng hợp theo ngày / tuần cho biểu đồ khoảng thời gian dài
+-- Mỗi dòng = một sản phẩm trong một bucket (ngày, hoặc tuần bắt đầu từ thứ Hai):
+-- open/close = giá của lần quan sát đầu/cuối, min/max, sum_price/sample_count = trung bình.
+-- PriceHistoryBatchWriter cộng dồn vào bảng này trong cùng transaction ghi price_interval.
+-- Chạy cùng lúc với 002, trước khi khởi động server mới (phần điền dữ liệu đọc price_history gốc).
+
+CREATE TABLE IF NOT EXISTS price_rollup (
+  product_id INT NOT NULL,
+  resolution ENUM('DAY','WEEK') NOT NULL,
+  bucket_start DATE NOT NULL,
+  open_price DECIMAL(15,2),
+  open_at DATETIME NOT NULL,
+  close_price DECIMAL(15,2),
+  close_at DATETIME NOT NULL,
+  min_price DECIMAL(15,2),
+  max_price DECIMAL(15,2),
+  sum_price DECIMAL(20,2) NOT NULL DEFAULT 0,
+  sample_count INT NOT NULL DEFAULT 0,
+  PRIMARY KEY (product_id, resolution, bucket_start),
+  FOREIGN KEY (product_id) REFERENCES product(product_id)
+);
+
+-- Điền dữ liệu cũ một lần từ price_history (chỉ khi bucket loại đó còn rỗng)
+-- FIRST_VALUE theo thời gian tăng / giảm dần cho giá mở / đóng của mỗi bucket.
+INSERT INTO price_rollup
+  (product_id, resolution, bucket_start, open_price, open_at, close_price, close_at,
+   min_price, max_price, sum_price, sample_count)
+SELECT product_id, 'DAY', bucket_start,
+       MAX(open_price), MIN(recorded_at), MAX(close_price), MAX(recorded_at),
+       MIN(price), MAX(price), SUM(price), COUNT(*)
+FROM (
+  SELECT ph.product_id, ph.price, ph.recorded_at,
+         DATE(ph.recorded_at) AS bucket_start,
+         FIRST_VALUE(ph.price) OVER (PARTITION BY ph.product_id, DATE(ph.recorded_at)
+                                     ORDER BY ph.recorded_at, ph.price_id) AS open_price,
+         FIRST_VALUE(ph.price) OVER (PARTITION BY ph.product_id, DATE(ph.recorded_at)
+                                     ORDER BY ph.recorded_at DESC, ph.price_id DESC) AS close_price
+  FROM price_history ph
+  WHERE ph.product_id IS NOT NULL AND ph.recorded_at IS NOT NULL AND ph.price IS NOT NULL
+) daily
+WHERE NOT EXISTS (SELECT 1 FROM price_rollup WHERE resolution = 'DAY')
+GROUP BY product_id, bucket_start;
+
+INSERT INTO price_rollup
+  (product_id, resolution, bucket_start, open_price, open_at, close_price, close_at,
+   min_price, max_price, sum_price, sample_count)
+SELECT product_id, 'WEEK', bucket_start,
+       MAX(open_price), MIN(recorded_at), MAX(close_price), MAX(recorded_at),
+       MIN(price), MAX(price), SUM(price), COUNT(*)
+FROM (
+  SELECT ph.product_id, ph.price, ph.recorded_at,
+         DATE(ph.recorded_at) - INTERVAL WEEKDAY(ph.recorded_at) DAY AS bucket_start,
+         FIRST_VALUE(ph.price) OVER (PARTITION BY ph.product_id, YEARWEEK(ph.recorded_at, 3)
+                                     ORDER BY ph.recorded_at, ph.price_id) AS open_price,
+         FIRST_VALUE(ph.price) OVER (PARTITION BY ph.product_id, YEARWEEK(ph.recorded_at, 3)
+                                     ORDER BY ph.recorded_at DESC, ph.price_id DESC) AS close_price
+  FROM price_history ph
+  WHERE ph.product_id IS NOT NULL AND ph.recorded_at IS NOT NULL AND ph.price IS NOT NULL
+) weekly
+WHERE NOT EXISTS (SELECT 1 FROM price_rollup WHERE resolution = 'WEEK')
+GROUP BY product_id, bucket_start;
@@ -0,0 +1,34 @@
+-- 004: Thống kê review theo sản phẩm (số lượng, tổng điểm, phân bố 1-5 sao, ngày review mới nhất)
+-- ReviewDAO.addReview cập nhật bảng này trong cùng transaction với lệnh INSERT vào review,
+-- nên trang chi tiết đọc số review / điểm trung bình bằng một dòng thay vì COUNT(*) và duyệt toàn bộ review.
+-- Điểm được làm tròn về 1..5 sao khi xếp vào star_1..star_5; rating_sum giữ điểm gốc.
+
+CREATE TABLE IF NOT EXISTS review_aggregate (
+  product_id INT PRIMARY KEY,
+  review_count INT NOT NULL DEFAULT 0,
+  rating_sum DECIMAL(12,1) NOT NULL DEFAULT 0,
+  star_1 INT NOT NULL DEFAULT 0,
+  star_2 INT NOT NULL DEFAULT 0,
+  star_3 INT NOT NULL DEFAULT 0,
+  star_4 INT NOT NULL DEFAULT 0,
+  star_5 INT NOT NULL DEFAULT 0,
+  latest_review_date DATETIME NULL,
+  FOREIGN KEY (product_id) REFERENCES product(product_id)
+);
+
+-- Điền dữ liệu cũ một lần (chỉ khi bảng còn rỗng)
+INSERT INTO review_aggregate
+  (product_id, review_count, rating_sum, star_1, star_2, star_3, star_4, star_5, latest_review_date)
+SELECT product_id,
+       COUNT(*),
+       COALESCE(SUM(rating), 0),
+       SUM(stars = 1), SUM(stars = 2), SUM(stars = 3), SUM(stars = 4), SUM(stars = 5),
+       MAX(review_date)
+FROM (
+  SELECT product_id, rating, review_date,
+         LEAST(5, GREATEST(1, ROUND(COALESCE(rating, 0)))) AS stars
+  FROM review
+  WHERE product_id IS NOT NULL
+) r
+WHERE NOT EXISTS (SELECT 1 FROM review_aggregate)
+GROUP BY product_id;
@@ -57,20 +57,22 @@ function showError(message) {
     `;
 }
 
+// Sections of the detail page, each fetched on its own (see the "include" param of /api/products/{id})
+const HEADER_SECTIONS = 'price';
+const REVIEWS_SECTION = 'reviews:10';
+const SIMILAR_SECTION = 'similar:16';
+
 /**
- * Fetch product detail from backend
+ * Fetch product detail sections from backend
+ * @param include Sections to load, e.g. 'price' or 'reviews:10' (the product itself always comes back)
+ * @param extraQuery Additional query string, e.g. '&max_points=600'
  */
-async function fetchProductDetail(productId) {
+async function fetchProductDetail(productId, include, extraQuery = '') {
     try {
-        console.log(`🔍 Fetching product detail for ID: ${productId}`);
+        console.log(`🔍 Fetching product detail for ID: ${productId} [${include}]`);
         
-        const response = await fetch(`${API_BASE_URL}/product-detail`, {
-            method: 'POST',
-            headers: {
-                'Content-Type': 'application/json'
-            },
-            body: JSON.stringify({ product_id: productId })
-        });
+        const response = await fetch(`${API_BASE_URL}/api/products/${encodeURIComponent(productId)}` +
+                                     `?include=${encodeURIComponent(include)}${extraQuery}`);
         
         if (!response.ok) {
             throw new Error(`HTTP error! status: ${response.status}`);
@@ -94,7 +96,7 @@ async function fetchProductDetail(productId) {
 /**
  * Populate product header section
  */
-function populateProductHeader(product, price, reviews) {
+function populateProductHeader(product, price) {
     // Product image
     const productImage = document.querySelector('.product-image');
     if (productImage) {
@@ -119,7 +121,7 @@ function populateProductHeader(product, price, reviews) {
         badgeContainer.appendChild(discountBadge);
         
         // Deal type badge
-        if (price.deal_type && price.deal_type !== 'Normal') {
+        if (price.deal_type && price.deal_type.toUpperCase() !== 'NORMAL') {
             const dealBadge = document.createElement('div');
             dealBadge.className = 'badge hot-deal';
             let dealText = '🔥 Hot Deal';
@@ -281,9 +283,13 @@ function populatePriceHistory(priceHistory, currency = 'VND') {
     
     const data = sorted.map(p => p.price);
     
+    // Daily/weekly points carry the bucket's min/max; raw points only have price
+    const lows = sorted.map(p => p.min_price ?? p.price);
+    const highs = sorted.map(p => p.max_price ?? p.price);
+    
     // Find lowest price
-    const lowestPrice = Math.min(...data);
-    const minIndex = data.indexOf(lowestPrice);
+    const lowestPrice = Math.min(...lows);
+    const minIndex = lows.indexOf(lowestPrice);
     
     // Get current price
     const currentPrice = sorted[sorted.length - 1].price;
@@ -292,8 +298,8 @@ function populatePriceHistory(priceHistory, currency = 'VND') {
     const analysis = generatePriceAnalysis(priceHistory, currentPrice, currency);
     
     // Calculate stats
-    const highestPrice = Math.max(...data);
-    const avgPrice = data.reduce((a, b) => a + b, 0) / data.length;
+    const highestPrice = Math.max(...highs);
+    const avgPrice = sorted.reduce((sum, p) => sum + (p.avg_price ?? p.price), 0) / sorted.length;
     
     // Calculate discount percentage
     const discountPercent = highestPrice > currentPrice 
@@ -575,8 +581,12 @@ function populateReviews(reviewsData) {
     }
     
     reviewsList.innerHTML = '';
-    
-    reviewsData.reviews.forEach(review => {
+    appendReviewCards(reviewsList, reviewsData.reviews);
+    updateMoreReviewsButton(reviewsList, reviewsData.next_cursor);
+}
+
+function appendReviewCards(reviewsList, reviews) {
+    reviews.forEach(review => {
         const reviewCard = document.createElement('div');
         reviewCard.className = 'review-card';
         
@@ -601,6 +611,43 @@ function populateReviews(reviewsData) {
     });
 }
 
+/**
+ * "Xem thêm đánh giá" button - fetches the next page from /reviews while next_cursor is set
+ */
+function updateMoreReviewsButton(reviewsList, nextCursor) {
+    let button = document.getElementById('btn_more_reviews');
+    if (!nextCursor) {
+        if (button) button.remove();
+        return;
+    }
+    if (!button) {
+        button = document.createElement('button');
+        button.id = 'btn_more_reviews';
+        button.className = 'btn-more-reviews';
+        button.textContent = 'Xem thêm đánh giá';
+        reviewsList.insertAdjacentElement('afterend', button);
+    }
+    button.disabled = false;
+    button.onclick = async () => {
+        button.disabled = true;
+        try {
+            const response = await fetch(`${API_BASE_URL}/reviews`, {
+                method: 'POST',
+                headers: { 'Content-Type': 'application/json' },
+                body: JSON.stringify({ product_id: getProductIdFromURL(), cursor: nextCursor })
+            });
+            const data = await response.json();
+            if (!data.success) throw new Error(data.error);
+            
+            appendReviewCards(reviewsList, data.reviews);
+            updateMoreReviewsButton(reviewsList, data.next_cursor);
+        } catch (error) {
+            console.error('❌ Error loading more reviews:', error);
+            button.disabled = false;
+        }
+    };
+}
+
 /**
  * Format currency
  */
@@ -627,8 +674,55 @@ function formatDate(dateString) {
     });
 }
 
+/**
+ * History query params: no point sending more points than the chart has pixels; rounded up to a
+ * multiple of 100 so similar screens share one cached URL
+ */
+function historyQuery() {
+    const canvas = document.getElementById('priceChart');
+    const chartWidth = Math.max(50, Math.round((canvas && canvas.clientWidth) || 600));
+    return `&max_points=${Math.ceil(chartWidth / 100) * 100}`;
+}
+
+/**
+ * Run load() once the element scrolls near the viewport (right away without IntersectionObserver)
+ */
+function loadWhenVisible(selector, load) {
+    const element = document.querySelector(selector);
+    if (!element || !('IntersectionObserver' in window)) {
+        load();
+        return;
+    }
+    const observer = new IntersectionObserver(entries => {
+        if (entries.some(entry => entry.isIntersecting)) {
+            observer.disconnect();
+            load();
+        }
+    }, { rootMargin: '400px' });
+    observer.observe(element);
+}
+
+/**
+ * Keep the header price live: the server pushes a "price" event whenever this product's price changes
+ * (EventSource reconnects by itself and is replayed the events it missed)
+ */
+function subscribeToPriceChanges(productId, product) {
+    if (!('EventSource' in window)) return;
+    const stream = new EventSource(`${API_BASE_URL}/api/stream/prices?products=${encodeURIComponent(productId)}`);
+    stream.addEventListener('price', event => {
+        const price = JSON.parse(event.data);
+        console.log('📡 Live price update:', price);
+        // Badges are only re-added while discounted, so clear them for a price back to normal
+        document.querySelectorAll('.product-image-section .badge').forEach(b => b.remove());
+        populateProductHeader(product, price);
+    });
+    window.addEventListener('pagehide', () => stream.close());
+}
+
 /**
  * Initialize product detail page
+ * The header (product + current price) is a small request of its own so it paints first;
+ * chart and reviews load in parallel, similar products only when scrolled near.
  */
 async function initializeProductDetail() {
     try {
@@ -639,16 +733,29 @@ async function initializeProductDetail() {
         // Show loading state
         console.log('🔄 Loading product detail...');
         
-        // Fetch data from backend
-        const data = await fetchProductDetail(productId);
+        // Fetch data from backend - all requests start now, the header is awaited first
+        const headerRequest = fetchProductDetail(productId, HEADER_SECTIONS);
+        const historyRequest = fetchProductDetail(productId, 'history', historyQuery());
+        const reviewsRequest = fetchProductDetail(productId, REVIEWS_SECTION);
         
-        // Populate all sections
-        populateProductHeader(data.product, data.price, data.reviews);
-        populatePriceHistory(data.price_history, data.price.currency);
-        populateSimilarProducts(data.similar_products, data.price.currency);
-        populateReviews(data.reviews);
+        const data = await headerRequest;
+        const currency = data.price.currency;
+        populateProductHeader(data.product, data.price);
+        subscribeToPriceChanges(productId, data.product);
+        
+        historyRequest
+            .then(history => populatePriceHistory(history.price_history, currency))
+            .catch(error => console.error('❌ Failed to load price history:', error));
+        reviewsRequest
+            .then(reviews => populateReviews(reviews.reviews))
+            .catch(error => console.error('❌ Failed to load reviews:', error));
+        loadWhenVisible('.similar-products-section', () => {
+            fetchProductDetail(productId, SIMILAR_SECTION)
+                .then(similar => populateSimilarProducts(similar.similar_products, currency))
+                .catch(error => console.error('❌ Failed to load similar products:', error));
+        });
         
-        console.log('✅ Product detail page loaded successfully');
+        console.log('✅ Product detail header loaded');
         
     } catch (error) {
         console.error('❌ Failed to load product detail:', error);
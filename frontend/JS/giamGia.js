@@ -15,6 +15,23 @@ let allProductsData = {
     trending: []
 };
 
+// Phân trang phía server: mỗi lần lấy DEALS_PAGE_LIMIT sản phẩm mỗi section, next_cursor để lấy trang sau
+const DEALS_PAGE_LIMIT = 40;
+let nextCursors = {
+    ALL: null,
+    FLASH_SALE: null,
+    HOT_DEAL: null,
+    TRENDING: null
+};
+
+// Section nào lấy dữ liệu từ deal_type nào
+const SECTION_SOURCE = {
+    deal_hot: 'ALL',
+    flash_sale: 'FLASH_SALE',
+    hot_deal: 'HOT_DEAL',
+    trending: 'TRENDING'
+};
+
 // Lưu trữ số lượng đang hiển thị
 let displayedCounts = {
     deal_hot: 0,
@@ -23,54 +40,93 @@ let displayedCounts = {
     trending: 0
 };
 
+/**
+ * GET một API đọc dữ liệu; tham số xếp theo tên để cùng một trang luôn có cùng một URL
+ * (trình duyệt / proxy / CDN cache và kiểm tra lại bằng ETag)
+ */
+async function fetchApi(path, params = {}) {
+    const query = Object.keys(params)
+        .filter(name => params[name] !== null && params[name] !== undefined)
+        .sort()
+        .map(name => `${encodeURIComponent(name)}=${encodeURIComponent(params[name])}`)
+        .join('&');
+    const response = await fetch(`${API_BASE_URL}${path}${query ? '?' + query : ''}`);
+    if (!response.ok) throw new Error('Server không phản hồi');
+    return await response.json();
+}
+
 // Load dữ liệu khi trang được tải
 document.addEventListener('DOMContentLoaded', function() {
     console.log('🎁 Trang giảm giá đã load - bắt đầu kết nối backend...');
     loadAllDeals();
     setupFilterButtons();
+    subscribeToDealChanges();
 });
 
+// Gom các thay đổi giá đến dồn dập thành một lần tải lại (server cũng cần chút thời gian cập nhật bảng xếp hạng deals)
+const LIVE_REFRESH_DELAY_MS = 2000;
+
+/**
+ * Theo dõi thay đổi giá trực tiếp (Server-Sent Events): khi một sản phẩm vào, đổi chỗ hoặc rời
+ * một section giảm giá, server đẩy sự kiện "price" và trang tải lại các section
+ * Chưa bấm "Xem thêm" mới tải lại, để không làm mất những sản phẩm người dùng đang xem
+ */
+function subscribeToDealChanges() {
+    if (!('EventSource' in window)) return;
+    const dealTypes = Object.values(SECTION_SOURCE).join(',');
+    const stream = new EventSource(`${API_BASE_URL}/api/stream/prices?deal_type=${encodeURIComponent(dealTypes)}`);
+    let refreshTimer = null;
+    stream.addEventListener('price', event => {
+        const price = JSON.parse(event.data);
+        console.log('📡 Giá thay đổi:', price);
+        const expanded = Object.keys(displayedCounts).some(dataKey => displayedCounts[dataKey] > PRODUCTS_PER_PAGE);
+        if (expanded || refreshTimer) return;
+        refreshTimer = setTimeout(() => {
+            refreshTimer = null;
+            loadAllDeals();
+        }, LIVE_REFRESH_DELAY_MS);
+    });
+    window.addEventListener('pagehide', () => stream.close());
+}
+
 /**
- * Load tất cả sản phẩm giảm giá và phân loại vào các section
+ * Load tất cả section giảm giá bằng MỘT request /api/deals/page
+ * Server trả về mỗi sản phẩm một lần (products theo id) và danh sách id của từng section
  */
 async function loadAllDeals() {
     try {
-        // Load ALL deals (bao gồm tất cả)
-        const response = await fetch(`${API_BASE_URL}/deals`, {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ deal_type: 'ALL' })
-        });
-        
-        if (!response.ok) throw new Error('Server không phản hồi');
+        const data = await fetchApi('/api/deals/page', { limit: DEALS_PAGE_LIMIT });
+        console.log('✅ Dữ liệu deals nhận được:', data);
         
-        const data = await response.json();
-        console.log('✅ Dữ liệu ALL nhận được:', data);
+        if (!data.success) {
+            showNoData();
+            return;
+        }
         
-        if (data.success && data.products && data.products.length > 0) {
-            const grouped = groupByDealType(data.products);
+        const totals = {};
+        Object.keys(SECTION_SOURCE).forEach(dataKey => {
+            const dealType = SECTION_SOURCE[dataKey];
+            const section = data.sections[dealType] || { product_ids: [], total: 0 };
             
-            // Lưu dữ liệu đầy đủ
-            allProductsData.deal_hot = data.products;
-            allProductsData.flash_sale = grouped.FLASH_SALE;
-            allProductsData.hot_deal = grouped.HOT_DEAL;
-            
-            // Load vào từng section (trừ trending)
+            allProductsData[dataKey] = section.product_ids.map(id => data.products[id]);
+            nextCursors[dealType] = section.next_cursor || null;
+            totals[dealType] = section.total;
+        });
+        
+        if (allProductsData.deal_hot.length === 0) {
+            showNoData();
+        } else {
             loadSection('#deal_hot', 'deal_hot', false);
             loadSection('#flash_sale', 'flash_sale', false);
             loadSection('#hot_deal', 'hot_deal', false);
-            
-            // Cập nhật tiêu đề cho các section
-            updateSectionTitles();
-            
-            // Cập nhật số lượng trong button
-            updateButtonCounts(grouped, data.products.length);
-        } else {
-            showNoData();
         }
+        loadSection('#trending', 'trending', false);
         
-        // Load TRENDING riêng (mỗi danh mục 1 sản phẩm giảm giá sâu nhất)
-        await loadTrendingDeals();
+        // Cập nhật tiêu đề cho các section
+        updateSectionTitles();
+        
+        // Cập nhật số lượng trong button (tổng số thật của từng section trên server)
+        updateButtonCounts(totals);
         
     } catch (error) {
         console.error('❌ Lỗi:', error);
@@ -79,34 +135,28 @@ async function loadAllDeals() {
 }
 
 /**
- * Load trending deals riêng (mỗi danh mục 1 sản phẩm tốt nhất)
+ * Gọi /api/deals cho một trang
+ * @param {string} dealType - 'ALL', 'FLASH_SALE', 'HOT_DEAL', 'TRENDING'
+ * @param {string|null} cursor - next_cursor của trang trước (null = trang đầu)
  */
-async function loadTrendingDeals() {
-    try {
-        const response = await fetch(`${API_BASE_URL}/deals`, {
-            method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
-            body: JSON.stringify({ deal_type: 'TRENDING' })
-        });
-        
-        if (!response.ok) throw new Error('Server không phản hồi trending');
-        
-        const data = await response.json();
-        console.log('✅ Dữ liệu TRENDING nhận được:', data);
-        
-        if (data.success && data.products && data.products.length > 0) {
-            allProductsData.trending = data.products;
-            loadSection('#trending', 'trending', false);
-        } else {
-            // Không có trending products
-            allProductsData.trending = [];
-            loadSection('#trending', 'trending', false);
-        }
-    } catch (error) {
-        console.error('❌ Lỗi load trending:', error);
-        allProductsData.trending = [];
-        loadSection('#trending', 'trending', false);
+async function fetchDealsPage(dealType, cursor) {
+    return await fetchApi('/api/deals', { type: dealType, limit: DEALS_PAGE_LIMIT, cursor: cursor });
+}
+
+/**
+ * Lấy trang tiếp theo của một section từ server và nối vào dữ liệu đã có
+ */
+async function loadMoreDeals(dealType) {
+    const data = await fetchDealsPage(dealType, nextCursors[dealType]);
+    if (!data.success || !data.products) {
+        nextCursors[dealType] = null;
+        return;
     }
+    nextCursors[dealType] = data.next_cursor || null;
+    
+    Object.keys(SECTION_SOURCE)
+        .filter(dataKey => SECTION_SOURCE[dataKey] === dealType)
+        .forEach(dataKey => allProductsData[dataKey].push(...data.products));
 }
 
 /**
@@ -132,18 +182,6 @@ function updateSectionTitles() {
     });
 }
 
-/**
- * Nhóm sản phẩm theo deal_type
- */
-function groupByDealType(products) {
-    return {
-        FLASH_SALE: products.filter(p => p.deal_type === 'FLASH_SALE'),
-        HOT_DEAL: products.filter(p => p.deal_type === 'HOT_DEAL'),
-        TRENDING: products.filter(p => p.deal_type === 'TRENDING'),
-        NORMAL: products.filter(p => !p.deal_type || p.deal_type === 'NORMAL')
-    };
-}
-
 /**
  * Load sản phẩm vào một section (giữ nguyên cấu trúc HTML gốc)
  * @param {string} sectionId - ID của section (#deal_hot, #flash_sale, ...)
@@ -184,7 +222,11 @@ function loadSection(sectionId, dataKey, isLoadMore = false) {
         if (!isLoadMore) {
             showNoProductsMessage(container, dataKey);
         }
-        hideXemThemButton(section);
+        if (nextCursors[SECTION_SOURCE[dataKey]]) {
+            showXemThemButton(section, dataKey);
+        } else {
+            hideXemThemButton(section);
+        }
         return;
     }
     
@@ -208,10 +250,10 @@ function loadSection(sectionId, dataKey, isLoadMore = false) {
     }
     
     // Cập nhật số lượng đã hiển thị
-    displayedCounts[dataKey] = endIndex;
+    displayedCounts[dataKey] = startIndex + productsToShow.length;
     
-    // Xử lý nút "Xem thêm"
-    if (displayedCounts[dataKey] >= totalProducts) {
+    // Xử lý nút "Xem thêm" (còn dữ liệu đã tải hoặc server còn trang sau)
+    if (displayedCounts[dataKey] >= totalProducts && !nextCursors[SECTION_SOURCE[dataKey]]) {
         hideXemThemButton(section);
     } else {
         showXemThemButton(section, dataKey);
@@ -284,8 +326,20 @@ function showXemThemButton(section, dataKey) {
     const newBtn = btnXemThem.cloneNode(true);
     btnXemThem.parentNode.replaceChild(newBtn, btnXemThem);
     
-    newBtn.addEventListener('click', function() {
+    newBtn.addEventListener('click', async function() {
         const sectionId = section.getAttribute('id');
+        const source = SECTION_SOURCE[dataKey];
+        
+        // Đã hiển thị hết dữ liệu đã tải - lấy thêm trang từ server
+        if (displayedCounts[dataKey] >= allProductsData[dataKey].length && nextCursors[source]) {
+            newBtn.style.pointerEvents = 'none';
+            try {
+                await loadMoreDeals(source);
+            } catch (error) {
+                console.error('❌ Lỗi tải thêm:', error);
+            }
+            newBtn.style.pointerEvents = '';
+        }
         loadSection(`#${sectionId}`, dataKey, true); // isLoadMore = true
     });
 }
@@ -413,18 +467,19 @@ function setupFilterButtons() {
 
 /**
  * Cập nhật số lượng trong các button filter
+ * @param {Object} totals - Tổng số sản phẩm theo deal_type (ALL, FLASH_SALE, HOT_DEAL, TRENDING)
  */
-function updateButtonCounts(grouped, totalCount) {
+function updateButtonCounts(totals) {
     // Update với ID cụ thể từ HTML
     const countAll = document.querySelector('#count-all');
     const countFlash = document.querySelector('#count-flash');
     const countHot = document.querySelector('#count-hot');
     const countTrending = document.querySelector('#count-trending');
     
-    if (countAll) countAll.textContent = `(${totalCount})`;
-    if (countFlash) countFlash.textContent = `(${grouped.FLASH_SALE.length})`;
-    if (countHot) countHot.textContent = `(${grouped.HOT_DEAL.length})`;
-    if (countTrending) countTrending.textContent = `(${grouped.TRENDING ? grouped.TRENDING.length : 0})`;
+    if (countAll) countAll.textContent = `(${totals.ALL || 0})`;
+    if (countFlash) countFlash.textContent = `(${totals.FLASH_SALE || 0})`;
+    if (countHot) countHot.textContent = `(${totals.HOT_DEAL || 0})`;
+    if (countTrending) countTrending.textContent = `(${totals.TRENDING || 0})`;
 }
 
 /**
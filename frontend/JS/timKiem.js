@@ -6,12 +6,16 @@
 const SERVER_HOST = 'localhost';
 const SERVER_PORT = 8080; // HTTP server port (not TCP 8888)
 
+// Name search paging state: query + next_cursor of the last page shown
+let currentSearch = { query: null, nextCursor: null, shown: 0 };
+
 /**
  * Perform search query to backend server
  * @param {string} query - Search query (URL or name)
+ * @param {string|null} cursor - next_cursor from the previous page (name search only)
  * @returns {Promise<Object>} JSON response from server
  */
-async function searchProducts(query) {
+async function searchProducts(query, cursor = null) {
     // Determine if query is Tiki URL or name search
     const isTikiUrl = query.includes('tiki.vn');
     const action = isTikiUrl ? 'SEARCH_BY_URL' : 'SEARCH_BY_NAME';
@@ -19,16 +23,22 @@ async function searchProducts(query) {
     console.log('🔍 Searching:', action, query);
     
     try {
-        const response = await fetch(`http://${SERVER_HOST}:${SERVER_PORT}/search`, {
-            method: 'POST',
-            headers: {
-                'Content-Type': 'application/json'
-            },
-            body: JSON.stringify({
-                action: action,
-                query: query
+        // Name search is a cacheable GET (params in name order = one URL per page);
+        // URL search stays POST since it may scrape and add a new product
+        const response = isTikiUrl
+            ? await fetch(`http://${SERVER_HOST}:${SERVER_PORT}/search`, {
+                method: 'POST',
+                headers: {
+                    'Content-Type': 'application/json'
+                },
+                body: JSON.stringify({
+                    action: action,
+                    query: query
+                })
             })
-        });
+            : await fetch(`http://${SERVER_HOST}:${SERVER_PORT}/api/search?` +
+                (cursor ? `cursor=${encodeURIComponent(cursor)}&` : '') +
+                `q=${encodeURIComponent(query.trim().replace(/\s+/g, ' '))}`);
         
         if (!response.ok) {
             throw new Error(`HTTP error! status: ${response.status}`);
@@ -36,6 +46,15 @@ async function searchProducts(query) {
         
         const data = await response.json();
         console.log('✅ Server response:', data);
+        
+        // New product: server scrapes it in the background (HTTP 202 + job_id)
+        if (response.status === 202 && data.job_id) {
+            return await waitForIngestion(data.job_id);
+        }
+        
+        if (!isTikiUrl) {
+            currentSearch.query = query;
+        }
         return data;
         
     } catch (error) {
@@ -44,6 +63,45 @@ async function searchProducts(query) {
     }
 }
 
+/**
+ * Wait for a background ingestion job (new Tiki product) to finish
+ * Uses long-polling: each request is held by the server for up to wait_ms
+ * @param {string} jobId - Job ID returned by SEARCH_BY_URL
+ * @returns {Promise<Object>} Final job response (same shape as a URL search result)
+ */
+async function waitForIngestion(jobId) {
+    const resultsInfo = document.getElementById('ket_qua');
+    if (resultsInfo) {
+        resultsInfo.innerHTML = '<p>Đang lấy dữ liệu sản phẩm mới từ Tiki...</p>';
+    }
+    
+    const MAX_ATTEMPTS = 10;
+    for (let attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+        const response = await fetch(`http://${SERVER_HOST}:${SERVER_PORT}/ingest-status`, {
+            method: 'POST',
+            headers: {
+                'Content-Type': 'application/json'
+            },
+            body: JSON.stringify({
+                job_id: jobId,
+                wait_ms: 10000
+            })
+        });
+        
+        const data = await response.json();
+        console.log('⏳ Ingestion status:', data.status);
+        
+        if (data.status !== 'PENDING' && data.status !== 'RUNNING') {
+            return data;
+        }
+    }
+    
+    return {
+        success: false,
+        error: 'Tiki phản hồi quá chậm. Vui lòng thử lại sau!'
+    };
+}
+
 /**
  * Render single product card
  * @param {Object} product - Product data from server
@@ -53,12 +111,14 @@ async function searchProducts(query) {
 function renderProductCard(product, isNew = false) {
     // Deal badge logic
     let dealBadgeHTML = '';
-    if (product.deal_type && product.deal_type !== 'Normal') {
-        if (product.deal_type === 'Flash Sale') {
-            dealBadgeHTML = '<i class="fa-solid fa-bolt-lightning"></i><span>Flash Sale</span>';
-        } else {
-            dealBadgeHTML = `<span>${product.deal_type}</span>`;
-        }
+    // deal_type is a price_interval.deal_type value (NORMAL, FLASH_SALE, HOT_DEAL, TRENDING)
+    const dealType = (product.deal_type || 'NORMAL').toUpperCase();
+    if (dealType === 'FLASH_SALE') {
+        dealBadgeHTML = '<i class="fa-solid fa-bolt-lightning"></i><span>Flash Sale</span>';
+    } else if (dealType === 'HOT_DEAL') {
+        dealBadgeHTML = '<span>Deal HOT</span>';
+    } else if (dealType === 'TRENDING') {
+        dealBadgeHTML = '<span>Trending</span>';
     }
     
     // New product badge
@@ -212,26 +272,18 @@ function displayResults(response) {
     
     // Handle multiple products response (name search)
     if (response.products) {
-        const count = response.count;
+        currentSearch.nextCursor = response.next_cursor || null;
+        currentSearch.shown = response.count;
         
         if (resultsInfo) {
-            resultsInfo.innerHTML = `<h2>Kết quả tìm kiếm</h2><p>Tìm thấy ${count} sản phẩm</p>`;
+            resultsInfo.innerHTML = `<h2>Kết quả tìm kiếm</h2><p>${describeResultCount()}</p>`;
             resultsInfo.style.display = 'block';
         }
         
-        // Group products into rows of 3
-        let rowsHTML = '';
-        for (let i = 0; i < response.products.length; i += 3) {
-            const rowProducts = response.products.slice(i, i + 3);
-            const cardsHTML = rowProducts.map(product => 
-                renderProductCard(product, false)
-            ).join('');
-            rowsHTML += `<div class="hang">${cardsHTML}</div>`;
-        }
-        
         if (resultsContainer) {
-            resultsContainer.innerHTML = rowsHTML;
+            resultsContainer.innerHTML = renderProductRows(response.products);
             resultsContainer.style.display = 'flex';
+            updateLoadMoreButton(resultsContainer);
         }
         return;
     }
@@ -250,6 +302,79 @@ function displayResults(response) {
     }
 }
 
+/**
+ * Group products into rows of 3
+ */
+function renderProductRows(products) {
+    let rowsHTML = '';
+    for (let i = 0; i < products.length; i += 3) {
+        const rowProducts = products.slice(i, i + 3);
+        const cardsHTML = rowProducts.map(product => 
+            renderProductCard(product, false)
+        ).join('');
+        rowsHTML += `<div class="hang">${cardsHTML}</div>`;
+    }
+    return rowsHTML;
+}
+
+function describeResultCount() {
+    return currentSearch.nextCursor
+        ? `Đang hiển thị ${currentSearch.shown} sản phẩm đầu tiên`
+        : `Tìm thấy ${currentSearch.shown} sản phẩm`;
+}
+
+/**
+ * Show a "Xem thêm" button under the results while the server has more pages
+ */
+function updateLoadMoreButton(resultsContainer) {
+    let button = document.getElementById('btn_xem_them_tim_kiem');
+    if (!currentSearch.nextCursor) {
+        if (button) button.remove();
+        return;
+    }
+    if (!button) {
+        button = document.createElement('button');
+        button.id = 'btn_xem_them_tim_kiem';
+        button.className = 'btn-xem-them';
+        button.textContent = 'Xem thêm';
+        button.addEventListener('click', loadMoreResults);
+    }
+    // Keep the button after the last row
+    resultsContainer.insertAdjacentElement('afterend', button);
+    button.disabled = false;
+}
+
+/**
+ * Fetch the next page of the current name search and append it
+ */
+async function loadMoreResults() {
+    const button = document.getElementById('btn_xem_them_tim_kiem');
+    const resultsContainer = document.getElementById('frame_sp');
+    const resultsInfo = document.getElementById('ket_qua');
+    if (!currentSearch.nextCursor || !resultsContainer) return;
+    
+    if (button) button.disabled = true;
+    try {
+        const data = await searchProducts(currentSearch.query, currentSearch.nextCursor);
+        if (!data.success || !data.products) {
+            showNotification(data.error || 'Không tải thêm được sản phẩm');
+            if (button) button.disabled = false;
+            return;
+        }
+        
+        resultsContainer.insertAdjacentHTML('beforeend', renderProductRows(data.products));
+        currentSearch.nextCursor = data.next_cursor || null;
+        currentSearch.shown += data.count;
+        if (resultsInfo) {
+            resultsInfo.innerHTML = `<h2>Kết quả tìm kiếm</h2><p>${describeResultCount()}</p>`;
+        }
+        updateLoadMoreButton(resultsContainer);
+    } catch (error) {
+        showNotification('Không tải thêm được sản phẩm');
+        if (button) button.disabled = false;
+    }
+}
+
 /**
  * Show notification toast
  */
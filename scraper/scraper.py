@@ -35,6 +35,13 @@ HEADERS = {
 
 DELAY_BETWEEN_REQUESTS = 2  # Giây delay giữa các request (tránh bị block)
 
+# Ghi lịch sử giá theo lô qua server Java (POST /prices/ingest): server ghi bảng price_interval,
+# price_rollup và báo giá đổi cho deals / SSE, nên scraper không tự ghi các bảng này
+INGEST_URL = 'http://localhost:8080/prices/ingest'
+INGEST_TIMEOUT = 60           # Giây chờ server ghi xong lô
+PRICE_BATCH_SIZE = 500        # Xả khi đủ số dòng này
+PRICE_BATCH_MAX_SECONDS = 30  # ... hoặc khi dòng cũ nhất đã chờ quá số giây này
+
 
 class TikiScraper:
     def __init__(self):
@@ -46,6 +53,8 @@ class TikiScraper:
             'failed': 0,
             'skipped': 0
         }
+        self.pending_prices = []        # Các quan sát giá chờ ghi
+        self.pending_since = None       # Thời điểm dòng đầu tiên vào lô
     
     def connect_db(self):
         """Kết nối đến MySQL database"""
@@ -157,29 +166,74 @@ class TikiScraper:
             return None
     
     def save_price_history(self, product_id, price_data):
-        """Lưu thông tin giá vào bảng price_history"""
-        try:
-            query = """
-                INSERT INTO price_history 
-                (product_id, price, original_price, currency, deal_type, recorded_at)
-                VALUES (%s, %s, %s, %s, %s, %s)
-            """
-            values = (
-                product_id,
-                price_data['price'],
-                price_data['original_price'],
-                price_data['currency'],
-                price_data['deal_type'],
-                datetime.now()
-            )
-            
-            self.cursor.execute(query, values)
-            self.db_connection.commit()
+        """Đưa thông tin giá vào lô chờ ghi (xả theo kích thước / thời gian)"""
+        if not self.pending_prices:
+            self.pending_since = time.monotonic()
+        self.pending_prices.append({
+            'product_id': product_id,
+            'price': price_data['price'],
+            'original_price': price_data['original_price'],
+            'currency': price_data['currency'],
+            'deal_type': price_data['deal_type'],
+            'recorded_at': int(time.time() * 1000)  # Epoch millis
+        })
+        
+        if (len(self.pending_prices) >= PRICE_BATCH_SIZE or
+                time.monotonic() - self.pending_since >= PRICE_BATCH_MAX_SECONDS):
+            return self.flush_price_history()
+        return True
+    
+    def flush_price_history(self):
+        """
+        Gửi cả lô tới /prices/ingest. Server kiểm tra mọi dòng trước khi ghi: có dòng hỏng thì trả 400
+        kèm vị trí từng dòng hỏng và không ghi gì, nên gửi lại một lần phần còn lại - một dòng hỏng
+        chỉ làm hỏng chính nó (server cũng ghi lại từng dòng khi một lô lỗi DB)
+        """
+        if not self.pending_prices:
             return True
-            
-        except mysql.connector.Error as err:
-            print(f"  ✗ Lỗi lưu database: {err}")
-            return False
+        
+        batch = self.pending_prices
+        self.pending_prices = []
+        self.pending_since = None
+        
+        status, result = self.post_observations(batch)
+        if status == 400 and result.get('errors'):
+            bad = {error['index'] for error in result['errors']}
+            for error in result['errors']:
+                print(f"  ! Bỏ dòng giá #{error['index']} (product_id={batch[error['index']]['product_id']}): "
+                      f"{error['error']}")
+            batch = [row for index, row in enumerate(batch) if index not in bad]
+            self.stats['success'] -= len(bad)
+            self.stats['failed'] += len(bad)
+            if not batch:
+                return False
+            status, result = self.post_observations(batch)
+        
+        written = result.get('written', 0) if status in (200, 503) else 0
+        if written == len(batch):
+            print(f"  ✓ Đã ghi lô {len(batch)} bản ghi giá")
+            return True
+        
+        print(f"  ✗ Lỗi lưu lô giá: {written}/{len(batch)} bản ghi được ghi"
+              f" ({status}: {result.get('error', '')})")
+        # Các dòng trong lô đã được tính là thành công lúc đưa vào lô
+        self.stats['success'] -= len(batch) - written
+        self.stats['failed'] += len(batch) - written
+        return False
+    
+    def post_observations(self, batch):
+        """
+        POST một lô quan sát giá tới server
+        Returns: (status code, JSON trả về); (None, {...}) nếu không gọi được server
+        """
+        try:
+            response = requests.post(INGEST_URL, json={'observations': batch}, timeout=INGEST_TIMEOUT)
+        except requests.exceptions.RequestException as e:
+            return None, {'error': f"Không gọi được server: {e}"}
+        try:
+            return response.status_code, response.json()
+        except ValueError:
+            return response.status_code, {'error': response.text[:200]}
     
     def log_scrape_session(self):
         """Ghi log vào bảng scrape_log"""
@@ -249,15 +303,13 @@ class TikiScraper:
             price_data = self.scrape_tiki_product(tiki_id)
             
             if price_data:
-                # Lưu vào database
-                if self.save_price_history(product_id, price_data):
-                    price_str = f"{price_data['price']:,.0f}đ"
-                    if price_data['original_price'] != price_data['price']:
-                        price_str += f" (gốc: {price_data['original_price']:,.0f}đ)"
-                    print(f"  ✓ Giá: {price_str} | Deal: {price_data['deal_type']}")
-                    self.stats['success'] += 1
-                else:
-                    self.stats['failed'] += 1
+                # Đưa vào lô ghi database (thống kê được sửa lại nếu lô lỗi)
+                price_str = f"{price_data['price']:,.0f}đ"
+                if price_data['original_price'] != price_data['price']:
+                    price_str += f" (gốc: {price_data['original_price']:,.0f}đ)"
+                print(f"  ✓ Giá: {price_str} | Deal: {price_data['deal_type']}")
+                self.stats['success'] += 1
+                self.save_price_history(product_id, price_data)
             else:
                 print(f"  ✗ Không cào được dữ liệu")
                 self.stats['failed'] += 1
@@ -266,6 +318,9 @@ class TikiScraper:
             if idx < len(products):
                 time.sleep(DELAY_BETWEEN_REQUESTS)
         
+        # Xả nốt lô giá còn lại trước khi ghi log
+        self.flush_price_history()
+        
         # Ghi log
         self.log_scrape_session()
         
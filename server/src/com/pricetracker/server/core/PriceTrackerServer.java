@@ -7,7 +7,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.pricetracker.server.db.ProductGroupDAO;
 import com.pricetracker.server.handler.ClientHandler;
+import com.pricetracker.server.utils.TikiScraperUtil;
 
 /**
  * PriceTrackerServer - Lớp Server chính
@@ -56,8 +58,12 @@ public class PriceTrackerServer {
             // Khởi tạo thread pool để quản lý các ClientHandler
             threadPool = Executors.newFixedThreadPool(MAX_THREADS);
             
+            // Nạp từ khóa phân loại danh mục từ database (nếu có)
+            int keywordCount = TikiScraperUtil.reloadCategoryKeywords(new ProductGroupDAO().getCategoryKeywords());
+            
             System.out.println("✓ Server đã sẵn sàng và đang lắng nghe tại port " + port);
             System.out.println("✓ Thread pool đã được khởi tạo với " + MAX_THREADS + " luồng");
+            System.out.println("✓ Bộ phân loại danh mục: " + keywordCount + " từ khóa");
             System.out.println("✓ Đang chờ kết nối từ client...\n");
             
             // Vòng lặp vô tận - luồng chính chỉ làm nhiệm vụ lắng nghe
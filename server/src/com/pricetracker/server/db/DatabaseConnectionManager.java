@@ -1,24 +1,43 @@
 package com.pricetracker.server.db;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * DatabaseConnectionManager - Quản lý kết nối database
- * Dùng Singleton để chỉ tạo một kết nối duy nhất
+ * Dùng Singleton + một pool kết nối nhỏ để nhiều luồng (HTTP, ingestion) dùng song song.
+ * Các DAO vẫn gọi getConnection() trong try-with-resources: close() trả kết nối về pool
+ * thay vì đóng thật.
  */
 public class DatabaseConnectionManager {
     private static DatabaseConnectionManager instance;
 
     // Thông tin kết nối MySQL XAMPP
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/price_insight";
+    // rewriteBatchedStatements: executeBatch() gửi một INSERT nhiều dòng thay vì từng câu lệnh
+    private static final String DB_URL = "jdbc:mysql://localhost:3306/price_insight?rewriteBatchedStatements=true";
     private static final String DB_USER = "root";
     private static final String DB_PASSWORD = ""; // XAMPP mặc định không có password
     private static final String DB_DRIVER = "com.mysql.cj.jdbc.Driver";
 
-    // ⚠️ Sửa dòng này thành static
-    private static Connection connection;
+    // Cấu hình pool
+    private static final int MAX_POOL_SIZE = 20;
+    private static final long BORROW_TIMEOUT_MS = 10_000;
+    private static final long VALIDATE_AFTER_IDLE_MS = 30_000;
+
+    // Giới hạn số kết nối đang được mượn cùng lúc
+    private static final Semaphore permits = new Semaphore(MAX_POOL_SIZE, true);
+
+    // Các kết nối rảnh (kết nối thật, chưa bọc proxy)
+    private static final Deque<IdleConnection> idle = new ArrayDeque<>();
 
     // Private constructor cho Singleton
     private DatabaseConnectionManager() {
@@ -38,29 +57,141 @@ public class DatabaseConnectionManager {
         return instance;
     }
 
+    /**
+     * Mượn một kết nối từ pool. Gọi close() (try-with-resources) để trả lại pool.
+     * Chờ tối đa BORROW_TIMEOUT_MS nếu pool đã hết kết nối.
+     */
     public static Connection getConnection() throws SQLException {
-        if (connection == null || connection.isClosed()) {
-            connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-            System.out.println("✓ Connected to MySQL database: " + DB_URL);
+        try {
+            if (!permits.tryAcquire(BORROW_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Timed out waiting for a pooled database connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
         }
+
+        try {
+            return wrap(borrowPhysical());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private static Connection borrowPhysical() throws SQLException {
+        while (true) {
+            IdleConnection candidate;
+            synchronized (idle) {
+                candidate = idle.pollFirst();
+            }
+            if (candidate == null) {
+                break;
+            }
+            if (isUsable(candidate)) {
+                return candidate.connection;
+            }
+            closeQuietly(candidate.connection);
+        }
+
+        Connection connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+        System.out.println("✓ Connected to MySQL database: " + DB_URL);
         return connection;
     }
 
+    private static boolean isUsable(IdleConnection candidate) {
+        try {
+            if (candidate.connection.isClosed()) {
+                return false;
+            }
+            if (System.currentTimeMillis() - candidate.idleSince > VALIDATE_AFTER_IDLE_MS) {
+                return candidate.connection.isValid(2);
+            }
+            return true;
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static void release(Connection physical) {
+        try {
+            boolean reusable = !physical.isClosed();
+            if (reusable && !physical.getAutoCommit()) {
+                // Không trả về pool một transaction dang dở
+                physical.rollback();
+                physical.setAutoCommit(true);
+            }
+            if (reusable) {
+                synchronized (idle) {
+                    idle.addFirst(new IdleConnection(physical));
+                }
+            }
+        } catch (SQLException e) {
+            closeQuietly(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private static Connection wrap(Connection physical) {
+        InvocationHandler handler = new InvocationHandler() {
+            private boolean closed;
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                switch (method.getName()) {
+                    case "close":
+                        synchronized (this) {
+                            if (!closed) {
+                                closed = true;
+                                release(physical);
+                            }
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed || physical.isClosed();
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "PooledConnection[" + physical + "]";
+                    default:
+                        if (closed) {
+                            throw new SQLException("Connection already returned to pool");
+                        }
+                        try {
+                            return method.invoke(physical, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                }
+            }
+        };
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(), new Class<?>[]{Connection.class}, handler);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // Kết nối hỏng, bỏ qua
+        }
+    }
+
     public void closeConnection() {
-        if (connection != null) {
-            try {
-                connection.close();
-                System.out.println("✓ Database connection closed");
-            } catch (SQLException e) {
-                System.err.println("✗ Error closing database connection");
-                e.printStackTrace();
+        synchronized (idle) {
+            for (IdleConnection candidate : idle) {
+                closeQuietly(candidate.connection);
             }
+            idle.clear();
         }
+        System.out.println("✓ Database connections closed");
     }
 
     public boolean testConnection() {
-        try {
-            Connection conn = getConnection();
+        try (Connection conn = getConnection()) {
             return conn != null && !conn.isClosed();
         } catch (SQLException e) {
             System.err.println("✗ Database connection test failed");
@@ -68,4 +199,14 @@ public class DatabaseConnectionManager {
             return false;
         }
     }
+
+    private static final class IdleConnection {
+        final Connection connection;
+        final long idleSince;
+
+        IdleConnection(Connection connection) {
+            this.connection = connection;
+            this.idleSince = System.currentTimeMillis();
+        }
+    }
 }
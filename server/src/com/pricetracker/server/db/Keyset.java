@@ -0,0 +1,176 @@
+package com.pricetracker.server.db;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.pricetracker.server.utils.PageCursor;
+
+/**
+ * Keyset - Hỗ trợ phân trang keyset cho các DAO
+ * Thay cho OFFSET: trang sau bắt đầu bằng điều kiện "sau khóa sắp xếp của dòng cuối trang trước",
+ * nên mỗi request chỉ trả về tối đa limit + 1 dòng và các trang không trùng / sót dòng khi dữ liệu đổi.
+ * Khóa cuối cùng phải duy nhất (thường là khóa chính) để thứ tự ổn định.
+ *
+ * Trang sâu chỉ rẻ như trang đầu khi khóa sắp xếp đi theo index và điều kiện lọc dùng được index.
+ * Khóa là biểu thức tính toán (% giảm, số tiền tiết kiệm) hoặc lọc bằng LIKE '%...%' thì MySQL vẫn phải
+ * quét và sắp xếp mọi dòng khớp cho MỖI trang - keyset khi đó chỉ bớt được phần đọc bỏ của OFFSET.
+ *
+ * Biểu thức khóa được bọc COALESCE: một khóa NULL sẽ làm so sánh "đứng sau" luôn sai (mất các dòng sau nó).
+ */
+final class Keyset {
+
+    enum Type { INT, DECIMAL, TIMESTAMP }
+
+    /**
+     * Một cột / biểu thức trong ORDER BY
+     */
+    static final class SortKey {
+        final String expr;
+        final boolean desc;
+        final Type type;
+
+        private SortKey(String expr, boolean desc, Type type) {
+            this.expr = "COALESCE(" + expr + ", " + nullValue(type) + ")";
+            this.desc = desc;
+            this.type = type;
+        }
+
+        static SortKey asc(String expr, Type type) {
+            return new SortKey(expr, false, type);
+        }
+
+        static SortKey desc(String expr, Type type) {
+            return new SortKey(expr, true, type);
+        }
+    }
+
+    private Keyset() {
+    }
+
+    /**
+     * Giá trị thay cho NULL: nhỏ nhất trong thực tế, nên vị trí trong thứ tự giống NULL của MySQL
+     * (đầu khi ASC, cuối khi DESC)
+     */
+    private static String nullValue(Type type) {
+        switch (type) {
+            case INT:
+            case DECIMAL:
+                return "0";
+            default:
+                return "TIMESTAMP '1970-01-01 00:00:00'";
+        }
+    }
+
+    /**
+     * Các cột khóa sắp xếp cần SELECT thêm: ", expr AS sort_key_0, ..."
+     */
+    static String selectKeys(List<SortKey> keys) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            sb.append(", ").append(keys.get(i).expr).append(" AS sort_key_").append(i);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * ORDER BY theo alias sort_key_i (hợp lệ cả với SELECT DISTINCT)
+     */
+    static String orderBy(List<SortKey> keys) {
+        StringBuilder sb = new StringBuilder(" ORDER BY ");
+        for (int i = 0; i < keys.size(); i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append("sort_key_").append(i).append(keys.get(i).desc ? " DESC" : " ASC");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Điều kiện "đứng sau" khóa của cursor:
+     * (k0 &lt; ? OR (k0 = ? AND (k1 &gt; ? OR (k1 = ? AND ...))))
+     * Thứ tự tham số khớp với bind().
+     */
+    static String after(List<SortKey> keys) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keys.size(); i++) {
+            SortKey key = keys.get(i);
+            String op = key.desc ? " < ?" : " > ?";
+            if (i == keys.size() - 1) {
+                sb.append(key.expr).append(op);
+            } else {
+                sb.append("(").append(key.expr).append(op)
+                  .append(" OR (").append(key.expr).append(" = ? AND ");
+            }
+        }
+        for (int i = 0; i < keys.size() - 1; i++) {
+            sb.append("))");
+        }
+        return "(" + sb + ")";
+    }
+
+    /**
+     * Gán giá trị khóa của cursor cho điều kiện after()
+     * @return Chỉ số tham số kế tiếp
+     */
+    static int bind(PreparedStatement stmt, int index, List<SortKey> keys, String[] values) throws SQLException {
+        for (int i = 0; i < keys.size(); i++) {
+            int repeat = i == keys.size() - 1 ? 1 : 2;
+            for (int r = 0; r < repeat; r++) {
+                switch (keys.get(i).type) {
+                    case INT:
+                        stmt.setLong(index++, Long.parseLong(values[i]));
+                        break;
+                    case DECIMAL:
+                        stmt.setBigDecimal(index++, new BigDecimal(values[i]));
+                        break;
+                    default:
+                        stmt.setTimestamp(index++, Timestamp.valueOf(values[i]));
+                        break;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Đọc khóa sắp xếp của dòng hiện tại (các cột sort_key_i)
+     */
+    static String[] read(ResultSet rs, List<SortKey> keys) throws SQLException {
+        String[] values = new String[keys.size()];
+        for (int i = 0; i < keys.size(); i++) {
+            String column = "sort_key_" + i;
+            switch (keys.get(i).type) {
+                case INT:
+                    values[i] = String.valueOf(rs.getLong(column));
+                    break;
+                case DECIMAL:
+                    BigDecimal decimal = rs.getBigDecimal(column);
+                    values[i] = decimal != null ? decimal.toPlainString() : "0";
+                    break;
+                default:
+                    Timestamp timestamp = rs.getTimestamp(column);
+                    values[i] = (timestamp != null ? timestamp : Timestamp.valueOf("1970-01-01 00:00:00")).toString();
+                    break;
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Cắt kết quả (đã đọc limit + 1 dòng) thành một trang
+     * @param rowKeys Khóa sắp xếp của từng dòng trong rows
+     */
+    static <T> Page<T> toPage(List<T> rows, List<String[]> rowKeys, int limit, String scope) {
+        if (rows.size() <= limit) {
+            return new Page<>(rows, null);
+        }
+        List<T> items = new ArrayList<>(rows.subList(0, limit));
+        return new Page<>(items, PageCursor.encode(scope, rowKeys.get(limit - 1)));
+    }
+}
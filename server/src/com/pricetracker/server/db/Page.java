@@ -0,0 +1,29 @@
+package com.pricetracker.server.db;
+
+import java.util.List;
+
+/**
+ * Page - Một trang kết quả phân trang keyset
+ * nextCursor = null nghĩa là đã hết dữ liệu.
+ */
+public class Page<T> {
+    private final List<T> items;
+    private final String nextCursor;
+
+    public Page(List<T> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,19 @@
+package com.pricetracker.server.db;
+
+import com.pricetracker.models.PriceHistory;
+
+import java.util.List;
+
+/**
+ * PriceChangeListener - Nhận thông báo khi giá hiện tại của sản phẩm thay đổi
+ * Được PriceHistoryBatchWriter gọi sau khi lô đã commit, trên luồng ghi lô:
+ * xử lý phải nhanh và không được chặn (việc nặng thì đẩy sang luồng khác).
+ */
+public interface PriceChangeListener {
+
+    /**
+     * @param currentPrices Giá hiện tại mới của các sản phẩm vừa mở khoảng giá mới
+     *                      (mỗi sản phẩm một phần tử; capturedAt = valid_from của khoảng)
+     */
+    void onPricesChanged(List<PriceHistory> currentPrices);
+}
@@ -0,0 +1,486 @@
+package com.pricetracker.server.db;
+
+import com.pricetracker.models.PriceHistory;
+import com.pricetracker.server.utils.DealTypes;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PriceHistoryBatchWriter - Ghi lịch sử giá theo lô (group commit)
+ * Mọi nguồn giá (scrape realtime, ingestion, scraper.py qua /prices/ingest) đẩy quan sát vào hàng đợi;
+ * một luồng nền gom lại và ghi trong MỘT transaction mỗi lô.
+ * Lô được xả khi đủ BATCH_SIZE dòng hoặc khi dòng đầu tiên đã chờ MAX_DELAY_MS.
+ * Lô lỗi được ghi lại từng dòng, nên một dòng hỏng chỉ làm hỏng chính nó.
+ *
+ * Lưu dạng khoảng giá (bảng price_interval): quan sát giống khoảng đang mở của sản phẩm
+ * (cùng price, original_price, currency, deal_type) chỉ kéo dài valid_to; khác thì mở khoảng mới.
+ * Khoảng đang mở = khoảng có interval_id lớn nhất của sản phẩm, nên quan sát cũ hơn valid_from
+ * của khoảng đang mở bị bỏ qua (đếm ở "late_dropped").
+ *
+ * Người gọi nhận CompletableFuture (true = đã commit, false = lỗi DB) và không bao giờ bị chặn bởi DB.
+ * Sau mỗi lô commit, các PriceChangeListener đã đăng ký nhận giá hiện tại mới của những sản phẩm đổi giá.
+ */
+public class PriceHistoryBatchWriter {
+
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final long DEFAULT_MAX_DELAY_MS = 200;
+    private static final int QUEUE_CAPACITY = 100_000;
+
+    private static final String INSERT_SQL =
+            "INSERT INTO price_interval (product_id, price, original_price, currency, deal_type, " +
+            "valid_from, valid_to, observation_count) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String EXTEND_SQL =
+            "UPDATE price_interval SET valid_to = ?, observation_count = ? WHERE interval_id = ?";
+
+    private static final Comparator<PriceHistory> BY_PRODUCT_AND_TIME =
+            Comparator.comparingInt(PriceHistory::getProductId).thenComparing(PriceHistory::getCapturedAt);
+
+    private static PriceHistoryBatchWriter instance;
+
+    private final int batchSize;
+    private final long maxDelayMs;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private final List<PriceChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Thống kê cho /metrics
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong rowsWritten = new AtomicLong();
+    private final AtomicLong rowsFailed = new AtomicLong();
+    private final AtomicLong batchesRetried = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong intervalsOpened = new AtomicLong();
+    private final AtomicLong intervalsExtended = new AtomicLong();
+    private final AtomicLong lateDropped = new AtomicLong();
+    private final AtomicLong rollupUpserts = new AtomicLong();
+
+    private PriceHistoryBatchWriter(int batchSize, long maxDelayMs) {
+        this.batchSize = batchSize;
+        this.maxDelayMs = maxDelayMs;
+        this.flusher = new Thread(this::runFlusher, "price-batch-writer");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Writer dùng chung (cấu hình qua -Dprice.batch.size, -Dprice.batch.maxDelayMs)
+     */
+    public static synchronized PriceHistoryBatchWriter getInstance() {
+        if (instance == null) {
+            instance = new PriceHistoryBatchWriter(
+                    Integer.getInteger("price.batch.size", DEFAULT_BATCH_SIZE),
+                    Long.getLong("price.batch.maxDelayMs", DEFAULT_MAX_DELAY_MS));
+        }
+        return instance;
+    }
+
+    /**
+     * Đưa một quan sát giá vào hàng đợi ghi
+     * @param observation productId, price, originalPrice, currency, dealType, capturedAt (null = bây giờ)
+     * @return Future hoàn thành khi lô chứa quan sát này đã commit (true) hoặc lỗi (false);
+     *         hoàn thành ngoại lệ RejectedExecutionException nếu hàng đợi đầy
+     */
+    public CompletableFuture<Boolean> submit(PriceHistory observation) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        if (observation.getCapturedAt() == null) {
+            observation.setCapturedAt(new Timestamp(System.currentTimeMillis()));
+        }
+        if (!running || !queue.offer(new Pending(observation, future))) {
+            rejected.incrementAndGet();
+            future.completeExceptionally(new RejectedExecutionException("Price write queue is full"));
+        }
+        return future;
+    }
+
+    /**
+     * Đăng ký nhận thông báo đổi giá (ví dụ để làm mới bảng xếp hạng giảm giá)
+     */
+    public void addListener(PriceChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(PriceChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void runFlusher() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+
+                // Gom thêm cho tới khi đủ lô hoặc hết cửa sổ thời gian
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    if (batch.size() >= batchSize) {
+                        break;
+                    }
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                flush(batch);
+            } catch (InterruptedException e) {
+                running = false;
+            } catch (RuntimeException e) {
+                System.err.println("❌ Lỗi luồng ghi lô giá: " + e.getMessage());
+                e.printStackTrace();
+            } finally {
+                for (Pending pending : batch) {
+                    pending.future.complete(false); // Không có tác dụng nếu đã hoàn thành
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending> batch) {
+        batches.incrementAndGet();
+        try {
+            writeBatch(batch);
+            complete(batch, true);
+            return;
+        } catch (SQLException e) {
+            System.err.println("❌ Lỗi khi ghi lô " + batch.size() + " bản ghi giá: " + e.getMessage());
+            if (batch.size() == 1 || isConnectionError(e)) {
+                complete(batch, false);
+                return;
+            }
+        }
+
+        // Một dòng hỏng (vd. product_id không tồn tại) làm hỏng cả transaction của lô dùng chung:
+        // ghi lại từng dòng để dòng của các nguồn khác không bị mất theo
+        batchesRetried.incrementAndGet();
+        List<Pending> rows = new ArrayList<>(batch);
+        rows.sort(Comparator.comparing((Pending pending) -> pending.observation, BY_PRODUCT_AND_TIME));
+        for (int i = 0; i < rows.size(); i++) {
+            Pending row = rows.get(i);
+            try {
+                writeBatch(Collections.singletonList(row));
+                complete(Collections.singletonList(row), true);
+            } catch (SQLException e) {
+                System.err.println("❌ Bỏ bản ghi giá của sản phẩm " + row.observation.getProductId() + ": " + e.getMessage());
+                if (isConnectionError(e)) {
+                    complete(rows.subList(i, rows.size()), false);
+                    return;
+                }
+                complete(Collections.singletonList(row), false);
+            }
+        }
+    }
+
+    private void complete(List<Pending> rows, boolean ok) {
+        (ok ? rowsWritten : rowsFailed).addAndGet(rows.size());
+        for (Pending pending : rows) {
+            pending.future.complete(ok);
+        }
+    }
+
+    /**
+     * SQLState lớp 08 = mất kết nối: thử lại từng dòng cũng vô ích
+     */
+    private static boolean isConnectionError(SQLException e) {
+        return e.getSQLState() != null && e.getSQLState().startsWith("08");
+    }
+
+    /**
+     * Ghi cả lô trong một transaction:
+     * 1. đọc khoảng đang mở của các sản phẩm trong lô
+     * 2. duyệt quan sát theo (product_id, thời gian): kéo dài hoặc mở khoảng mới trong bộ nhớ
+     * 3. batch UPDATE các khoảng cũ bị kéo dài + batch INSERT các khoảng mới
+     * 4. cộng dồn các quan sát vào price_rollup (ngày / tuần)
+     */
+    private void writeBatch(List<Pending> batch) throws SQLException {
+        List<PriceHistory> observations = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            observations.add(pending.observation);
+        }
+        observations.sort(BY_PRODUCT_AND_TIME);
+
+        try (Connection conn = DatabaseConnectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Map<Integer, Interval> open = loadOpenIntervals(conn, observations);
+                List<Interval> extended = new ArrayList<>();
+                List<Interval> created = new ArrayList<>();
+                List<PriceHistory> accepted = new ArrayList<>(observations.size());
+                int late = 0;
+
+                for (PriceHistory ph : observations) {
+                    Interval current = open.get(ph.getProductId());
+                    if (current != null && ph.getCapturedAt().before(current.validFrom)) {
+                        late++;
+                        continue;
+                    }
+                    accepted.add(ph);
+                    if (current != null && current.sameValues(ph)) {
+                        if (ph.getCapturedAt().after(current.validTo)) {
+                            current.validTo = ph.getCapturedAt();
+                        }
+                        current.observationCount++;
+                        if (current.intervalId > 0 && !current.dirty) {
+                            current.dirty = true;
+                            extended.add(current);
+                        }
+                    } else {
+                        Interval next = new Interval(ph);
+                        open.put(ph.getProductId(), next);
+                        created.add(next);
+                    }
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(EXTEND_SQL)) {
+                    for (Interval interval : extended) {
+                        stmt.setTimestamp(1, interval.validTo);
+                        stmt.setInt(2, interval.observationCount);
+                        stmt.setInt(3, interval.intervalId);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+
+                try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+                    for (Interval interval : created) {
+                        stmt.setInt(1, interval.productId);
+                        stmt.setDouble(2, interval.price);
+                        stmt.setDouble(3, interval.originalPrice);
+                        stmt.setString(4, interval.currency);
+                        stmt.setString(5, interval.dealType);
+                        stmt.setTimestamp(6, interval.validFrom);
+                        stmt.setTimestamp(7, interval.validTo);
+                        stmt.setInt(8, interval.observationCount);
+                        stmt.addBatch();
+                    }
+                    stmt.executeBatch();
+                }
+
+                int rollups = accepted.isEmpty() ? 0 : PriceRollupDAO.upsertRollups(conn, accepted);
+
+                conn.commit();
+                rollupUpserts.addAndGet(rollups);
+                intervalsExtended.addAndGet(extended.size());
+                intervalsOpened.addAndGet(created.size());
+                lateDropped.addAndGet(late);
+                notifyListeners(created, open);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Báo giá hiện tại mới cho các listener (chỉ sản phẩm có khoảng giá mới - kéo dài khoảng cũ không đổi giá)
+     */
+    private void notifyListeners(List<Interval> created, Map<Integer, Interval> open) {
+        if (listeners.isEmpty() || created.isEmpty()) {
+            return;
+        }
+        Map<Integer, PriceHistory> current = new LinkedHashMap<>();
+        for (Interval interval : created) {
+            Interval latest = open.get(interval.productId);
+            PriceHistory ph = new PriceHistory();
+            ph.setProductId(latest.productId);
+            ph.setPrice(latest.price);
+            ph.setOriginalPrice(latest.originalPrice);
+            ph.setCurrency(latest.currency);
+            ph.setDealType(latest.dealType);
+            ph.setCapturedAt(latest.validFrom);
+            current.put(latest.productId, ph);
+        }
+        List<PriceHistory> changed = new ArrayList<>(current.values());
+        for (PriceChangeListener listener : listeners) {
+            try {
+                listener.onPricesChanged(changed);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Lỗi trong PriceChangeListener: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Khoảng đang mở (interval_id lớn nhất) của mỗi sản phẩm có trong lô
+     * Trước đó khóa dòng product của các sản phẩm này (FOR UPDATE, theo thứ tự product_id) tới hết
+     * transaction: nhiều tiến trình server ghi cùng một database không thể cùng đọc một khoảng đang mở
+     * rồi cùng mở khoảng mới chồng lên nhau (kể cả khi sản phẩm chưa có khoảng nào để khóa).
+     */
+    private Map<Integer, Interval> loadOpenIntervals(Connection conn, List<PriceHistory> observations)
+            throws SQLException {
+        Set<Integer> productIds = new TreeSet<>();
+        for (PriceHistory ph : observations) {
+            productIds.add(ph.getProductId());
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String lockSql = "SELECT product_id FROM product WHERE product_id IN (" + placeholders + ") " +
+                         "ORDER BY product_id FOR UPDATE";
+        // Đọc có khóa = đọc bản commit mới nhất, không phải snapshot của transaction
+        String sql = "SELECT * FROM price_interval WHERE interval_id IN (" +
+                     "    SELECT MAX(interval_id) FROM price_interval WHERE product_id IN (" + placeholders + ") " +
+                     "    GROUP BY product_id" +
+                     ") FOR UPDATE";
+
+        try (PreparedStatement stmt = conn.prepareStatement(lockSql)) {
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            stmt.executeQuery().close();
+        }
+
+        Map<Integer, Interval> open = new HashMap<>();
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Interval interval = new Interval();
+                    interval.intervalId = rs.getInt("interval_id");
+                    interval.productId = rs.getInt("product_id");
+                    interval.price = rs.getDouble("price");
+                    interval.originalPrice = rs.getDouble("original_price");
+                    interval.currency = rs.getString("currency") != null ? rs.getString("currency") : "VND";
+                    interval.dealType = DealTypes.normalize(rs.getString("deal_type"));
+                    interval.validFrom = rs.getTimestamp("valid_from");
+                    interval.validTo = rs.getTimestamp("valid_to");
+                    interval.observationCount = rs.getInt("observation_count");
+                    open.put(interval.productId, interval);
+                }
+            }
+        }
+        return open;
+    }
+
+    /**
+     * Dừng nhận quan sát mới và xả nốt hàng đợi (chờ tối đa timeoutMs)
+     */
+    public void shutdown(long timeoutMs) {
+        running = false;
+        try {
+            flusher.join(timeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queued", queue.size());
+        stats.put("batches", batches.get());
+        stats.put("rows_written", rowsWritten.get());
+        stats.put("rows_failed", rowsFailed.get());
+        stats.put("batches_retried", batchesRetried.get());
+        stats.put("rejected", rejected.get());
+        stats.put("intervals_opened", intervalsOpened.get());
+        stats.put("intervals_extended", intervalsExtended.get());
+        stats.put("late_dropped", lateDropped.get());
+        stats.put("rollup_upserts", rollupUpserts.get());
+        stats.put("batch_size", batchSize);
+        stats.put("max_delay_ms", maxDelayMs);
+        return stats;
+    }
+
+    /**
+     * Một dòng price_interval (intervalId = 0 nếu chưa ghi)
+     */
+    private static final class Interval {
+        int intervalId;
+        int productId;
+        double price;
+        double originalPrice;
+        String currency;
+        String dealType;
+        Timestamp validFrom;
+        Timestamp validTo;
+        int observationCount;
+        boolean dirty;
+
+        Interval() {
+        }
+
+        Interval(PriceHistory ph) {
+            this.productId = ph.getProductId();
+            this.price = ph.getPrice();
+            this.originalPrice = ph.getOriginalPrice();
+            this.currency = currencyOf(ph);
+            this.dealType = dealTypeOf(ph);
+            this.validFrom = ph.getCapturedAt();
+            this.validTo = ph.getCapturedAt();
+            this.observationCount = 1;
+        }
+
+        boolean sameValues(PriceHistory ph) {
+            return sameAmount(price, ph.getPrice())
+                    && sameAmount(originalPrice, ph.getOriginalPrice())
+                    && currencyOf(ph).equals(currency)
+                    && dealTypeOf(ph).equals(dealType);
+        }
+    }
+
+    /**
+     * So sánh theo DECIMAL(15,2) của cột giá
+     */
+    private static boolean sameAmount(double a, double b) {
+        return Math.round(a * 100) == Math.round(b * 100);
+    }
+
+    private static String currencyOf(PriceHistory ph) {
+        return ph.getCurrency() != null ? ph.getCurrency() : "VND";
+    }
+
+    /**
+     * Giá trị ENUM của cột deal_type (nhãn hiển thị như "Normal", "Flash Sale" được quy về đây),
+     * để so sánh với khoảng đọc từ DB không phân biệt cách viết
+     */
+    private static String dealTypeOf(PriceHistory ph) {
+        return DealTypes.normalize(ph.getDealType());
+    }
+
+    private static final class Pending {
+        final PriceHistory observation;
+        final CompletableFuture<Boolean> future;
+
+        Pending(PriceHistory observation, CompletableFuture<Boolean> future) {
+            this.observation = observation;
+            this.future = future;
+        }
+    }
+}
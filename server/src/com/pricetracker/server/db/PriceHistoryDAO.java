@@ -2,40 +2,66 @@ package com.pricetracker.server.db;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import com.pricetracker.models.PriceHistory;
+import com.pricetracker.server.utils.PageCursor;
 
 /**
- * PriceHistoryDAO - Lớp truy vấn bảng 'price_history'
- * Đồng bộ với cấu trúc bảng thực tế trong MySQL
+ * PriceHistoryDAO - Lớp truy vấn lịch sử giá
+ * Lịch sử giá được lưu dạng khoảng (bảng 'price_interval', xem migration 002):
+ * mỗi dòng là một mức giá giữ nguyên từ valid_from đến valid_to.
+ * Bảng 'price_history' cũ chỉ còn là dữ liệu gốc trước khi nén.
  */
 public class PriceHistoryDAO {
 
+    private static final List<Keyset.SortKey> HISTORY_SORT = List.of(
+            Keyset.SortKey.asc("valid_from", Keyset.Type.TIMESTAMP),
+            Keyset.SortKey.asc("interval_id", Keyset.Type.INT));
+
     /**
      * Lấy danh sách lịch sử giá của 1 sản phẩm (sắp xếp theo thời gian tăng dần)
+     * Mỗi khoảng trả về điểm đầu (valid_from) và, nếu khoảng kéo dài, thêm điểm cuối (valid_to)
+     * cùng giá - biểu đồ vẫn có cùng hình dạng như khi đọc từng dòng price_history.
      */
     public List<PriceHistory> getPriceHistoryByProductId(int productId) {
+        return getPriceHistoryByProductId(productId, null, null);
+    }
+
+    /**
+     * Lịch sử giá trong khoảng [from, to] (null = không giới hạn phía đó)
+     * Trả về mọi khoảng giá giao với [from, to].
+     */
+    public List<PriceHistory> getPriceHistoryByProductId(int productId, Timestamp from, Timestamp to) {
         List<PriceHistory> list = new ArrayList<>();
-        String sql = "SELECT * FROM price_history WHERE product_id = ? ORDER BY recorded_at ASC";
+        String sql = "SELECT * FROM price_interval WHERE product_id = ? AND valid_to >= ? AND valid_from <= ? " +
+                     "ORDER BY valid_from ASC, interval_id ASC";
 
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, productId);
+            stmt.setTimestamp(2, from != null ? from : new Timestamp(0));
+            stmt.setTimestamp(3, to != null ? to : Timestamp.valueOf("9999-12-31 23:59:59"));
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
-                PriceHistory ph = new PriceHistory();
-                ph.setPriceId(rs.getInt("price_id"));
-                ph.setProductId(rs.getInt("product_id"));
-                ph.setPrice(rs.getDouble("price"));
-                ph.setCapturedAt(rs.getTimestamp("recorded_at")); // vẫn dùng capturedAt trong object, nhưng đọc từ recorded_at
-                list.add(ph);
+                PriceHistory start = mapInterval(rs, rs.getTimestamp("valid_from"));
+                list.add(start);
+
+                Timestamp validTo = rs.getTimestamp("valid_to");
+                if (validTo != null && validTo.after(start.getCapturedAt())) {
+                    list.add(mapInterval(rs, validTo));
+                }
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Lỗi khi truy vấn bảng price_history");
+            System.err.println("❌ Lỗi khi truy vấn bảng price_interval");
             e.printStackTrace();
         }
 
@@ -43,33 +69,117 @@ public class PriceHistoryDAO {
     }
 
     /**
-     * Thêm một bản ghi giá mới cho sản phẩm
+     * Lịch sử giá theo trang keyset (tăng dần theo valid_from, interval_id)
+     * limit tính theo số khoảng giá; mỗi khoảng cho 1-2 điểm như getPriceHistoryByProductId
+     * @param cursor next_cursor của trang trước, null = trang đầu
+     * @throws IllegalArgumentException nếu cursor không hợp lệ
      */
-    public boolean addPriceRecord(int productId, double price) {
-        String sql = "INSERT INTO price_history (product_id, price, recorded_at, deal_type, currency) " +
-                     "VALUES (?, ?, NOW(), 'NORMAL', 'VND')";
+    public Page<PriceHistory> getPriceHistoryPage(int productId, String cursor, int limit) {
+        List<PriceHistory> list = new ArrayList<>();
+        String scope = "history:" + productId;
+        String[] after = PageCursor.decode(scope, cursor, HISTORY_SORT.size());
+        String[] lastKey = null;
+        boolean hasMore = false;
+
+        String sql = "SELECT *" + Keyset.selectKeys(HISTORY_SORT) + " FROM price_interval WHERE product_id = ?" +
+                     (after != null ? " AND " + Keyset.after(HISTORY_SORT) : "") +
+                     Keyset.orderBy(HISTORY_SORT) + " LIMIT ?";
 
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, productId);
-            stmt.setDouble(2, price);
+            int index = 2;
+            if (after != null) {
+                index = Keyset.bind(stmt, index, HISTORY_SORT, after);
+            }
+            stmt.setInt(index, limit + 1);
+            ResultSet rs = stmt.executeQuery();
+
+            int intervals = 0;
+            while (rs.next()) {
+                // Dòng thứ limit + 1 chỉ để biết còn trang sau
+                if (intervals == limit) {
+                    hasMore = true;
+                    break;
+                }
+                intervals++;
+                lastKey = Keyset.read(rs, HISTORY_SORT);
 
-            int rows = stmt.executeUpdate();
-            return rows > 0;
+                PriceHistory start = mapInterval(rs, rs.getTimestamp("valid_from"));
+                list.add(start);
+
+                Timestamp validTo = rs.getTimestamp("valid_to");
+                if (validTo != null && validTo.after(start.getCapturedAt())) {
+                    list.add(mapInterval(rs, validTo));
+                }
+            }
 
         } catch (SQLException e) {
-            System.err.println("❌ Lỗi khi thêm bản ghi giá mới");
+            System.err.println("❌ Lỗi khi truy vấn bảng price_interval");
             e.printStackTrace();
+        }
+
+        return new Page<>(list, hasMore ? PageCursor.encode(scope, lastKey) : null);
+    }
+
+    /**
+     * Thời điểm quan sát giá đầu tiên của sản phẩm (null nếu chưa có)
+     */
+    public Timestamp getFirstObservedAt(int productId) {
+        String sql = "SELECT MIN(valid_from) AS first_at FROM price_interval WHERE product_id = ?";
+
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, productId);
+            ResultSet rs = stmt.executeQuery();
+            if (rs.next()) {
+                return rs.getTimestamp("first_at");
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Lỗi khi lấy thời điểm quan sát đầu tiên");
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Thêm một bản ghi giá mới cho sản phẩm
+     * Đi qua PriceHistoryBatchWriter (ghi theo lô) và chờ kết quả - giữ cho code cũ;
+     * code mới nên dùng addPriceRecordAsync để không bị chặn
+     */
+    public boolean addPriceRecord(int productId, double price) {
+        PriceHistory ph = new PriceHistory();
+        ph.setProductId(productId);
+        ph.setPrice(price);
+        ph.setOriginalPrice(price);
+        ph.setCurrency("VND");
+        ph.setDealType("NORMAL");
+
+        try {
+            return addPriceRecordAsync(ph).join();
+        } catch (Exception e) {
+            System.err.println("❌ Lỗi khi thêm bản ghi giá mới: " + e.getMessage());
             return false;
         }
     }
 
     /**
-     * Lấy giá mới nhất của sản phẩm
+     * Đưa một quan sát giá vào hàng đợi ghi theo lô
+     * @param observation productId, price, originalPrice, currency, dealType, capturedAt (null = bây giờ)
+     * @return Future: true khi đã commit, false nếu lỗi DB
+     */
+    public CompletableFuture<Boolean> addPriceRecordAsync(PriceHistory observation) {
+        return PriceHistoryBatchWriter.getInstance().submit(observation);
+    }
+
+    /**
+     * Lấy giá mới nhất của sản phẩm (khoảng đang mở)
      */
     public Double getLatestPrice(int productId) {
-        String sql = "SELECT price FROM price_history WHERE product_id = ? ORDER BY recorded_at DESC LIMIT 1";
+        String sql = "SELECT price FROM price_interval WHERE product_id = ? ORDER BY interval_id DESC LIMIT 1";
 
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -94,7 +204,8 @@ public class PriceHistoryDAO {
      * @return PriceHistory with current price data, or null if not found
      */
     public PriceHistory getCurrentPrice(int productId) {
-        String sql = "SELECT * FROM price_history WHERE product_id = ? ORDER BY recorded_at DESC LIMIT 1";
+        // The open interval; captured_at is its last observation
+        String sql = "SELECT * FROM price_interval WHERE product_id = ? ORDER BY interval_id DESC LIMIT 1";
         
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -103,15 +214,7 @@ public class PriceHistoryDAO {
             ResultSet rs = stmt.executeQuery();
             
             if (rs.next()) {
-                PriceHistory ph = new PriceHistory();
-                ph.setPriceId(rs.getInt("price_id"));
-                ph.setProductId(rs.getInt("product_id"));
-                ph.setPrice(rs.getDouble("price"));
-                ph.setOriginalPrice(rs.getDouble("original_price"));
-                ph.setCurrency(rs.getString("currency"));
-                ph.setDealType(rs.getString("deal_type"));
-                ph.setCapturedAt(rs.getTimestamp("recorded_at"));
-                return ph;
+                return mapInterval(rs, rs.getTimestamp("valid_to"));
             }
             
         } catch (SQLException e) {
@@ -120,4 +223,56 @@ public class PriceHistoryDAO {
         
         return null;
     }
+
+    /**
+     * Giá hiện tại của nhiều sản phẩm trong một truy vấn (khoảng giá mới nhất của mỗi sản phẩm)
+     * @return product_id -> giá hiện tại; sản phẩm chưa có giá thì không có trong map; null nếu lỗi
+     */
+    public Map<Integer, PriceHistory> getCurrentPrices(Collection<Integer> productIds) {
+        Map<Integer, PriceHistory> prices = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return prices;
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT * FROM price_interval WHERE interval_id IN (" +
+                     "    SELECT MAX(interval_id) FROM price_interval " +
+                     "    WHERE product_id IN (" + placeholders + ") GROUP BY product_id)";
+
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                PriceHistory price = mapInterval(rs, rs.getTimestamp("valid_to"));
+                prices.put(price.getProductId(), price);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("Error getting current prices: " + e.getMessage());
+            return null;
+        }
+
+        return prices;
+    }
+
+    /**
+     * Map một dòng price_interval thành một điểm giá tại thời điểm capturedAt
+     */
+    private PriceHistory mapInterval(ResultSet rs, Timestamp capturedAt) throws SQLException {
+        PriceHistory ph = new PriceHistory();
+        ph.setPriceId(rs.getInt("interval_id"));
+        ph.setProductId(rs.getInt("product_id"));
+        ph.setPrice(rs.getDouble("price"));
+        ph.setOriginalPrice(rs.getDouble("original_price"));
+        ph.setCurrency(rs.getString("currency"));
+        ph.setDealType(rs.getString("deal_type"));
+        ph.setCapturedAt(capturedAt);
+        return ph;
+    }
 }
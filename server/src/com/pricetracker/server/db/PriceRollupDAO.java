@@ -0,0 +1,207 @@
+package com.pricetracker.server.db;
+
+import java.sql.*;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.pricetracker.models.PriceHistory;
+import com.pricetracker.models.PriceRollup;
+
+/**
+ * PriceRollupDAO - Lớp truy vấn bảng 'price_rollup' (giá tổng hợp theo ngày / tuần)
+ * Bảng được cập nhật dần trong cùng transaction với PriceHistoryBatchWriter (nơi ghi giá duy nhất,
+ * scraper.py cũng gửi qua /prices/ingest) và được điền dữ liệu cũ một lần bằng migration 003.
+ */
+public class PriceRollupDAO {
+
+    public static final String RAW = "RAW";
+    public static final String AUTO = "AUTO";
+
+    // Ngưỡng chọn độ phân giải tự động: vài trăm điểm cho mỗi biểu đồ
+    private static final long RAW_MAX_RANGE_DAYS = 14;
+    private static final long DAY_MAX_RANGE_DAYS = 400;
+
+    private static final String UPSERT_SQL =
+            "INSERT INTO price_rollup (product_id, resolution, bucket_start, open_price, open_at, " +
+            "close_price, close_at, min_price, max_price, sum_price, sample_count) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " +
+            // Thứ tự gán quan trọng: open_price/close_price phải so với open_at/close_at CŨ
+            "  open_price = IF(VALUES(open_at) < open_at, VALUES(open_price), open_price), " +
+            "  open_at = LEAST(open_at, VALUES(open_at)), " +
+            "  close_price = IF(VALUES(close_at) >= close_at, VALUES(close_price), close_price), " +
+            "  close_at = GREATEST(close_at, VALUES(close_at)), " +
+            "  min_price = LEAST(min_price, VALUES(min_price)), " +
+            "  max_price = GREATEST(max_price, VALUES(max_price)), " +
+            "  sum_price = sum_price + VALUES(sum_price), " +
+            "  sample_count = sample_count + VALUES(sample_count)";
+
+    /**
+     * Lấy các dòng tổng hợp của 1 sản phẩm trong khoảng thời gian (tăng dần theo bucket_start)
+     * @param resolution PriceRollup.DAY hoặc PriceRollup.WEEK
+     * @param from Mốc bắt đầu (null = từ đầu)
+     * @param to Mốc kết thúc (null = đến nay)
+     */
+    public List<PriceRollup> getRollups(int productId, String resolution, Timestamp from, Timestamp to) {
+        List<PriceRollup> list = new ArrayList<>();
+        String sql = "SELECT * FROM price_rollup WHERE product_id = ? AND resolution = ? " +
+                     "AND bucket_start >= ? AND bucket_start <= ? ORDER BY bucket_start ASC";
+
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, productId);
+            stmt.setString(2, resolution);
+            // Bucket chứa "from" bắt đầu trước "from"
+            stmt.setDate(3, from != null ? Date.valueOf(bucketStart(from, resolution)) : Date.valueOf("1970-01-01"));
+            stmt.setDate(4, to != null ? Date.valueOf(to.toLocalDateTime().toLocalDate()) : Date.valueOf("9999-12-31"));
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                PriceRollup rollup = new PriceRollup();
+                rollup.setProductId(rs.getInt("product_id"));
+                rollup.setResolution(rs.getString("resolution"));
+                rollup.setBucketStart(new Timestamp(rs.getDate("bucket_start").getTime()));
+                rollup.setOpenPrice(rs.getDouble("open_price"));
+                rollup.setClosePrice(rs.getDouble("close_price"));
+                rollup.setMinPrice(rs.getDouble("min_price"));
+                rollup.setMaxPrice(rs.getDouble("max_price"));
+                rollup.setSumPrice(rs.getDouble("sum_price"));
+                rollup.setSampleCount(rs.getInt("sample_count"));
+                rollup.setCloseAt(rs.getTimestamp("close_at"));
+                list.add(rollup);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Lỗi khi truy vấn bảng price_rollup");
+            e.printStackTrace();
+        }
+
+        return list;
+    }
+
+    /**
+     * Chuẩn hóa tham số resolution (không phân biệt hoa thường; null / rỗng = AUTO)
+     * @return AUTO, RAW, PriceRollup.DAY hoặc PriceRollup.WEEK
+     * @throws IllegalArgumentException nếu không phải một trong các giá trị đó
+     */
+    public static String parseResolution(String requested) {
+        String resolution = requested == null || requested.isBlank() ? AUTO : requested.trim().toUpperCase(Locale.ROOT);
+        if (AUTO.equals(resolution) || RAW.equals(resolution)
+                || PriceRollup.DAY.equals(resolution) || PriceRollup.WEEK.equals(resolution)) {
+            return resolution;
+        }
+        throw new IllegalArgumentException("Unknown resolution: " + requested + " (allowed: " + AUTO + ", " + RAW +
+                ", " + PriceRollup.DAY + ", " + PriceRollup.WEEK + ")");
+    }
+
+    /**
+     * Chọn độ phân giải rẻ nhất vẫn phủ được khoảng thời gian yêu cầu
+     * @param requested "AUTO", "RAW", "DAY" hoặc "WEEK" (null = AUTO)
+     * @param firstObservedAt Lần quan sát đầu tiên của sản phẩm - dùng khi from = null
+     * @return RAW, PriceRollup.DAY hoặc PriceRollup.WEEK
+     * @throws IllegalArgumentException nếu requested không hợp lệ (xem parseResolution)
+     */
+    public static String chooseResolution(String requested, Timestamp from, Timestamp to, Timestamp firstObservedAt) {
+        String resolution = parseResolution(requested);
+        if (!AUTO.equals(resolution)) {
+            return resolution;
+        }
+
+        Timestamp start = from != null ? from : firstObservedAt;
+        if (start == null) {
+            return RAW;
+        }
+        long end = to != null ? to.getTime() : System.currentTimeMillis();
+        long rangeDays = (end - start.getTime()) / (24L * 60 * 60 * 1000);
+
+        if (rangeDays <= RAW_MAX_RANGE_DAYS) {
+            return RAW;
+        }
+        return rangeDays <= DAY_MAX_RANGE_DAYS ? PriceRollup.DAY : PriceRollup.WEEK;
+    }
+
+    /**
+     * Ngày bắt đầu bucket: chính ngày đó (DAY) hoặc thứ Hai đầu tuần (WEEK, giống WEEKDAY() của MySQL)
+     */
+    static LocalDate bucketStart(Timestamp at, String resolution) {
+        LocalDate day = at.toLocalDateTime().toLocalDate();
+        if (PriceRollup.WEEK.equals(resolution)) {
+            return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        }
+        return day;
+    }
+
+    /**
+     * Cộng dồn một lô quan sát vào price_rollup (gọi bên trong transaction của batch writer)
+     * Gom theo (sản phẩm, độ phân giải, bucket) trong bộ nhớ trước, nên mỗi bucket chỉ một lệnh upsert.
+     * @param observations Các quan sát đã được chấp nhận, đã có capturedAt
+     * @return Số dòng upsert
+     */
+    static int upsertRollups(Connection conn, List<PriceHistory> observations) throws SQLException {
+        Map<String, PriceRollup> buckets = new LinkedHashMap<>();
+        Map<String, Timestamp> openAt = new LinkedHashMap<>();
+
+        for (PriceHistory ph : observations) {
+            for (String resolution : new String[]{PriceRollup.DAY, PriceRollup.WEEK}) {
+                LocalDate start = bucketStart(ph.getCapturedAt(), resolution);
+                String key = ph.getProductId() + "|" + resolution + "|" + start;
+                PriceRollup rollup = buckets.get(key);
+
+                if (rollup == null) {
+                    rollup = new PriceRollup();
+                    rollup.setProductId(ph.getProductId());
+                    rollup.setResolution(resolution);
+                    rollup.setBucketStart(Timestamp.valueOf(start.atStartOfDay()));
+                    rollup.setOpenPrice(ph.getPrice());
+                    rollup.setClosePrice(ph.getPrice());
+                    rollup.setMinPrice(ph.getPrice());
+                    rollup.setMaxPrice(ph.getPrice());
+                    rollup.setCloseAt(ph.getCapturedAt());
+                    openAt.put(key, ph.getCapturedAt());
+                    buckets.put(key, rollup);
+                } else {
+                    if (ph.getCapturedAt().before(openAt.get(key))) {
+                        rollup.setOpenPrice(ph.getPrice());
+                        openAt.put(key, ph.getCapturedAt());
+                    }
+                    if (!ph.getCapturedAt().before(rollup.getCloseAt())) {
+                        rollup.setClosePrice(ph.getPrice());
+                        rollup.setCloseAt(ph.getCapturedAt());
+                    }
+                    rollup.setMinPrice(Math.min(rollup.getMinPrice(), ph.getPrice()));
+                    rollup.setMaxPrice(Math.max(rollup.getMaxPrice(), ph.getPrice()));
+                }
+                rollup.setSumPrice(rollup.getSumPrice() + ph.getPrice());
+                rollup.setSampleCount(rollup.getSampleCount() + 1);
+            }
+        }
+
+        try (PreparedStatement stmt = conn.prepareStatement(UPSERT_SQL)) {
+            for (Map.Entry<String, PriceRollup> entry : buckets.entrySet()) {
+                PriceRollup rollup = entry.getValue();
+                stmt.setInt(1, rollup.getProductId());
+                stmt.setString(2, rollup.getResolution());
+                stmt.setDate(3, new Date(rollup.getBucketStart().getTime()));
+                stmt.setDouble(4, rollup.getOpenPrice());
+                stmt.setTimestamp(5, openAt.get(entry.getKey()));
+                stmt.setDouble(6, rollup.getClosePrice());
+                stmt.setTimestamp(7, rollup.getCloseAt());
+                stmt.setDouble(8, rollup.getMinPrice());
+                stmt.setDouble(9, rollup.getMaxPrice());
+                stmt.setDouble(10, rollup.getSumPrice());
+                stmt.setInt(11, rollup.getSampleCount());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+
+        return buckets.size();
+    }
+}
@@ -1,13 +1,45 @@
 package com.pricetracker.server.db;
 
+import com.pricetracker.models.PriceHistory;
 import com.pricetracker.models.Product;
+import com.pricetracker.models.ProductSummary;
+import com.pricetracker.server.utils.PageCursor;
+import com.pricetracker.server.utils.SingleFlight;
 import com.pricetracker.server.utils.TikiScraperUtil;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 public class ProductDAO {
 
+    // Shared by every DAO instance so HTTP, TCP and ingestion callers never insert the same product twice concurrently
+    private static final SingleFlight<String, Product> INSERT_FLIGHT = new SingleFlight<>("product-insert");
+    
+    // Default page sizes (the old hard LIMITs) for callers that do not page
+    private static final int SEARCH_PAGE_SIZE = 50;
+    private static final int DEALS_PAGE_SIZE = 100;
+    private static final List<Keyset.SortKey> SEARCH_SORT =
+            List.of(Keyset.SortKey.asc("p.product_id", Keyset.Type.INT));
+    
+    // Upper bound for waiting on the batched write of a new product's first price
+    private static final long INITIAL_PRICE_WAIT_MS = 5000;
+    
+    // Columns of a ProductSummary (no description TEXT); "cur" is the product's current price interval
+    private static final String SUMMARY_COLUMNS =
+            "p.product_id, p.group_id, p.name, p.brand, p.url, p.image_url, p.source, pg.group_name, " +
+            "cur.price, cur.original_price, cur.currency, cur.deal_type, cur.valid_from AS price_since";
+    private static final String CURRENT_PRICE_JOIN =
+            "LEFT JOIN price_interval cur ON cur.interval_id = (" +
+            "SELECT MAX(interval_id) FROM price_interval WHERE product_id = p.product_id) ";
+
     public List<Product> getAllProducts() {
         List<Product> list = new ArrayList<>();
         String sql = "SELECT * FROM product LIMIT 10";
@@ -88,14 +120,16 @@ public class ProductDAO {
      * @param groupId The product group ID
      * @param excludeProductId Product ID to exclude (the current product)
      * @param limit Maximum number of similar products to return
-     * @return List of similar products
+     * @return Summaries (with current price) of similar products
      */
-    public List<Product> getSimilarProducts(int groupId, int excludeProductId, int limit) {
-        List<Product> results = new ArrayList<>();
+    public List<ProductSummary> getSimilarProducts(int groupId, int excludeProductId, int limit) {
+        List<ProductSummary> results = new ArrayList<>();
         
-        String sql = "SELECT * FROM product " +
-                     "WHERE group_id = ? AND product_id != ? " +
-                     "ORDER BY product_id DESC " +
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM product p " +
+                     "LEFT JOIN product_group pg ON p.group_id = pg.group_id " +
+                     CURRENT_PRICE_JOIN +
+                     "WHERE p.group_id = ? AND p.product_id != ? " +
+                     "ORDER BY p.product_id DESC " +
                      "LIMIT ?";
         
         try (Connection conn = DatabaseConnectionManager.getConnection();
@@ -108,7 +142,7 @@ public class ProductDAO {
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                results.add(mapResultSetToProduct(rs));
+                results.add(mapResultSetToSummary(rs));
             }
             
         } catch (SQLException e) {
@@ -122,18 +156,33 @@ public class ProductDAO {
      * Search products by name (LIKE search)
      * Improved algorithm: First try exact phrase match, then word boundary match, finally fallback to substring
      * @param keyword Search keyword
-     * @return List of matching products
+     * @return Summaries of matching products
      */
-    public List<Product> searchByNameLike(String keyword) {
-        List<Product> results = new ArrayList<>();
+    public List<ProductSummary> searchByNameLike(String keyword) {
+        return searchByNameLike(keyword, null, SEARCH_PAGE_SIZE).getItems();
+    }
+    
+    /**
+     * Search products by name, one keyset page at a time (ordered by product_id)
+     * @param keyword Search keyword
+     * @param cursor next_cursor of the previous page, or null for the first page
+     * @param limit Page size
+     * @return Page of matching product summaries
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public Page<ProductSummary> searchByNameLike(String keyword, String cursor, int limit) {
+        List<ProductSummary> results = new ArrayList<>();
+        List<String[]> keys = new ArrayList<>();
+        String[] after = PageCursor.decode("search", cursor, SEARCH_SORT.size());
         
         // Use BINARY collation to distinguish between 'áo' and 'ao'
         // Priority 1: Exact phrase match (case-insensitive but accent-sensitive)
         // Priority 2: Word boundary match (space before/after or start/end of string)
         // Priority 3: Substring match with BINARY (accent-sensitive)
-        String sql = "SELECT DISTINCT p.* FROM product p " +
+        String sql = "SELECT DISTINCT " + SUMMARY_COLUMNS + Keyset.selectKeys(SEARCH_SORT) + " FROM product p " +
                      "LEFT JOIN product_group pg ON p.group_id = pg.group_id " +
-                     "WHERE " +
+                     CURRENT_PRICE_JOIN +
+                     "WHERE (" +
                      // Exact match (highest priority)
                      "p.name COLLATE utf8mb4_bin LIKE ? OR " +
                      "p.name COLLATE utf8mb4_bin LIKE ? OR " +
@@ -141,8 +190,11 @@ public class ProductDAO {
                      "p.name COLLATE utf8mb4_bin LIKE ? OR " +
                      // Search in group name (exact and partial match)
                      "pg.group_name COLLATE utf8mb4_bin LIKE ? OR " +
-                     "pg.group_name COLLATE utf8mb4_bin LIKE ? " +
-                     "LIMIT 50";
+                     "pg.group_name COLLATE utf8mb4_bin LIKE ?" +
+                     ")" +
+                     (after != null ? " AND " + Keyset.after(SEARCH_SORT) : "") +
+                     Keyset.orderBy(SEARCH_SORT) +
+                     " LIMIT ?";
         
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
@@ -157,26 +209,48 @@ public class ProductDAO {
             stmt.setString(5, keyword);  // Exact group name match
             stmt.setString(6, "%" + keyword + "%");  // Partial group name match
             
+            int index = 7;
+            if (after != null) {
+                index = Keyset.bind(stmt, index, SEARCH_SORT, after);
+            }
+            stmt.setInt(index, limit + 1);  // One extra row tells us whether there is a next page
+            
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                results.add(mapResultSetToProduct(rs));
+                results.add(mapResultSetToSummary(rs));
+                keys.add(Keyset.read(rs, SEARCH_SORT));
             }
             
         } catch (SQLException e) {
             System.err.println("Error searching by name: " + e.getMessage());
         }
         
-        return results;
+        return Keyset.toPage(results, keys, limit, "search");
     }
     
     /**
      * Insert product from Tiki scraping
      * First scrapes the product data, then inserts into database
      * @param tikiUrl The Tiki product URL
-     * @return The inserted Product with product_id, or null if failed
+     * @return The inserted Product with product_id (or the existing one, if another caller
+     *         inserted it since this caller looked), or null if failed
      */
     public Product insertProductFromTiki(String tikiUrl) {
+        try {
+            return INSERT_FLIGHT.execute(TikiScraperUtil.normalizeUrl(tikiUrl), () -> {
+                // The single-flight only merges overlapping calls: a flight that finished after
+                // this caller's own searchByUrl has already inserted the product
+                Product existing = searchByUrl(tikiUrl);
+                return existing != null ? existing : doInsertProductFromTiki(tikiUrl);
+            });
+        } catch (Exception e) {
+            System.err.println("Error inserting product: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private Product doInsertProductFromTiki(String tikiUrl) {
         // Scrape product data from Tiki
         Product product = TikiScraperUtil.scrapeProductFromUrl(tikiUrl);
         if (product == null) {
@@ -231,25 +305,21 @@ public class ProductDAO {
             return;
         }
         
-        double price = (double) priceData[0];
-        double originalPrice = (double) priceData[1];
-        String dealType = (String) priceData[2];
-        
-        String sql = "INSERT INTO price_history (product_id, price, original_price, currency, deal_type) " +
-                     "VALUES (?, ?, ?, 'VND', ?)";
+        PriceHistory observation = new PriceHistory();
+        observation.setProductId(productId);
+        observation.setPrice((double) priceData[0]);
+        observation.setOriginalPrice((double) priceData[1]);
+        observation.setCurrency("VND");
+        observation.setDealType((String) priceData[2]);
         
-        try (Connection conn = DatabaseConnectionManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
-            
-            stmt.setInt(1, productId);
-            stmt.setDouble(2, price);
-            stmt.setDouble(3, originalPrice);
-            stmt.setString(4, dealType);
-            
-            stmt.executeUpdate();
-            System.out.println("✅ Inserted initial price: " + price + " VND");
-            
-        } catch (SQLException e) {
+        try {
+            // Runs on the ingestion pool - wait so the caller sees the price right after insert
+            boolean saved = new PriceHistoryDAO().addPriceRecordAsync(observation)
+                    .get(INITIAL_PRICE_WAIT_MS, TimeUnit.MILLISECONDS);
+            if (saved) {
+                System.out.println("✅ Inserted initial price: " + observation.getPrice() + " VND");
+            }
+        } catch (Exception e) {
             System.err.println("Error inserting initial price: " + e.getMessage());
         }
     }
@@ -272,106 +342,364 @@ public class ProductDAO {
         return p;
     }
     
+    /**
+     * Map a SUMMARY_COLUMNS row to ProductSummary (price columns are NULL for products without a price)
+     */
+    private ProductSummary mapResultSetToSummary(ResultSet rs) throws SQLException {
+        ProductSummary s = new ProductSummary();
+        s.setProductId(rs.getInt("product_id"));
+        s.setGroupId(rs.getInt("group_id"));
+        s.setGroupName(rs.getString("group_name"));
+        s.setName(rs.getString("name"));
+        s.setBrand(rs.getString("brand"));
+        s.setUrl(rs.getString("url"));
+        s.setImageUrl(rs.getString("image_url"));
+        s.setSource(rs.getString("source"));
+        
+        double price = rs.getDouble("price");
+        if (!rs.wasNull()) {
+            s.setHasPrice(true);
+            s.setPrice(price);
+            s.setOriginalPrice(rs.getDouble("original_price"));
+            s.setCurrency(rs.getString("currency"));
+            s.setDealType(rs.getString("deal_type"));
+            s.setPriceSince(rs.getTimestamp("price_since"));
+        }
+        return s;
+    }
+    
+    /**
+     * Every product whose current price is below its original price, in one scan of the latest intervals
+     * (input for DealsEngine, which builds the in-memory rankings of all deal types from it)
+     * @return Summaries with price fields and price_since set; null on error
+     */
+    public List<ProductSummary> getDealCandidates() {
+        List<ProductSummary> results = new ArrayList<>();
+        
+        String sql = "SELECT " + SUMMARY_COLUMNS.replace("cur.", "ph.") + " FROM product p " +
+                     "INNER JOIN price_interval ph ON p.product_id = ph.product_id " +
+                     "LEFT JOIN product_group pg ON p.group_id = pg.group_id " +
+                     "WHERE ph.interval_id IN (" +
+                     "    SELECT MAX(interval_id) FROM price_interval GROUP BY product_id" +
+                     ") AND ph.original_price > ph.price";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql);
+             ResultSet rs = stmt.executeQuery()) {
+            
+            while (rs.next()) {
+                results.add(mapResultSetToSummary(rs));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error loading deal candidates: " + e.getMessage());
+            e.printStackTrace();
+            return null;
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Data version of a product's detail page, for HTTP validators (ETag)
+     * Changes whenever the current price interval changes or is extended, a review is added or the
+     * group is renamed: "<current interval_id>.<its observation_count>-<review_count>-<group name hash>"
+     * @param withGroupPrices Also cover the similar products' prices: any new interval in the product's
+     *                        group (a price change, or a new product's first price) adds "-g<max interval_id>"
+     * @return Version string, or null if the product does not exist or on error
+     */
+    public String getDetailVersion(int productId, boolean withGroupPrices) {
+        String sql = "SELECT cur.interval_id, cur.observation_count, ra.review_count, pg.group_name" +
+                     (withGroupPrices
+                             ? ", (SELECT MAX(gi.interval_id) FROM product gp " +
+                               "JOIN price_interval gi ON gi.product_id = gp.product_id " +
+                               "WHERE gp.group_id = p.group_id) AS group_interval_id "
+                             : " ") +
+                     "FROM product p " +
+                     "LEFT JOIN product_group pg ON p.group_id = pg.group_id " +
+                     CURRENT_PRICE_JOIN +
+                     "LEFT JOIN review_aggregate ra ON ra.product_id = p.product_id " +
+                     "WHERE p.product_id = ?";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            stmt.setInt(1, productId);
+            ResultSet rs = stmt.executeQuery();
+            
+            if (rs.next()) {
+                String version = rs.getLong("interval_id") + "." + rs.getLong("observation_count") + "-" +
+                                 rs.getLong("review_count") + "-" +
+                                 Integer.toHexString(Objects.hashCode(rs.getString("group_name")));
+                if (withGroupPrices) {
+                    version += "-g" + rs.getLong("group_interval_id");
+                }
+                return version;
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting product detail version: " + e.getMessage());
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Summaries (with current price) of the given products, in no particular order
+     * @return Summaries of the products that exist; null on error
+     */
+    public List<ProductSummary> getSummariesByIds(List<Integer> productIds) {
+        List<ProductSummary> results = new ArrayList<>();
+        if (productIds.isEmpty()) {
+            return results;
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT " + SUMMARY_COLUMNS + " FROM product p " +
+                     "LEFT JOIN product_group pg ON p.group_id = pg.group_id " +
+                     CURRENT_PRICE_JOIN +
+                     "WHERE p.product_id IN (" + placeholders + ")";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                results.add(mapResultSetToSummary(rs));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error loading product summaries: " + e.getMessage());
+            return null;
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Products by ID in one query (batch lookups)
+     * @return Product ID -> product, for the IDs that exist; null on error
+     */
+    public Map<Integer, Product> getProductsByIds(Collection<Integer> productIds) {
+        Map<Integer, Product> results = new HashMap<>();
+        if (productIds.isEmpty()) {
+            return results;
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT * FROM product WHERE product_id IN (" + placeholders + ")";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                Product product = mapResultSetToProduct(rs);
+                results.put(product.getProductId(), product);
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error loading products by IDs: " + e.getMessage());
+            return null;
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Which of the given product IDs exist (validating writes before they are queued)
+     * @return The existing IDs; null on error
+     */
+    public Set<Integer> getExistingProductIds(Collection<Integer> productIds) {
+        Set<Integer> results = new HashSet<>();
+        if (productIds.isEmpty()) {
+            return results;
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT product_id FROM product WHERE product_id IN (" + placeholders + ")";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                results.add(rs.getInt("product_id"));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error checking product IDs: " + e.getMessage());
+            return null;
+        }
+        
+        return results;
+    }
+    
+    /**
+     * Groups of the given products (invalidating cached pages that list a group's products)
+     * @return The distinct group IDs; null on error
+     */
+    public Set<Integer> getGroupIds(Collection<Integer> productIds) {
+        Set<Integer> results = new HashSet<>();
+        if (productIds.isEmpty()) {
+            return results;
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT DISTINCT group_id FROM product WHERE product_id IN (" + placeholders + ")";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                results.add(rs.getInt("group_id"));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting product group IDs: " + e.getMessage());
+            return null;
+        }
+        
+        return results;
+    }
+    
     /**
      * NEW METHOD: Get products by deal type (for discount page)
      * Logic sorting:
      * - ALL: Giảm giá HOT NHẤT (% giảm cao nhất)
-     * - FLASH_SALE: VỪA MỚI GIẢM (recorded_at gần nhất)
+     * - FLASH_SALE: VỪA MỚI GIẢM (khoảng giá bắt đầu gần nhất)
      * - HOT_DEAL: GIẢM SÂU (% giảm cao + giá trị tiết kiệm lớn)
      * - TRENDING: MỖI DANH MỤC 1 SẢN PHẨM GIẢM GIÁ SÂU NHẤT
      * 
      * @param dealType "FLASH_SALE", "HOT_DEAL", "TRENDING", or "ALL" for all deals
-     * @return List of products with the specified deal type
+     * @return Summaries of products with the specified deal type
+     */
+    public List<ProductSummary> getProductsByDealType(String dealType) {
+        return getProductsByDealType(dealType, null, DEALS_PAGE_SIZE).getItems();
+    }
+    
+    /**
+     * Get products by deal type, one keyset page at a time (same ordering as above,
+     * ties broken by product_id / group_id)
+     * The sort keys are computed (discount ratio, savings), so no index serves them: every page
+     * still scans and sorts all current deals. The deals endpoints read the in-memory DealsIndex;
+     * this query is its fallback.
+     * @param dealType "FLASH_SALE", "HOT_DEAL", "TRENDING", "ALL" or another deal_type value
+     * @param cursor next_cursor of the previous page, or null for the first page
+     * @param limit Page size
+     * @return Page of product summaries (price fields from the current interval)
+     * @throws IllegalArgumentException if the cursor is invalid
      */
-    public List<Product> getProductsByDealType(String dealType) {
-        List<Product> results = new ArrayList<>();
+    public Page<ProductSummary> getProductsByDealType(String dealType, String cursor, int limit) {
+        List<ProductSummary> results = new ArrayList<>();
+        List<String[]> keys = new ArrayList<>();
+        
+        String discount = "((ph.original_price - ph.price) / ph.original_price)";
+        String savings = "(ph.original_price - ph.price)";
+        String latestInterval = "ph.interval_id IN (" +
+                                "    SELECT MAX(interval_id) FROM price_interval GROUP BY product_id" +
+                                ")";
         
-        String sql;
+        // ph is already the current interval, so it doubles as "cur" for the summary columns
+        String columns = SUMMARY_COLUMNS.replace("cur.", "ph.");
+        String select = "SELECT DISTINCT " + columns;
+        String from = " FROM product p " +
+                      "INNER JOIN price_interval ph ON p.product_id = ph.product_id " +
+                      "LEFT JOIN product_group pg ON p.group_id = pg.group_id ";
+        String where = " WHERE " + latestInterval + " AND ph.original_price > ph.price";
+        String groupBy = "";
+        List<Keyset.SortKey> sort;
+        boolean bindDealType = false;
         
         if ("ALL".equals(dealType)) {
             // TẤT CẢ DEALS HOT: Sản phẩm giảm giá HOT NHẤT (% giảm cao nhất)
-            sql = "SELECT DISTINCT p.*, ph.original_price, ph.price, ph.recorded_at " +
-                  "FROM product p " +
-                  "INNER JOIN price_history ph ON p.product_id = ph.product_id " +
-                  "WHERE ph.price_id IN (" +
-                  "    SELECT MAX(price_id) FROM price_history GROUP BY product_id" +
-                  ") AND ph.original_price > ph.price " +
-                  "ORDER BY ((ph.original_price - ph.price) / ph.original_price) DESC " +
-                  "LIMIT 100";
+            sort = List.of(Keyset.SortKey.desc(discount, Keyset.Type.DECIMAL),
+                           Keyset.SortKey.asc("p.product_id", Keyset.Type.INT));
                   
         } else if ("FLASH_SALE".equals(dealType)) {
-            // FLASH SALE: VỪA MỚI GIẢM GIÁ (recorded_at mới nhất)
-            sql = "SELECT DISTINCT p.*, ph.original_price, ph.price, ph.recorded_at " +
-                  "FROM product p " +
-                  "INNER JOIN price_history ph ON p.product_id = ph.product_id " +
-                  "WHERE ph.price_id IN (" +
-                  "    SELECT MAX(price_id) FROM price_history GROUP BY product_id" +
-                  ") AND ph.deal_type = 'FLASH_SALE' AND ph.original_price > ph.price " +
-                  "ORDER BY ph.recorded_at DESC, ((ph.original_price - ph.price) / ph.original_price) DESC " +
-                  "LIMIT 100";
+            // FLASH SALE: VỪA MỚI GIẢM GIÁ (valid_from của khoảng giá hiện tại mới nhất)
+            where += " AND ph.deal_type = 'FLASH_SALE'";
+            sort = List.of(Keyset.SortKey.desc("ph.valid_from", Keyset.Type.TIMESTAMP),
+                           Keyset.SortKey.desc(discount, Keyset.Type.DECIMAL),
+                           Keyset.SortKey.asc("p.product_id", Keyset.Type.INT));
                   
         } else if ("HOT_DEAL".equals(dealType)) {
             // HOT DEAL: GIẢM SÂU (kết hợp % giảm và giá trị tiết kiệm)
-            sql = "SELECT DISTINCT p.*, ph.original_price, ph.price, ph.recorded_at " +
-                  "FROM product p " +
-                  "INNER JOIN price_history ph ON p.product_id = ph.product_id " +
-                  "WHERE ph.price_id IN (" +
-                  "    SELECT MAX(price_id) FROM price_history GROUP BY product_id" +
-                  ") AND ph.deal_type = 'HOT_DEAL' AND ph.original_price > ph.price " +
-                  "ORDER BY (ph.original_price - ph.price) DESC, " +
-                  "         ((ph.original_price - ph.price) / ph.original_price) DESC " +
-                  "LIMIT 100";
+            where += " AND ph.deal_type = 'HOT_DEAL'";
+            sort = List.of(Keyset.SortKey.desc(savings, Keyset.Type.DECIMAL),
+                           Keyset.SortKey.desc(discount, Keyset.Type.DECIMAL),
+                           Keyset.SortKey.asc("p.product_id", Keyset.Type.INT));
                   
         } else if ("TRENDING".equals(dealType)) {
             // TRENDING: MỖI DANH MỤC 1 SẢN PHẨM GIẢM GIÁ SÂU NHẤT
             // Logic: Lấy sản phẩm có % giảm giá cao nhất từ mỗi product_group
-            sql = "SELECT p.*, ph.original_price, ph.price, ph.recorded_at " +
-                  "FROM product p " +
-                  "INNER JOIN price_history ph ON p.product_id = ph.product_id " +
-                  "INNER JOIN (" +
-                  "    SELECT p2.group_id, " +
-                  "           MAX((ph2.original_price - ph2.price) / ph2.original_price) as max_discount " +
-                  "    FROM product p2 " +
-                  "    INNER JOIN price_history ph2 ON p2.product_id = ph2.product_id " +
-                  "    WHERE ph2.price_id IN (" +
-                  "        SELECT MAX(price_id) FROM price_history GROUP BY product_id" +
-                  "    ) AND ph2.original_price > ph2.price " +
-                  "    GROUP BY p2.group_id" +
-                  ") AS best_per_group ON p.group_id = best_per_group.group_id " +
-                  "    AND ((ph.original_price - ph.price) / ph.original_price) = best_per_group.max_discount " +
-                  "WHERE ph.price_id IN (" +
-                  "    SELECT MAX(price_id) FROM price_history GROUP BY product_id" +
-                  ") AND ph.original_price > ph.price " +
-                  "GROUP BY p.group_id " +
-                  "ORDER BY ((ph.original_price - ph.price) / ph.original_price) DESC " +
-                  "LIMIT 100";
+            select = "SELECT " + columns;
+            from += "INNER JOIN (" +
+                    "    SELECT p2.group_id, " +
+                    "           MAX((ph2.original_price - ph2.price) / ph2.original_price) as max_discount " +
+                    "    FROM product p2 " +
+                    "    INNER JOIN price_interval ph2 ON p2.product_id = ph2.product_id " +
+                    "    WHERE ph2.interval_id IN (" +
+                    "        SELECT MAX(interval_id) FROM price_interval GROUP BY product_id" +
+                    "    ) AND ph2.original_price > ph2.price " +
+                    "    GROUP BY p2.group_id" +
+                    ") AS best_per_group ON p.group_id = best_per_group.group_id " +
+                    "    AND " + discount + " = best_per_group.max_discount ";
+            groupBy = " GROUP BY p.group_id";
+            sort = List.of(Keyset.SortKey.desc(discount, Keyset.Type.DECIMAL),
+                           Keyset.SortKey.asc("p.group_id", Keyset.Type.INT));
         } else {
             // Fallback: Sort by discount percent
-            sql = "SELECT DISTINCT p.*, ph.original_price, ph.price, ph.recorded_at " +
-                  "FROM product p " +
-                  "INNER JOIN price_history ph ON p.product_id = ph.product_id " +
-                  "WHERE ph.price_id IN (" +
-                  "    SELECT MAX(price_id) FROM price_history GROUP BY product_id" +
-                  ") AND ph.deal_type = ? AND ph.original_price > ph.price " +
-                  "ORDER BY ((ph.original_price - ph.price) / ph.original_price) DESC " +
-                  "LIMIT 100";
+            where += " AND ph.deal_type = ?";
+            bindDealType = true;
+            sort = List.of(Keyset.SortKey.desc(discount, Keyset.Type.DECIMAL),
+                           Keyset.SortKey.asc("p.product_id", Keyset.Type.INT));
         }
         
+        String scope = "deals:" + dealType;
+        String[] after = PageCursor.decode(scope, cursor, sort.size());
+        String sql = select + Keyset.selectKeys(sort) + from + where +
+                     (after != null ? " AND " + Keyset.after(sort) : "") +
+                     groupBy + Keyset.orderBy(sort) + " LIMIT ?";
+        
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
             
-            // Chỉ set parameter nếu không phải các case đặc biệt
-            if (!"ALL".equals(dealType) && 
-                !"FLASH_SALE".equals(dealType) && 
-                !"HOT_DEAL".equals(dealType) && 
-                !"TRENDING".equals(dealType)) {
-                stmt.setString(1, dealType);
+            int index = 1;
+            if (bindDealType) {
+                stmt.setString(index++, dealType);
+            }
+            if (after != null) {
+                index = Keyset.bind(stmt, index, sort, after);
             }
+            stmt.setInt(index, limit + 1);  // One extra row tells us whether there is a next page
             
             ResultSet rs = stmt.executeQuery();
             
             while (rs.next()) {
-                results.add(mapResultSetToProduct(rs));
+                results.add(mapResultSetToSummary(rs));
+                keys.add(Keyset.read(rs, sort));
             }
             
             System.out.println("✓ Found " + results.size() + " products with deal type: " + dealType);
@@ -381,7 +709,7 @@ public class ProductDAO {
             e.printStackTrace();
         }
         
-        return results; 
+        return Keyset.toPage(results, keys, limit, scope);
     }
 }
 
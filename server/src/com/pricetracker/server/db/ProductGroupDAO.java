@@ -1,7 +1,13 @@
 package com.pricetracker.server.db;
 
+import com.pricetracker.server.utils.CategoryClassifier;
+
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -58,6 +64,40 @@ public class ProductGroupDAO {
         return groups;
     }
     
+    /**
+     * Group names for a set of group IDs in one query (batch lookups)
+     * @return Map of group_id to group_name for the groups that exist; null on error
+     */
+    public Map<Integer, String> getGroupNamesByIds(Collection<Integer> groupIds) {
+        Map<Integer, String> groups = new HashMap<>();
+        if (groupIds.isEmpty()) {
+            return groups;
+        }
+        
+        String placeholders = String.join(",", Collections.nCopies(groupIds.size(), "?"));
+        String sql = "SELECT group_id, group_name FROM product_group WHERE group_id IN (" + placeholders + ")";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+            
+            int index = 1;
+            for (int groupId : groupIds) {
+                stmt.setInt(index++, groupId);
+            }
+            ResultSet rs = stmt.executeQuery();
+            
+            while (rs.next()) {
+                groups.put(rs.getInt("group_id"), rs.getString("group_name"));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting group names: " + e.getMessage());
+            return null;
+        }
+        
+        return groups;
+    }
+    
     /**
      * Get group_id by group name (case-insensitive)
      * @param groupName The group name to search for
@@ -82,4 +122,30 @@ public class ProductGroupDAO {
         
         return 8; // Default to "Sản phẩm mới"
     }
+    
+    /**
+     * Get category keywords used to classify scraped products into groups
+     * (table product_group_keyword, see database/migrations/001_product_group_keyword.sql)
+     * @return Keyword rules, or an empty list if the table is missing or empty
+     */
+    public List<CategoryClassifier.Keyword> getCategoryKeywords() {
+        List<CategoryClassifier.Keyword> keywords = new ArrayList<>();
+        String sql = "SELECT k.keyword, k.group_id, k.priority FROM product_group_keyword k " +
+                     "INNER JOIN product_group g ON g.group_id = k.group_id";
+        
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(sql)) {
+            
+            while (rs.next()) {
+                keywords.add(new CategoryClassifier.Keyword(
+                        rs.getString("keyword"), rs.getInt("group_id"), rs.getInt("priority")));
+            }
+            
+        } catch (SQLException e) {
+            System.err.println("Error getting category keywords: " + e.getMessage());
+        }
+        
+        return keywords;
+    }
 }
@@ -0,0 +1,16 @@
+package com.pricetracker.server.db;
+
+import com.pricetracker.models.Review;
+
+/**
+ * ReviewChangeListener - Nhận thông báo khi sản phẩm có review mới
+ * Được ReviewDAO gọi sau khi transaction thêm review đã commit, trên luồng vừa ghi:
+ * xử lý phải nhanh và không được chặn.
+ */
+public interface ReviewChangeListener {
+
+    /**
+     * @param review Review vừa được thêm (đã có review_id)
+     */
+    void onReviewAdded(Review review);
+}
@@ -2,16 +2,61 @@ package com.pricetracker.server.db;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.pricetracker.models.Review;
+import com.pricetracker.models.ReviewAggregate;
+import com.pricetracker.server.utils.PageCursor;
 
 /**
  * ReviewDAO - Lớp truy vấn bảng 'review'
  * Phụ trách lấy, thêm và đếm đánh giá theo sản phẩm
+ * Số lượng / điểm trung bình đọc từ bảng 'review_aggregate' (cập nhật cùng transaction khi thêm review)
  */
 public class ReviewDAO {
 
+    private static final List<Keyset.SortKey> REVIEW_SORT = List.of(
+            Keyset.SortKey.desc("review_date", Keyset.Type.TIMESTAMP),
+            Keyset.SortKey.desc("review_id", Keyset.Type.INT));
+
+    // Cộng một review (đọc lại từ bảng review theo review_id) vào dòng thống kê của sản phẩm
+    private static final String AGGREGATE_UPSERT_SQL =
+            "INSERT INTO review_aggregate (product_id, review_count, rating_sum, " +
+            "star_1, star_2, star_3, star_4, star_5, latest_review_date) " +
+            "SELECT product_id, 1, COALESCE(rating, 0), stars = 1, stars = 2, stars = 3, stars = 4, stars = 5, review_date " +
+            "FROM (SELECT product_id, rating, review_date, " +
+            "      LEAST(5, GREATEST(1, ROUND(COALESCE(rating, 0)))) AS stars " +
+            "      FROM review WHERE review_id = ?) r " +
+            "ON DUPLICATE KEY UPDATE " +
+            "  review_count = review_count + 1, " +
+            "  rating_sum = rating_sum + VALUES(rating_sum), " +
+            "  star_1 = star_1 + VALUES(star_1), " +
+            "  star_2 = star_2 + VALUES(star_2), " +
+            "  star_3 = star_3 + VALUES(star_3), " +
+            "  star_4 = star_4 + VALUES(star_4), " +
+            "  star_5 = star_5 + VALUES(star_5), " +
+            "  latest_review_date = GREATEST(COALESCE(latest_review_date, VALUES(latest_review_date)), " +
+            "                                COALESCE(VALUES(latest_review_date), latest_review_date))";
+
+    // Dùng chung cho mọi ReviewDAO: nơi nào thêm review cũng báo cho cùng các listener
+    private static final List<ReviewChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Đăng ký nhận thông báo khi có review mới (ví dụ để xóa cache trang chi tiết)
+     */
+    public static void addListener(ReviewChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public static void removeListener(ReviewChangeListener listener) {
+        listeners.remove(listener);
+    }
+
     /**
      * Lấy danh sách review theo product_id (mới nhất trước)
      */
@@ -44,23 +89,87 @@ public class ReviewDAO {
         return list;
     }
 
+    /**
+     * Lấy review theo trang keyset (mới nhất trước; cùng ngày thì review_id lớn trước)
+     * @param cursor next_cursor của trang trước, null = trang đầu
+     * @throws IllegalArgumentException nếu cursor không hợp lệ
+     */
+    public Page<Review> getReviewsByProductId(int productId, String cursor, int limit) {
+        List<Review> list = new ArrayList<>();
+        List<String[]> keys = new ArrayList<>();
+        String scope = "reviews:" + productId;
+        String[] after = PageCursor.decode(scope, cursor, REVIEW_SORT.size());
+
+        String sql = "SELECT *" + Keyset.selectKeys(REVIEW_SORT) + " FROM review WHERE product_id = ?" +
+                     (after != null ? " AND " + Keyset.after(REVIEW_SORT) : "") +
+                     Keyset.orderBy(REVIEW_SORT) + " LIMIT ?";
+
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setInt(1, productId);
+            int index = 2;
+            if (after != null) {
+                index = Keyset.bind(stmt, index, REVIEW_SORT, after);
+            }
+            stmt.setInt(index, limit + 1);
+            ResultSet rs = stmt.executeQuery();
+
+            while (rs.next()) {
+                Review r = new Review();
+                r.setReviewId(rs.getInt("review_id"));
+                r.setProductId(rs.getInt("product_id"));
+                r.setReviewerName(rs.getString("reviewer_name"));
+                r.setRating(rs.getInt("rating"));
+                r.setReviewText(rs.getString("review_text"));
+                r.setReviewDate(rs.getTimestamp("review_date"));
+                list.add(r);
+                keys.add(Keyset.read(rs, REVIEW_SORT));
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Lỗi khi truy vấn bảng review");
+            e.printStackTrace();
+        }
+
+        return Keyset.toPage(list, keys, limit, scope);
+    }
+
     /**
      * Thêm một review mới vào database
+     * Dòng review và dòng thống kê review_aggregate được ghi trong cùng một transaction
      */
     public boolean addReview(Review review) {
         String sql = "INSERT INTO review (product_id, reviewer_name, rating, review_text, review_date) " +
                      "VALUES (?, ?, ?, ?, NOW())";
 
-        try (Connection conn = DatabaseConnectionManager.getConnection();
-             PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = DatabaseConnectionManager.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
-            stmt.setInt(1, review.getProductId());
-            stmt.setString(2, review.getReviewerName());
-            stmt.setInt(3, review.getRating());
-            stmt.setString(4, review.getReviewText());
+                stmt.setInt(1, review.getProductId());
+                stmt.setString(2, review.getReviewerName());
+                stmt.setInt(3, review.getRating());
+                stmt.setString(4, review.getReviewText());
 
-            int rows = stmt.executeUpdate();
-            return rows > 0;
+                int rows = stmt.executeUpdate();
+                ResultSet generatedKeys = stmt.getGeneratedKeys();
+                if (rows == 0 || !generatedKeys.next()) {
+                    conn.rollback();
+                    return false;
+                }
+                review.setReviewId(generatedKeys.getInt(1));
+
+                applyToAggregate(conn, review.getReviewId());
+                conn.commit();
+                notifyListeners(review);
+                return true;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
 
         } catch (SQLException e) {
             System.err.println("❌ Lỗi khi thêm review mới");
@@ -69,24 +178,102 @@ public class ReviewDAO {
         }
     }
 
+    private static void notifyListeners(Review review) {
+        for (ReviewChangeListener listener : listeners) {
+            try {
+                listener.onReviewAdded(review);
+            } catch (RuntimeException e) {
+                System.err.println("❌ Lỗi trong ReviewChangeListener: " + e.getMessage());
+            }
+        }
+    }
+
     /**
-     * Đếm số lượng review của một sản phẩm
+     * Cộng một review vừa INSERT vào review_aggregate
+     * Gọi bên trong transaction của nơi ghi review (addReview hoặc luồng nhập review hàng loạt)
+     * để bảng thống kê luôn khớp với bảng review.
      */
-    public int countReviewsByProductId(int productId) {
-        String sql = "SELECT COUNT(*) FROM review WHERE product_id = ?";
+    public static void applyToAggregate(Connection conn, int reviewId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(AGGREGATE_UPSERT_SQL)) {
+            stmt.setInt(1, reviewId);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Lấy thống kê review của một sản phẩm (một dòng theo khóa chính)
+     * @return Thống kê; số lượng = 0 nếu sản phẩm chưa có review
+     */
+    public ReviewAggregate getReviewAggregate(int productId) {
+        ReviewAggregate aggregate = new ReviewAggregate(productId);
+        String sql = "SELECT * FROM review_aggregate WHERE product_id = ?";
+
         try (Connection conn = DatabaseConnectionManager.getConnection();
              PreparedStatement stmt = conn.prepareStatement(sql)) {
 
             stmt.setInt(1, productId);
             ResultSet rs = stmt.executeQuery();
             if (rs.next()) {
-                return rs.getInt(1);
+                mapAggregate(rs, aggregate);
+            }
+
+        } catch (SQLException e) {
+            System.err.println("❌ Lỗi khi truy vấn bảng review_aggregate");
+            e.printStackTrace();
+        }
+        return aggregate;
+    }
+
+    /**
+     * Thống kê review của nhiều sản phẩm trong một truy vấn
+     * @return product_id -> thống kê, có đủ mọi sản phẩm được hỏi (số lượng = 0 nếu chưa có review);
+     *         null nếu lỗi
+     */
+    public Map<Integer, ReviewAggregate> getReviewAggregates(Collection<Integer> productIds) {
+        Map<Integer, ReviewAggregate> aggregates = new HashMap<>();
+        for (int productId : productIds) {
+            aggregates.put(productId, new ReviewAggregate(productId));
+        }
+        if (productIds.isEmpty()) {
+            return aggregates;
+        }
+
+        String placeholders = String.join(",", Collections.nCopies(productIds.size(), "?"));
+        String sql = "SELECT * FROM review_aggregate WHERE product_id IN (" + placeholders + ")";
+
+        try (Connection conn = DatabaseConnectionManager.getConnection();
+             PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            int index = 1;
+            for (int productId : productIds) {
+                stmt.setInt(index++, productId);
+            }
+            ResultSet rs = stmt.executeQuery();
+            while (rs.next()) {
+                mapAggregate(rs, aggregates.get(rs.getInt("product_id")));
             }
 
         } catch (SQLException e) {
-            System.err.println("❌ Lỗi khi đếm review");
+            System.err.println("❌ Lỗi khi truy vấn bảng review_aggregate");
             e.printStackTrace();
+            return null;
+        }
+        return aggregates;
+    }
+
+    private void mapAggregate(ResultSet rs, ReviewAggregate aggregate) throws SQLException {
+        aggregate.setReviewCount(rs.getInt("review_count"));
+        aggregate.setRatingSum(rs.getDouble("rating_sum"));
+        for (int stars = 1; stars <= 5; stars++) {
+            aggregate.setStarCount(stars, rs.getInt("star_" + stars));
         }
-        return 0;
+        aggregate.setLatestReviewDate(rs.getTimestamp("latest_review_date"));
+    }
+
+    /**
+     * Đếm số lượng review của một sản phẩm (đọc từ review_aggregate)
+     */
+    public int countReviewsByProductId(int productId) {
+        return getReviewAggregate(productId).getReviewCount();
     }
 }
@@ -0,0 +1,98 @@
+package com.pricetracker.server.deals;
+
+import com.pricetracker.models.ProductSummary;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.function.ToIntFunction;
+
+/**
+ * One ranked deal list as an indexed sorted set: a TreeSet in rank order plus a map from key
+ * (product ID, or group ID for per-group rankings) to the entry currently in the set.
+ * Updating or removing an entry is O(log n) and reading the top K is O(log n + K), so a product
+ * whose discount changes or disappears moves or leaves without re-sorting the list.
+ *
+ * Entries are never mutated in place (the tree would lose them); a changed product is put
+ * again as a new object. Not thread-safe - DealsIndex guards it.
+ */
+final class DealRanking {
+
+    private final NavigableSet<ProductSummary> ordered;
+    private final Map<Integer, ProductSummary> byKey = new HashMap<>();
+    private final ToIntFunction<ProductSummary> keyOf;
+
+    /**
+     * @param order Total order (must end in a unique tie-breaker)
+     * @param keyOf Identity of an entry; putting an entry with the same key replaces the old one
+     */
+    DealRanking(Comparator<ProductSummary> order, ToIntFunction<ProductSummary> keyOf) {
+        this.ordered = new TreeSet<>(order);
+        this.keyOf = keyOf;
+    }
+
+    void put(ProductSummary entry) {
+        ProductSummary old = byKey.put(keyOf.applyAsInt(entry), entry);
+        if (old != null) {
+            ordered.remove(old);
+        }
+        ordered.add(entry);
+    }
+
+    /**
+     * @return The removed entry, or null if the key was not ranked
+     */
+    ProductSummary remove(int key) {
+        ProductSummary old = byKey.remove(key);
+        if (old != null) {
+            ordered.remove(old);
+        }
+        return old;
+    }
+
+    ProductSummary get(int key) {
+        return byKey.get(key);
+    }
+
+    /**
+     * @return Best-ranked entry, or null if empty
+     */
+    ProductSummary first() {
+        return ordered.isEmpty() ? null : ordered.first();
+    }
+
+    int size() {
+        return ordered.size();
+    }
+
+    int keyOf(ProductSummary entry) {
+        return keyOf.applyAsInt(entry);
+    }
+
+    /**
+     * Copy up to limit entries into out, starting right after the entry with key afterKey
+     * (or, if that entry is no longer ranked, after skipping fallbackOffset entries)
+     * @param afterKey Key of the last entry of the previous page, or null for the first page
+     * @return true if more entries follow
+     */
+    boolean page(Integer afterKey, int fallbackOffset, int limit, List<ProductSummary> out) {
+        Iterator<ProductSummary> it;
+        ProductSummary last = afterKey != null ? byKey.get(afterKey) : null;
+        if (last != null) {
+            it = ordered.tailSet(last, false).iterator();
+        } else {
+            it = ordered.iterator();
+            for (int i = 0; afterKey != null && i < fallbackOffset && it.hasNext(); i++) {
+                it.next();
+            }
+        }
+        while (out.size() < limit && it.hasNext()) {
+            out.add(it.next());
+        }
+        return it.hasNext();
+    }
+}
@@ -0,0 +1,189 @@
+package com.pricetracker.server.deals;
+
+import com.pricetracker.models.PriceHistory;
+import com.pricetracker.models.ProductSummary;
+import com.pricetracker.server.db.PriceChangeListener;
+import com.pricetracker.server.db.PriceHistoryBatchWriter;
+import com.pricetracker.server.db.ProductDAO;
+import com.pricetracker.server.utils.DealTypes;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a DealsIndex in memory so /deals never runs the ranking SQL per request.
+ *
+ * The index is built from one scan of the latest prices (ProductDAO.getDealCandidates) at startup,
+ * then kept current incrementally: each committed price change moves, adds or removes just that
+ * product in the rankings (O(log n)). A full rebuild still runs on a slow schedule
+ * (-Ddeals.refreshMs, default 5 min) to pick up product edits and manual SQL. Every price producer,
+ * scraper.py included (via /prices/ingest), goes through the price writer, so rebuilds are not a
+ * source of price changes and publish nothing.
+ *
+ * Rebuilds and incremental updates run one at a time, so an update is never lost to a rebuild
+ * that swaps in an index built before it committed.
+ */
+public class DealsEngine implements PriceChangeListener {
+
+    private static final long DEFAULT_REFRESH_MS = 5 * 60_000;
+
+    private final ProductDAO productDAO;
+    private final long refreshMs;
+    private final ScheduledExecutorService scheduler;
+
+    private volatile DealsIndex index;
+
+    private final AtomicLong refreshes = new AtomicLong();
+    private final AtomicLong refreshFailures = new AtomicLong();
+    private final AtomicLong incrementalUpdates = new AtomicLong();
+    private final AtomicLong summaryLoads = new AtomicLong();
+
+    public DealsEngine(ProductDAO productDAO) {
+        this.productDAO = productDAO;
+        this.refreshMs = Long.getLong("deals.refreshMs", DEFAULT_REFRESH_MS);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "deals-engine");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Build the first index in the background, then keep it fresh
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::refreshQuietly, 0, refreshMs, TimeUnit.MILLISECONDS);
+        PriceHistoryBatchWriter.getInstance().addListener(this);
+    }
+
+    /**
+     * @return The live index, or null until the first build finishes
+     */
+    public DealsIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Rebuild from the database now on the caller's thread and return the new index
+     * (the previous one is kept if the database cannot be read)
+     */
+    public synchronized DealsIndex refreshNow() {
+        long startedAt = System.currentTimeMillis();
+        List<ProductSummary> candidates = productDAO.getDealCandidates();
+        if (candidates == null) {
+            refreshFailures.incrementAndGet();
+            return index;
+        }
+        DealsIndex next = DealsIndex.build(candidates, startedAt);
+        index = next;
+        refreshes.incrementAndGet();
+        System.out.println("✓ Deals index rebuilt: " + next.getCandidateCount() + " deals in " +
+                           next.getBuildMillis() + " ms");
+        return next;
+    }
+
+    private void refreshQuietly() {
+        try {
+            refreshNow();
+        } catch (RuntimeException e) {
+            // Keep the scheduled task alive
+            refreshFailures.incrementAndGet();
+            System.err.println("❌ Deals index rebuild failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Called on the price writer thread after a batch commits - hands the work to the engine thread
+     */
+    @Override
+    public void onPricesChanged(List<PriceHistory> currentPrices) {
+        try {
+            scheduler.execute(() -> applyPriceChanges(currentPrices));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Move each changed product within the rankings. Products already ranked are updated from
+     * the event alone; products that just became deals are loaded with one summary query.
+     */
+    private synchronized void applyPriceChanges(List<PriceHistory> currentPrices) {
+        DealsIndex current = index;
+        if (current == null) {
+            return; // The first build reads these prices from the database
+        }
+
+        List<Integer> missing = new ArrayList<>();
+        for (PriceHistory price : currentPrices) {
+            ProductSummary known = current.get(price.getProductId());
+            if (known != null) {
+                current.put(withPrice(known, price));
+            } else if (price.getOriginalPrice() > price.getPrice()) {
+                missing.add(price.getProductId());
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            List<ProductSummary> loaded = productDAO.getSummariesByIds(missing);
+            summaryLoads.incrementAndGet();
+            if (loaded == null) {
+                refreshFailures.incrementAndGet();
+            } else {
+                for (ProductSummary product : loaded) {
+                    current.put(product);
+                }
+            }
+        }
+        incrementalUpdates.addAndGet(currentPrices.size());
+    }
+
+    /**
+     * Copy of a ranked product with a new current price (ranked entries are never mutated)
+     */
+    private static ProductSummary withPrice(ProductSummary product, PriceHistory price) {
+        ProductSummary copy = new ProductSummary();
+        copy.setProductId(product.getProductId());
+        copy.setGroupId(product.getGroupId());
+        copy.setGroupName(product.getGroupName());
+        copy.setName(product.getName());
+        copy.setBrand(product.getBrand());
+        copy.setUrl(product.getUrl());
+        copy.setImageUrl(product.getImageUrl());
+        copy.setSource(product.getSource());
+        copy.setHasPrice(true);
+        copy.setPrice(price.getPrice());
+        copy.setOriginalPrice(price.getOriginalPrice());
+        copy.setCurrency(price.getCurrency());
+        copy.setDealType(DealTypes.normalize(price.getDealType()));
+        copy.setPriceSince(price.getCapturedAt());
+        return copy;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        DealsIndex current = index;
+        stats.put("generated_at", current != null ? current.getGeneratedAt() : 0);
+        stats.put("updated_at", current != null ? current.getUpdatedAt() : 0);
+        stats.put("build_ms", current != null ? current.getBuildMillis() : 0);
+        stats.put("deals", current != null ? current.getCandidateCount() : 0);
+        stats.put("refreshes", refreshes.get());
+        stats.put("refresh_failures", refreshFailures.get());
+        stats.put("incremental_updates", incrementalUpdates.get());
+        stats.put("summary_loads", summaryLoads.get());
+        stats.put("refresh_ms", refreshMs);
+        return stats;
+    }
+
+    public void shutdown() {
+        PriceHistoryBatchWriter.getInstance().removeListener(this);
+        scheduler.shutdownNow();
+    }
+}
@@ -0,0 +1,294 @@
+package com.pricetracker.server.deals;
+
+import com.pricetracker.models.ProductSummary;
+import com.pricetracker.server.db.Page;
+import com.pricetracker.server.utils.DealTypes;
+import com.pricetracker.server.utils.PageCursor;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory rankings of every deal section, kept current one product at a time.
+ * Built from one scan of the latest prices, then updated incrementally as prices change
+ * (put / remove are O(log n) per ranking), so handlers read a page in O(log n + K)
+ * without touching MySQL and without re-sorting the catalog.
+ *
+ * Orderings match ProductDAO.getProductsByDealType:
+ * - ALL: highest discount first
+ * - FLASH_SALE: most recent price change first, then discount
+ * - HOT_DEAL: largest savings first, then discount
+ * - TRENDING: the best deal of each product group (kept per group), highest discount first
+ */
+public final class DealsIndex {
+
+    public static final String ALL = "ALL";
+    public static final String FLASH_SALE = "FLASH_SALE";
+    public static final String HOT_DEAL = "HOT_DEAL";
+    public static final String TRENDING = "TRENDING";
+
+    public static final List<String> TYPES = List.of(ALL, FLASH_SALE, HOT_DEAL, TRENDING);
+
+    static final Comparator<ProductSummary> BY_DISCOUNT =
+            Comparator.comparingDouble(ProductSummary::getDiscountRatio).reversed()
+                    .thenComparingInt(ProductSummary::getProductId);
+
+    static final Comparator<ProductSummary> BY_RECENCY =
+            Comparator.comparing(ProductSummary::getPriceSince, Comparator.nullsLast(Comparator.reverseOrder()))
+                    .thenComparing(BY_DISCOUNT);
+
+    static final Comparator<ProductSummary> BY_SAVINGS =
+            Comparator.comparingDouble((ProductSummary p) -> p.getOriginalPrice() - p.getPrice()).reversed()
+                    .thenComparing(BY_DISCOUNT);
+
+    static final Comparator<ProductSummary> BY_GROUP_BEST =
+            Comparator.comparingDouble(ProductSummary::getDiscountRatio).reversed()
+                    .thenComparingInt(ProductSummary::getGroupId);
+
+    private final Map<String, DealRanking> rankings = new LinkedHashMap<>();
+    private final DealRanking all = new DealRanking(BY_DISCOUNT, ProductSummary::getProductId);
+    private final DealRanking flash = new DealRanking(BY_RECENCY, ProductSummary::getProductId);
+    private final DealRanking hot = new DealRanking(BY_SAVINGS, ProductSummary::getProductId);
+    private final DealRanking trending = new DealRanking(BY_GROUP_BEST, ProductSummary::getGroupId);
+    private final Map<Integer, DealRanking> groups = new HashMap<>();
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final long generatedAt;
+    private long buildMillis;
+    private volatile long updatedAt;
+    // Number of incremental updates applied since the build (with generatedAt: identifies the content)
+    private volatile long version;
+
+    private DealsIndex(long generatedAt) {
+        this.generatedAt = generatedAt;
+        this.updatedAt = generatedAt;
+        rankings.put(ALL, all);
+        rankings.put(FLASH_SALE, flash);
+        rankings.put(HOT_DEAL, hot);
+        rankings.put(TRENDING, trending);
+    }
+
+    /**
+     * Rank all sections from the list of discounted products
+     * @param candidates Products whose current price is below the original price
+     */
+    static DealsIndex build(List<ProductSummary> candidates, long buildStartedAt) {
+        DealsIndex index = new DealsIndex(buildStartedAt);
+        for (ProductSummary product : candidates) {
+            index.putLocked(product);
+        }
+        // Not yet published - no other thread can see it
+        index.buildMillis = System.currentTimeMillis() - buildStartedAt;
+        return index;
+    }
+
+    /**
+     * Add or update a product with its new current price; a product that is no longer
+     * discounted leaves every ranking
+     */
+    void put(ProductSummary product) {
+        lock.writeLock().lock();
+        try {
+            putLocked(product);
+            updatedAt = System.currentTimeMillis();
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void putLocked(ProductSummary product) {
+        removeLocked(product.getProductId());
+        if (product.getDiscountRatio() <= 0) {
+            return;
+        }
+
+        all.put(product);
+        String dealType = DealTypes.normalize(product.getDealType());
+        if (FLASH_SALE.equals(dealType)) {
+            flash.put(product);
+        } else if (HOT_DEAL.equals(dealType)) {
+            hot.put(product);
+        }
+        groups.computeIfAbsent(product.getGroupId(), g -> new DealRanking(BY_DISCOUNT, ProductSummary::getProductId))
+              .put(product);
+        refreshGroupBest(product.getGroupId());
+    }
+
+    private void removeLocked(int productId) {
+        ProductSummary old = all.remove(productId);
+        if (old == null) {
+            return;
+        }
+        flash.remove(productId);
+        hot.remove(productId);
+        DealRanking group = groups.get(old.getGroupId());
+        if (group != null) {
+            group.remove(productId);
+            if (group.size() == 0) {
+                groups.remove(old.getGroupId());
+            }
+        }
+        refreshGroupBest(old.getGroupId());
+    }
+
+    // TRENDING keeps exactly the first entry of each group ranking
+    private void refreshGroupBest(int groupId) {
+        DealRanking group = groups.get(groupId);
+        ProductSummary best = group != null ? group.first() : null;
+        if (best == null) {
+            trending.remove(groupId);
+        } else if (trending.get(groupId) != best) {
+            trending.put(best);
+        }
+    }
+
+    /**
+     * @return The ranked product, or null if it is not currently a deal
+     */
+    ProductSummary get(int productId) {
+        lock.readLock().lock();
+        try {
+            return all.get(productId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return The sections a product is ranked in right now (empty if it is not a deal)
+     */
+    public List<String> sectionsOf(int productId) {
+        List<String> sections = new ArrayList<>(TYPES.size());
+        lock.readLock().lock();
+        try {
+            ProductSummary product = all.get(productId);
+            if (product == null) {
+                return sections;
+            }
+            for (Map.Entry<String, DealRanking> entry : rankings.entrySet()) {
+                DealRanking ranking = entry.getValue();
+                if (ranking == trending ? trending.get(product.getGroupId()) == product
+                                        : ranking.get(productId) != null) {
+                    sections.add(entry.getKey());
+                }
+            }
+            return sections;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The sections a product with this current price belongs in (same rules as put). TRENDING is
+     * included for any discounted product: whether it becomes its group's best depends on the others.
+     */
+    public static List<String> sectionsFor(double price, double originalPrice, String dealType) {
+        List<String> sections = new ArrayList<>(TYPES.size());
+        if (originalPrice <= price || originalPrice <= 0) {
+            return sections;
+        }
+        sections.add(ALL);
+        dealType = DealTypes.normalize(dealType);
+        if (FLASH_SALE.equals(dealType) || HOT_DEAL.equals(dealType)) {
+            sections.add(dealType);
+        }
+        sections.add(TRENDING);
+        return sections;
+    }
+
+    public boolean supports(String dealType) {
+        return rankings.containsKey(dealType);
+    }
+
+    /**
+     * @return Number of products in a section (0 for unknown types)
+     */
+    public int size(String dealType) {
+        DealRanking ranking = rankings.get(dealType);
+        if (ranking == null) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            return ranking.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * One page of a section. The cursor holds the key of the last entry and its position;
+     * the next page continues right after that entry if it is still ranked, otherwise
+     * after the same number of entries.
+     * @throws IllegalArgumentException if the cursor is invalid
+     */
+    public Page<ProductSummary> page(String dealType, String cursor, int limit) {
+        DealRanking ranking = rankings.get(dealType);
+        String scope = "deals-index:" + dealType;
+        String[] after = PageCursor.decode(scope, cursor, 2);
+
+        Integer afterKey = null;
+        int offset = 0;
+        if (after != null) {
+            try {
+                afterKey = Integer.parseInt(after[0]);
+                offset = Integer.parseInt(after[1]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+        }
+
+        List<ProductSummary> items = new ArrayList<>(limit);
+        boolean more = false;
+        if (ranking != null) {
+            lock.readLock().lock();
+            try {
+                more = ranking.page(afterKey, offset, limit, items);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        String next = more && !items.isEmpty()
+                ? PageCursor.encode(scope, String.valueOf(ranking.keyOf(items.get(items.size() - 1))),
+                                    String.valueOf(offset + items.size()))
+                : null;
+        return new Page<>(items, next);
+    }
+
+    /**
+     * @return When the database scan this index was built from started
+     */
+    public long getGeneratedAt() {
+        return generatedAt;
+    }
+
+    /**
+     * @return When the last incremental price update was applied (generatedAt if none)
+     */
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    /**
+     * @return Count of incremental updates so far; generatedAt + version change whenever the rankings do
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public long getBuildMillis() {
+        return buildMillis;
+    }
+
+    public int getCandidateCount() {
+        return size(ALL);
+    }
+}
@@ -2,9 +2,12 @@ package com.pricetracker.server.handler;
 
 import com.pricetracker.models.PriceHistory;
 import com.pricetracker.models.Product;
+import com.pricetracker.models.ProductSummary;
 import com.pricetracker.server.db.PriceHistoryDAO;
 import com.pricetracker.server.db.ProductDAO;
 import com.pricetracker.server.db.ProductGroupDAO;
+import com.pricetracker.server.utils.SingleFlight;
+import com.pricetracker.server.utils.TikiScraperUtil;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -26,6 +29,9 @@ import java.net.Socket;
  */
 public class ClientHandler implements Runnable {
     
+    // Dùng chung cho mọi client: các yêu cầu tìm kiếm giống hệt nhau chạy đồng thời chỉ xử lý một lần
+    private static final SingleFlight<String, String> SEARCH_FLIGHT = new SingleFlight<>("tcp-search");
+    
     private final Socket clientSocket;
     private final int clientId;
     
@@ -122,14 +128,17 @@ public class ClientHandler implements Runnable {
                 if (parts.length < 2) {
                     return buildErrorResponse("Missing URL parameter");
                 }
-                return handleSearchByUrl(parts[1]);
+                String url = parts[1];
+                return SEARCH_FLIGHT.execute("URL:" + TikiScraperUtil.normalizeUrl(url),
+                        () -> handleSearchByUrl(url));
                 
             case "SEARCH_BY_NAME":
                 // Format: SEARCH_BY_NAME|<keyword>
                 if (parts.length < 2) {
                     return buildErrorResponse("Missing search keyword");
                 }
-                return handleSearchByName(parts[1]);
+                String keyword = parts[1].trim().replaceAll("\\s+", " ");
+                return SEARCH_FLIGHT.execute("NAME:" + keyword, () -> handleSearchByName(keyword));
                 
             case "SEARCH_PRODUCT":
                 // TODO: Implement search logic
@@ -201,7 +210,7 @@ public class ClientHandler implements Runnable {
             ProductDAO productDAO = new ProductDAO();
             
             // Search for products matching keyword
-            java.util.List<Product> products = productDAO.searchByNameLike(keyword);
+            java.util.List<ProductSummary> products = productDAO.searchByNameLike(keyword);
             
             if (products.isEmpty()) {
                 // Case 4: No matches found
@@ -241,15 +250,15 @@ public class ClientHandler implements Runnable {
      * Build JSON response for multiple products
      * Format: {"success": true, "count": n, "products": [...]}
      */
-    private String buildMultipleProductsResponse(java.util.List<Product> products) {
+    private String buildMultipleProductsResponse(java.util.List<ProductSummary> products) {
         try {
             JSONObject response = new JSONObject();
             response.put("success", true);
             response.put("count", products.size());
             
             JSONArray productArray = new JSONArray();
-            for (Product product : products) {
-                productArray.put(buildProductJSON(product));
+            for (ProductSummary product : products) {
+                productArray.put(buildSummaryJSON(product));
             }
             response.put("products", productArray);
             
@@ -261,6 +270,36 @@ public class ClientHandler implements Runnable {
         }
     }
     
+    /**
+     * Build JSON object for a product in a list
+     * Summary already carries group name + current price, so no extra queries per product
+     */
+    private JSONObject buildSummaryJSON(ProductSummary product) {
+        JSONObject json = new JSONObject();
+        
+        json.put("product_id", product.getProductId());
+        json.put("group_id", product.getGroupId());
+        json.put("name", product.getName());
+        json.put("brand", product.getBrand());
+        json.put("url", product.getUrl());
+        json.put("image_url", product.getImageUrl());
+        json.put("source", product.getSource());
+        json.put("group_name", product.getGroupName());
+        
+        if (product.hasPrice()) {
+            json.put("price", product.getPrice());
+            json.put("original_price", product.getOriginalPrice());
+            json.put("deal_type", product.getDealType());
+        } else {
+            json.put("price", 0);
+            json.put("original_price", 0);
+            json.put("deal_type", "Normal");
+        }
+        json.put("discount_percent", product.getDiscountPercent());
+        
+        return json;
+    }
+    
     /**
      * Build JSON object for a single product
      * Includes product data + current price + group name
@@ -4,20 +4,62 @@ import com.sun.net.httpserver.HttpServer;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.Headers;
 import com.pricetracker.server.db.ProductDAO;
+import com.pricetracker.server.db.Page;
+import com.pricetracker.server.db.PriceChangeListener;
+import com.pricetracker.server.db.PriceHistoryBatchWriter;
 import com.pricetracker.server.db.PriceHistoryDAO;
+import com.pricetracker.server.db.PriceRollupDAO;
 import com.pricetracker.server.db.ProductGroupDAO;
+import com.pricetracker.server.db.ReviewChangeListener;
 import com.pricetracker.server.db.ReviewDAO;
+import com.pricetracker.server.deals.DealsEngine;
+import com.pricetracker.server.deals.DealsIndex;
+import com.pricetracker.server.ingest.IngestionJob;
+import com.pricetracker.server.ingest.IngestionJobManager;
+import com.pricetracker.server.live.PriceEventHub;
+import com.pricetracker.server.utils.ContentEncoding;
+import com.pricetracker.server.utils.DealTypes;
+import com.pricetracker.server.utils.FanOut;
+import com.pricetracker.server.utils.JsonStreamWriter;
+import com.pricetracker.server.utils.LttbDownsampler;
+import com.pricetracker.server.utils.RequestBodyReader;
+import com.pricetracker.server.utils.SingleFlight;
 import com.pricetracker.server.utils.TikiScraperUtil;
+import com.pricetracker.server.utils.TinyLfuCache;
 import com.pricetracker.models.Product;
+import com.pricetracker.models.ProductSummary;
 import com.pricetracker.models.PriceHistory;
+import com.pricetracker.models.PriceRollup;
 import com.pricetracker.models.Review;
+import com.pricetracker.models.ReviewAggregate;
 import org.json.JSONObject;
 import org.json.JSONArray;
+import org.json.JSONException;
 
 import java.io.*;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Simple HTTP Server wrapper for the Price Tracker
@@ -25,34 +67,161 @@ import java.util.List;
  */
 public class SimpleHttpServer {
     private static final int HTTP_PORT = 8080;
+    private static final int HTTP_THREADS = 16;
+    // Page sizes for keyset-paginated lists (request "limit" is clamped to the max)
+    private static final int SEARCH_PAGE_SIZE = 50;
+    private static final int DEALS_PAGE_SIZE = 100;
+    private static final int REVIEWS_PAGE_SIZE = 20;
+    private static final int HISTORY_PAGE_SIZE = 500;
+    private static final int MAX_PAGE_SIZE = 500;
+    // Similar products on the detail page (4 rows x 4 columns), and the most "include=similar:N" may ask for
+    private static final int SIMILAR_PRODUCTS = 16;
+    private static final int MAX_SIMILAR_PRODUCTS = 48;
+    // include=history:<range> starts on a whole hour, so its cache entry and ETag last up to an hour
+    private static final long HISTORY_RANGE_STEP_MS = TimeUnit.HOURS.toMillis(1);
+    // /products/batch: IDs per request, and the sections it can return
+    private static final int MAX_BATCH_IDS = 200;
+    private static final Set<String> BATCH_FIELDS = Set.of("product", "description", "price", "reviews", "group");
+    private static final Set<String> BATCH_DEFAULT_FIELDS = Set.of("product", "price", "reviews", "group");
+    // Products one /api/stream/prices subscription may follow
+    private static final int MAX_STREAM_PRODUCTS = 500;
+    // Upper bound for long-polling /ingest-status
+    private static final long MAX_JOB_WAIT_MS = 30_000;
+    // Product IDs per existence query when validating /prices/ingest
+    private static final int INGEST_ID_CHECK_CHUNK = 1000;
+    // /prices/ingest takes whole observation batches; every other body is capped at RequestBodyReader.MAX_BYTES
+    private static final int INGEST_MAX_BODY_BYTES = Integer.getInteger("http.ingestMaxBodyBytes", 8 * 1024 * 1024);
+    // Product detail sub-queries run in parallel on their own pool, within one deadline per request
+    private static final int DETAIL_FANOUT_THREADS = Integer.getInteger("detail.fanoutThreads", 32);
+    private static final long DETAIL_DEADLINE_MS = Long.getLong("detail.deadlineMs", 5000);
+    // Assembled /product-detail responses: total size bound, and how long one may be served before rebuilding
+    private static final long DETAIL_CACHE_BYTES = Long.getLong("detail.cacheBytes", 64L * 1024 * 1024);
+    private static final long DETAIL_CACHE_TTL_MS = Long.getLong("detail.cacheTtlMs", 60_000);
+    // Rough per-entry bookkeeping on top of the payload bytes (key, node, map entries)
+    private static final int DETAIL_CACHE_ENTRY_OVERHEAD = 256;
+    // Read responses carry an ETag; browsers must revalidate before reuse (a 304 costs only headers)
+    private static final String READ_CACHE_CONTROL = "no-cache";
+    // GET /api/... responses may be reused by browsers and shared caches (CDN, reverse proxy) for a short while
+    private static final String API_DETAIL_CACHE_CONTROL = "public, max-age=60";
+    private static final String API_DEALS_CACHE_CONTROL = "public, max-age=30";
+    private static final String API_SEARCH_CACHE_CONTROL = "public, max-age=60";
     private HttpServer server;
     private ProductDAO productDAO;
     private PriceHistoryDAO priceHistoryDAO;
+    private PriceRollupDAO priceRollupDAO;
     private ProductGroupDAO productGroupDAO;
     private ReviewDAO reviewDAO;
+    private IngestionJobManager ingestionJobManager;
+    private DealsEngine dealsEngine;
+    private PriceEventHub priceEventHub;
+    private ExecutorService requestExecutor;
+    private volatile ExecutorService detailExecutor;  // Also used from the price writer's listener
+    // Coalesces identical concurrent searches (same action + normalized query)
+    private final SingleFlight<String, JSONObject> searchFlight = new SingleFlight<>("http-search");
+    // Successful /product-detail responses, keyed by product ID + history params
+    private final TinyLfuCache<String, CachedResponse> detailCache = new TinyLfuCache<>(
+            "product-detail", DETAIL_CACHE_BYTES, (int) (DETAIL_CACHE_BYTES / (16 * 1024)), DETAIL_CACHE_TTL_MS,
+            cached -> cached.body.length + (cached.gzipBody != null ? cached.gzipBody.length : 0)
+                    + DETAIL_CACHE_ENTRY_OVERHEAD,
+            key -> key.substring(0, key.indexOf('|')));
+    // Drop a product's cached detail as soon as its price or reviews change, and the cached details
+    // listing it as a similar product (their extra group "g<group_id>", looked up off the writer thread)
+    private final PriceChangeListener detailPriceInvalidator = prices -> {
+        Set<Integer> productIds = new HashSet<>();
+        for (PriceHistory price : prices) {
+            detailCache.invalidateGroup(String.valueOf(price.getProductId()));
+            productIds.add(price.getProductId());
+        }
+        invalidateSimilarSections(productIds);
+    };
+    private final ReviewChangeListener detailReviewInvalidator =
+            review -> detailCache.invalidateGroup(String.valueOf(review.getProductId()));
 
 
     public SimpleHttpServer() {
         this.productDAO = new ProductDAO();
         this.priceHistoryDAO = new PriceHistoryDAO();
+        this.priceRollupDAO = new PriceRollupDAO();
         this.productGroupDAO = new ProductGroupDAO();
         this.reviewDAO = new ReviewDAO();
+        this.ingestionJobManager = new IngestionJobManager(productDAO);
+        this.dealsEngine = new DealsEngine(productDAO);
+        this.priceEventHub = new PriceEventHub(dealsEngine);
 
     }
 
     public void start() throws IOException {
+        // Category keywords for classifying newly scraped products (falls back to built-ins)
+        int keywordCount = TikiScraperUtil.reloadCategoryKeywords(productGroupDAO.getCategoryKeywords());
+        System.out.println("✓ Category classifier loaded with " + keywordCount + " keywords");
+        
+        // Backstop for requests that stall entirely: RequestBodyReader's deadline is only checked between
+        // reads, so the server itself closes connections whose request (headers + body) is still not in
+        // after this many seconds. Read once, when the HTTP server classes load.
+        if (System.getProperty("sun.net.httpserver.maxReqTime") == null) {
+            long seconds = (RequestBodyReader.READ_TIMEOUT_MS + 999) / 1000 + 5;
+            System.setProperty("sun.net.httpserver.maxReqTime", String.valueOf(seconds));
+        }
         server = HttpServer.create(new InetSocketAddress(HTTP_PORT), 0);
         
+        PriceHistoryBatchWriter.getInstance().addListener(detailPriceInvalidator);
+        ReviewDAO.addListener(detailReviewInvalidator);
+        
         // CORS and search endpoint
         server.createContext("/search", this::handleSearch);
         
-        // NEW: Deals endpoint for discount page
+        // NEW: Deals endpoint for discount page (served from the in-memory deals index)
         server.createContext("/deals", this::handleDeals);
         
+        // NEW: Force a rebuild of the deals index from the database
+        server.createContext("/deals/refresh", this::handleDealsRefresh);
+        
+        // NEW: Every deals section for the discount page in one response
+        server.createContext("/deals/page", this::handleDealsPage);
+        // The event hub reads each product's deal sections before the engine applies a change,
+        // so it must be notified first
+        PriceHistoryBatchWriter.getInstance().addListener(priceEventHub);
+        priceEventHub.start();
+        dealsEngine.start();
+        
         // NEW: Product detail endpoint
         server.createContext("/product-detail", this::handleProductDetail);
         
-        server.setExecutor(null); // creates a default executor
+        // NEW: Status of background product ingestion (SEARCH_BY_URL for new products)
+        server.createContext("/ingest-status", this::handleIngestStatus);
+        
+        // NEW: Runtime counters (request coalescing, ingestion queue, price writer)
+        server.createContext("/metrics", this::handleMetrics);
+        
+        // NEW: Price history series (raw / daily / weekly) for charts
+        server.createContext("/price-history", this::handlePriceHistory);
+        
+        // NEW: Next pages of reviews for the detail page
+        server.createContext("/reviews", this::handleReviews);
+        
+        // NEW: Many products (selected fields only) in one request, with set-based queries
+        server.createContext("/products/batch", this::handleProductsBatch);
+        
+        // NEW: Bulk price observations from external scrapers (batched writes)
+        server.createContext("/prices/ingest", this::handlePriceIngest);
+        
+        // NEW: Cacheable GET variants of the read endpoints (params in the URL, same handlers behind them)
+        server.createContext("/api/products/", this::handleApiProduct);
+        server.createContext("/api/deals", this::handleApiDeals);
+        server.createContext("/api/deals/page", this::handleApiDealsPage);
+        server.createContext("/api/search", this::handleApiSearch);
+        
+        // NEW: Live price changes (Server-Sent Events) for followed products and deal boards
+        server.createContext("/api/stream/prices", this::handlePriceStream);
+        
+        requestExecutor = Executors.newFixedThreadPool(HTTP_THREADS);
+        AtomicInteger detailThreads = new AtomicInteger();
+        detailExecutor = Executors.newFixedThreadPool(DETAIL_FANOUT_THREADS, r -> {
+            Thread t = new Thread(r, "detail-fanout-" + detailThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(requestExecutor);
         server.start();
         
         System.out.println("✓ HTTP Server started on port " + HTTP_PORT);
@@ -84,23 +253,24 @@ public class SimpleHttpServer {
 
         try {
             // Read request body
-            InputStream is = exchange.getRequestBody();
-            String requestBody = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))
-                    .lines()
-                    .reduce("", (acc, line) -> acc + line);
+            JSONObject requestJson = readJsonBody(exchange);
+            if (requestJson == null) {
+                return;
+            }
 
-            System.out.println("📥 Received request: " + requestBody);
+            System.out.println("📥 Received request: " + requestJson);
 
-            JSONObject requestJson = new JSONObject(requestBody);
             String action = requestJson.getString("action");
             String query = requestJson.getString("query");
 
             JSONObject responseJson;
 
             if ("SEARCH_BY_URL".equals(action)) {
-                responseJson = handleSearchByUrl(query);
+                String key = "URL:" + TikiScraperUtil.normalizeUrl(query);
+                responseJson = searchFlight.execute(key, () -> handleSearchByUrl(query));
             } else if ("SEARCH_BY_NAME".equals(action)) {
-                responseJson = handleSearchByName(query);
+                responseJson = searchByName(query, requestJson.optString("cursor", null),
+                        pageLimit(requestJson, SEARCH_PAGE_SIZE));
             } else {
                 responseJson = new JSONObject();
                 responseJson.put("success", false);
@@ -109,7 +279,10 @@ public class SimpleHttpServer {
 
             String response = responseJson.toString();
             System.out.println("📤 Sending response: " + response);
-            sendResponse(exchange, 200, response);
+            // New products are ingested in the background - 202 with a job ID
+            String jobStatus = responseJson.optString("status", "");
+            int statusCode = "PENDING".equals(jobStatus) || "RUNNING".equals(jobStatus) ? 202 : 200;
+            sendResponse(exchange, statusCode, response);
 
         } catch (Exception e) {
             e.printStackTrace();
@@ -121,14 +294,137 @@ public class SimpleHttpServer {
         }
     }
 
+    /**
+     * Trim and collapse whitespace so "  iphone   15 " and "iphone 15" share one search.
+     * Case is kept because name search is accent/case sensitive (utf8mb4_bin).
+     */
+    private static String normalizeKeyword(String query) {
+        return query.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Name search shared by POST /search and GET /api/search (identical concurrent searches run once)
+     */
+    private JSONObject searchByName(String query, String cursor, int limit) throws Exception {
+        String keyword = normalizeKeyword(query);
+        return searchFlight.execute("NAME:" + keyword + "|" + cursor + "|" + limit,
+                () -> handleSearchByName(keyword, cursor, limit));
+    }
+
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
-        byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, bytes.length);
+        sendResponse(exchange, statusCode, response.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true if the request's If-None-Match names this ETag (or is "*")
+     */
+    private static boolean ifNoneMatch(HttpExchange exchange, String etag) {
+        String header = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if (header == null) {
+            return false;
+        }
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);  // Weak comparison, as If-None-Match requires
+            }
+            // The compressed representations' ETags (see sendResponse) validate the same content
+            for (String encoding : new String[] {ContentEncoding.GZIP, ContentEncoding.DEFLATE}) {
+                String suffix = "-" + encoding + "\"";
+                if (candidate.endsWith(suffix)) {
+                    candidate = candidate.substring(0, candidate.length() - suffix.length()) + "\"";
+                }
+            }
+            if (candidate.equals(etag) || candidate.equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void setValidators(Headers headers, String etag, String cacheControl) {
+        headers.set("ETag", etag);
+        headers.set("Cache-Control", cacheControl);
+    }
+
+    /**
+     * 304 Not Modified: validators only, no body
+     */
+    private void sendNotModified(HttpExchange exchange, String etag, String cacheControl) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.remove("Content-Type");
+        setValidators(headers, etag, cacheControl);
+        exchange.sendResponseHeaders(304, -1);
+        exchange.close();
+    }
+
+    private void sendResponse(HttpExchange exchange, int statusCode, byte[] bytes) throws IOException {
+        sendResponse(exchange, statusCode, bytes, null);
+    }
+
+    /**
+     * Send a body, compressed if the client accepts gzip/deflate and it is large enough to be worth it
+     * @param gzipped The body already gzip-compressed (e.g. kept in the detail cache), or null
+     */
+    private void sendResponse(HttpExchange exchange, int statusCode, byte[] bytes, byte[] gzipped) throws IOException {
+        byte[] body = bytes;
+        if (bytes.length >= ContentEncoding.MIN_SIZE) {
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Vary", "Accept-Encoding");
+            String encoding = ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+            if (encoding != null) {
+                body = gzipped != null && ContentEncoding.GZIP.equals(encoding)
+                        ? gzipped : ContentEncoding.encode(bytes, encoding);
+                setContentEncoding(headers, encoding);
+            }
+        }
+        exchange.sendResponseHeaders(statusCode, body.length);
         OutputStream os = exchange.getResponseBody();
-        os.write(bytes);
+        os.write(body);
         os.close();
     }
 
+    /**
+     * Writes a JSON response body
+     */
+    @FunctionalInterface
+    private interface JsonBody {
+        void writeTo(JsonStreamWriter out) throws IOException;
+    }
+
+    /**
+     * Stream a JSON body with chunked transfer encoding, compressed on the fly if the client accepts it
+     * The body is encoded as it is written and never held in memory as a whole (no JSONObject tree,
+     * no String, no byte[] copy). Load everything that can fail before calling this: once the
+     * headers are out the status can no longer change.
+     */
+    private void sendStreaming(HttpExchange exchange, int statusCode, JsonBody body) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Vary", "Accept-Encoding");
+        String encoding = ContentEncoding.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        if (encoding != null) {
+            setContentEncoding(headers, encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, 0);  // 0 = chunked
+
+        OutputStream os = exchange.getResponseBody();
+        if (encoding != null) {
+            os = ContentEncoding.wrap(os, encoding);
+        }
+        try (JsonStreamWriter out = new JsonStreamWriter(os)) {
+            body.writeTo(out);
+        }
+    }
+
+    private static void setContentEncoding(Headers headers, String encoding) {
+        headers.set("Content-Encoding", encoding);
+        // Each encoding is a different representation, so it gets its own strong ETag
+        String etag = headers.getFirst("ETag");
+        if (etag != null && etag.endsWith("\"")) {
+            headers.set("ETag", etag.substring(0, etag.length() - 1) + "-" + encoding + "\"");
+        }
+    }
+
     private JSONObject handleSearchByUrl(String tikiUrl) {
         JSONObject response = new JSONObject();
         
@@ -160,6 +456,9 @@ public class SimpleHttpServer {
                     currentPrice.setCurrency("VND");
                     currentPrice.setDealType(dealType);
                     
+                    // Record the observation without waiting for the database
+                    priceHistoryDAO.addPriceRecordAsync(currentPrice);
+                    
                     System.out.println("✅ Realtime price: " + price + " VND (was: " + originalPrice + " VND)");
                 } else {
                     // Fallback to database price if scraping fails
@@ -174,23 +473,15 @@ public class SimpleHttpServer {
                 response.put("product", buildProductJSON(existingProduct, currentPrice, groupName));
                 
             } else {
-                // Product doesn't exist - scrape from Tiki and insert
-                System.out.println("⚠ Product not found, scraping from Tiki...");
+                // Product doesn't exist - scrape and insert in the background
+                System.out.println("⚠ Product not found, queueing ingestion from Tiki...");
                 
-                Product newProduct = productDAO.insertProductFromTiki(tikiUrl);
-                
-                if (newProduct != null) {
-                    System.out.println("✓ New product added: " + newProduct.getName());
-                    
-                    PriceHistory currentPrice = priceHistoryDAO.getCurrentPrice(newProduct.getProductId());
-                    String groupName = productGroupDAO.getGroupNameById(newProduct.getGroupId());
-                    
-                    response.put("success", true);
-                    response.put("isNew", true);
-                    response.put("product", buildProductJSON(newProduct, currentPrice, groupName));
-                } else {
+                try {
+                    IngestionJob job = ingestionJobManager.submit(tikiUrl);
+                    response = buildJobJSON(job);
+                } catch (RejectedExecutionException e) {
                     response.put("success", false);
-                    response.put("error", "Không thể lấy thông tin sản phẩm từ Tiki. Vui lòng kiểm tra lại URL.");
+                    response.put("error", "Hệ thống đang bận, vui lòng thử lại sau ít phút.");
                 }
             }
             
@@ -203,15 +494,16 @@ public class SimpleHttpServer {
         return response;
     }
 
-    private JSONObject handleSearchByName(String searchQuery) {
+    private JSONObject handleSearchByName(String searchQuery, String cursor, int limit) {
         JSONObject response = new JSONObject();
         
         try {
             System.out.println("🔍 Searching by name: " + searchQuery);
             
-            List<Product> products = productDAO.searchByNameLike(searchQuery);
+            Page<ProductSummary> page = productDAO.searchByNameLike(searchQuery, cursor, limit);
+            List<ProductSummary> products = page.getItems();
             
-            if (products.isEmpty()) {
+            if (products.isEmpty() && cursor == null) {
                 response.put("success", false);
                 response.put("error", "Không tìm thấy sản phẩm nào phù hợp. Hãy thử sản phẩm khác nhé ^^");
             } else {
@@ -219,18 +511,19 @@ public class SimpleHttpServer {
                 
                 JSONArray productsArray = new JSONArray();
                 
-                for (Product product : products) {
-                    PriceHistory currentPrice = priceHistoryDAO.getCurrentPrice(product.getProductId());
-                    String groupName = productGroupDAO.getGroupNameById(product.getGroupId());
-                    
-                    productsArray.put(buildProductJSON(product, currentPrice, groupName));
+                for (ProductSummary product : products) {
+                    productsArray.put(buildSummaryJSON(product));
                 }
                 
                 response.put("success", true);
                 response.put("count", products.size());
                 response.put("products", productsArray);
+                putNextCursor(response, page);
             }
             
+        } catch (IllegalArgumentException e) {
+            response.put("success", false);
+            response.put("error", "Invalid cursor");
         } catch (Exception e) {
             e.printStackTrace();
             response.put("success", false);
@@ -241,14 +534,58 @@ public class SimpleHttpServer {
     }
 
     /**
-     * NEW: Handle deals endpoint - Get products with discounts
-     * Supports filtering by deal_type: FLASH_SALE, HOT_DEAL, TRENDING, or ALL
+     * "limit" from a request body, defaulting and clamped to 1..MAX_PAGE_SIZE
      */
-    private void handleDeals(HttpExchange exchange) throws IOException {
+    private static int pageLimit(JSONObject requestJson, int defaultLimit) {
+        int limit = requestJson.optInt("limit", defaultLimit);
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Request body as JSON (empty body = empty object), bounded in size and read time
+     * @return null if the body was rejected; the 400/408/413 response has then been sent
+     */
+    private JSONObject readJsonBody(HttpExchange exchange) throws IOException {
+        return readJsonBody(exchange, RequestBodyReader.MAX_BYTES);
+    }
+
+    private JSONObject readJsonBody(HttpExchange exchange, int maxBytes) throws IOException {
+        try {
+            return RequestBodyReader.readJson(exchange, maxBytes);
+        } catch (RequestBodyReader.BodyException e) {
+            System.out.println("⚠️ Rejected request body (" + e.getStatus() + "): " + e.getMessage());
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", e.getMessage());
+            sendResponse(exchange, e.getStatus(), error.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Add "next_cursor" (null on the last page) and "has_more" for a keyset page
+     */
+    private static void putNextCursor(JSONObject json, Page<?> page) {
+        json.put("next_cursor", page.hasMore() ? page.getNextCursor() : JSONObject.NULL);
+        json.put("has_more", page.hasMore());
+    }
+
+    private static void writeNextCursor(JsonStreamWriter out, Page<?> page) throws IOException {
+        out.name("next_cursor").value(page.hasMore() ? page.getNextCursor() : null);
+        out.name("has_more").value(page.hasMore());
+    }
+
+    /**
+     * NEW: Handle ingestion status endpoint - poll or wait for a background SEARCH_BY_URL job
+     * Body: {"job_id": "...", "wait_ms": 10000}
+     * With wait_ms > 0 the response is held until the job finishes or the wait elapses,
+     * without tying up a request thread.
+     */
+    private void handleIngestStatus(HttpExchange exchange) throws IOException {
         // Add CORS headers
         Headers headers = exchange.getResponseHeaders();
         headers.add("Access-Control-Allow-Origin", "*");
-        headers.add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        headers.add("Access-Control-Allow-Methods", "POST, OPTIONS");
         headers.add("Access-Control-Allow-Headers", "Content-Type");
         headers.add("Content-Type", "application/json; charset=UTF-8");
 
@@ -258,279 +595,924 @@ public class SimpleHttpServer {
             return;
         }
 
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            String response = "{\"success\": false, \"error\": \"Method not allowed\"}";
+            sendResponse(exchange, 405, response);
+            return;
+        }
+
         try {
-            String dealType = "ALL"; // Default: get all deals
-            
-            // Check if POST request with body
-            if ("POST".equals(exchange.getRequestMethod())) {
-                InputStream is = exchange.getRequestBody();
-                String requestBody = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))
-                        .lines()
-                        .reduce("", (acc, line) -> acc + line);
-
-                if (!requestBody.isEmpty()) {
-                    JSONObject requestJson = new JSONObject(requestBody);
-                    if (requestJson.has("deal_type")) {
-                        dealType = requestJson.getString("deal_type");
-                    }
-                }
+            JSONObject requestJson = readJsonBody(exchange);
+            if (requestJson == null) {
+                return;
             }
-            
-            System.out.println("📥 Received deals request - Deal type: " + dealType);
+            IngestionJob job = ingestionJobManager.getJob(requestJson.optString("job_id", null));
 
-            JSONObject responseJson = handleGetDeals(dealType);
-            
-            String response = responseJson.toString();
-            System.out.println("📤 Sending deals response with " + 
-                             responseJson.optInt("count", 0) + " products");
-            sendResponse(exchange, 200, response);
+            if (job == null) {
+                String errorResponse = "{\"success\": false, \"error\": \"Unknown or expired job_id\"}";
+                sendResponse(exchange, 404, errorResponse);
+                return;
+            }
+
+            long waitMs = Math.min(Math.max(requestJson.optLong("wait_ms", 0), 0), MAX_JOB_WAIT_MS);
+
+            if (job.isFinished() || waitMs == 0) {
+                sendResponse(exchange, job.isFinished() ? 200 : 202, buildJobJSON(job).toString());
+                return;
+            }
+
+            // Long-poll: answer on an HTTP worker, never on the ingestion thread or the
+            // JVM-wide timeout scheduler that completes the future (the answer runs DB queries)
+            job.getFuture()
+                    .thenApply(product -> true)
+                    .completeOnTimeout(false, waitMs, TimeUnit.MILLISECONDS)
+                    .whenCompleteAsync((finished, error) -> {
+                        try {
+                            sendResponse(exchange, job.isFinished() ? 200 : 202, buildJobJSON(job).toString());
+                        } catch (Exception e) {
+                            System.err.println("Error sending ingestion status: " + e.getMessage());
+                            exchange.close();
+                        }
+                    }, requestExecutor);
 
         } catch (Exception e) {
             e.printStackTrace();
             String errorResponse = String.format(
                 "{\"success\": false, \"error\": \"Server error: %s\"}", 
-                e.getMessage().replace("\"", "\\\"")
+                String.valueOf(e.getMessage()).replace("\"", "\\\"")
             );
             sendResponse(exchange, 500, errorResponse);
         }
     }
 
     /**
-     * NEW: Get products with deals/discounts
-     * @param dealType Filter by deal type: "FLASH_SALE", "HOT_DEAL", "TRENDING", or "ALL"
-     * @return JSONObject with products list
+     * NEW: Handle metrics endpoint - request coalescing and ingestion counters as JSON
      */
-    private JSONObject handleGetDeals(String dealType) {
-        JSONObject response = new JSONObject();
-        
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        JSONObject metrics = new JSONObject();
+
+        JSONArray flights = new JSONArray();
+        for (SingleFlight<?, ?> flight : SingleFlight.getAll()) {
+            flights.put(new JSONObject(flight.getStats()));
+        }
+        metrics.put("single_flight", flights);
+
+        JSONObject ingestion = new JSONObject();
+        ingestion.put("queued", ingestionJobManager.getQueuedCount());
+        ingestion.put("active", ingestionJobManager.getActiveCount());
+        metrics.put("ingestion", ingestion);
+
+        metrics.put("price_writer", new JSONObject(PriceHistoryBatchWriter.getInstance().getStats()));
+        metrics.put("deals", new JSONObject(dealsEngine.getStats()));
+        metrics.put("detail_cache", new JSONObject(detailCache.getStats()));
+        metrics.put("compression", new JSONObject(ContentEncoding.getStats()));
+        metrics.put("price_stream", new JSONObject(priceEventHub.getStats()));
+
+        sendResponse(exchange, 200, metrics.toString());
+    }
+
+    /**
+     * NEW: Handle deals page endpoint - first page of every section (ALL, FLASH_SALE, HOT_DEAL,
+     * TRENDING) from the in-memory deals index, so the discount page needs one round-trip.
+     * Body (optional): {"limit": 40} = products per section
+     * Response: {"success": true, "generated_at": ...,
+     *            "products": {"<product_id>": {...card...}},   // each product once
+     *            "sections": {"ALL": {"product_ids": [...], "total": n, "next_cursor": ..., "has_more": ...}, ...}}
+     * Further pages of a section come from /deals with that deal_type and next_cursor.
+     */
+    private void handleDealsPage(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+        headers.add("Access-Control-Expose-Headers", "ETag");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
         try {
-            System.out.println("🎁 Fetching deals - Type: " + dealType);
-            
-            List<Product> products = productDAO.getProductsByDealType(dealType);
-            
-            if (products.isEmpty()) {
-                response.put("success", false);
-                response.put("error", "Hiện tại chưa có sản phẩm giảm giá nào. Vui lòng quay lại sau!");
-            } else {
-                System.out.println("✓ Found " + products.size() + " deal products");
-                
-                JSONArray productsArray = new JSONArray();
-                
-                for (Product product : products) {
-                    PriceHistory currentPrice = priceHistoryDAO.getCurrentPrice(product.getProductId());
-                    String groupName = productGroupDAO.getGroupNameById(product.getGroupId());
-                    
-                    productsArray.put(buildProductJSON(product, currentPrice, groupName));
+            int limit = DEALS_PAGE_SIZE;
+            if ("POST".equals(exchange.getRequestMethod())) {
+                JSONObject requestJson = readJsonBody(exchange);
+                if (requestJson == null) {
+                    return;
                 }
-                
-                response.put("success", true);
-                response.put("count", products.size());
-                response.put("deal_type", dealType);
-                response.put("products", productsArray);
+                limit = pageLimit(requestJson, DEALS_PAGE_SIZE);
             }
-            
+
+            sendDealsPage(exchange, limit, READ_CACHE_CONTROL);
+
         } catch (Exception e) {
             e.printStackTrace();
-            response.put("success", false);
-            response.put("error", "Lỗi hệ thống: " + e.getMessage());
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", "Server error: " + e.getMessage());
+            sendResponse(exchange, 500, error.toString());
         }
-        
-        return response;
     }
 
     /**
-     * NEW: Handle product detail endpoint - Get detailed product information
-     * Requires product_id in request body
+     * First page of every deals section with validators - shared by /deals/page and GET /api/deals/page
      */
-    private void handleProductDetail(HttpExchange exchange) throws IOException {
-        // Add CORS headers
+    private void sendDealsPage(HttpExchange exchange, int limit, String cacheControl) throws IOException {
+        DealsIndex deals = dealsEngine.getIndex();
+        if (deals == null) {
+            // Right after startup - build the first index on this request
+            deals = dealsEngine.refreshNow();
+        }
+        if (deals == null) {
+            sendResponse(exchange, 503, "{\"success\": false, \"error\": \"Không thể tải dữ liệu giảm giá\"}");
+            return;
+        }
+
+        String etag = dealsETag(deals, "page|" + limit);
+        if (ifNoneMatch(exchange, etag)) {
+            sendNotModified(exchange, etag, cacheControl);
+            return;
+        }
+        setValidators(exchange.getResponseHeaders(), etag, cacheControl);
+
+        // Read the sections first (the index may change meanwhile), then stream
+        Map<String, Page<ProductSummary>> pages = new LinkedHashMap<>();
+        Map<String, Integer> totals = new LinkedHashMap<>();
+        Map<Integer, ProductSummary> products = new LinkedHashMap<>();
+        for (String type : DealsIndex.TYPES) {
+            Page<ProductSummary> page = deals.page(type, null, limit);
+            pages.put(type, page);
+            totals.put(type, deals.size(type));
+            for (ProductSummary product : page.getItems()) {
+                products.putIfAbsent(product.getProductId(), product);
+            }
+        }
+        long generatedAt = deals.getGeneratedAt();
+        long updatedAt = deals.getUpdatedAt();
+
+        System.out.println("📤 Sending deals page with " + products.size() + " unique products");
+        sendStreaming(exchange, 200, out -> {
+            out.beginObject();
+            out.name("success").value(true);
+            out.name("generated_at").value(generatedAt);
+            out.name("updated_at").value(updatedAt);
+
+            out.name("products").beginObject();
+            for (ProductSummary product : products.values()) {
+                out.name(String.valueOf(product.getProductId()));
+                writeSummary(out, product);
+            }
+            out.endObject();
+
+            out.name("sections").beginObject();
+            for (Map.Entry<String, Page<ProductSummary>> entry : pages.entrySet()) {
+                out.name(entry.getKey()).beginObject();
+                out.name("product_ids").beginArray();
+                for (ProductSummary product : entry.getValue().getItems()) {
+                    out.value(product.getProductId());
+                }
+                out.endArray();
+                out.name("total").value(totals.get(entry.getKey()));
+                writeNextCursor(out, entry.getValue());
+                out.endObject();
+            }
+            out.endObject();
+
+            out.endObject();
+        });
+    }
+
+    /**
+     * NEW: Handle deals refresh endpoint - rebuild the deals index from the database now
+     * instead of waiting for the scheduled rebuild
+     */
+    private void handleDealsRefresh(HttpExchange exchange) throws IOException {
         Headers headers = exchange.getResponseHeaders();
         headers.add("Access-Control-Allow-Origin", "*");
-        headers.add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        headers.add("Access-Control-Allow-Methods", "POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            String response = "{\"success\": false, \"error\": \"Method not allowed\"}";
+            sendResponse(exchange, 405, response);
+            return;
+        }
+
+        DealsIndex deals = dealsEngine.refreshNow();
+        JSONObject response = new JSONObject();
+        response.put("success", deals != null);
+        if (deals != null) {
+            response.put("generated_at", deals.getGeneratedAt());
+            response.put("build_ms", deals.getBuildMillis());
+            JSONObject counts = new JSONObject();
+            for (String type : DealsIndex.TYPES) {
+                counts.put(type, deals.size(type));
+            }
+            response.put("counts", counts);
+        } else {
+            response.put("error", "Không thể tải dữ liệu giảm giá");
+        }
+        sendResponse(exchange, deals != null ? 200 : 503, response.toString());
+    }
+
+    /**
+     * NEW: Handle price ingest endpoint - queue many price observations for batched writing
+     * Body: {"observations": [{"product_id": 1, "price": 100000, "original_price": 120000,
+     *                          "currency": "VND", "deal_type": "FLASH_SALE", "recorded_at": 1700000000000}]}
+     * The response is sent once every observation's batch has committed; no request thread waits.
+     * Every row is validated first (known product_id, non-negative prices, a price_interval deal_type);
+     * if any row is invalid nothing is queued and the answer is 400 with the per-row errors.
+     */
+    private void handlePriceIngest(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "POST, OPTIONS");
         headers.add("Access-Control-Allow-Headers", "Content-Type");
         headers.add("Content-Type", "application/json; charset=UTF-8");
 
-        // Handle preflight OPTIONS request
         if ("OPTIONS".equals(exchange.getRequestMethod())) {
             exchange.sendResponseHeaders(200, -1);
             return;
         }
 
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            String response = "{\"success\": false, \"error\": \"Method not allowed\"}";
+            sendResponse(exchange, 405, response);
+            return;
+        }
+
         try {
-            if (!"POST".equals(exchange.getRequestMethod())) {
-                String errorResponse = "{\"success\": false, \"error\": \"Method not allowed. Use POST.\"}";
-                sendResponse(exchange, 405, errorResponse);
+            JSONObject requestJson = readJsonBody(exchange, INGEST_MAX_BODY_BYTES);
+            if (requestJson == null) {
                 return;
             }
-            
-            // Read request body
-            InputStream is = exchange.getRequestBody();
-            String requestBody = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8))
-                    .lines()
-                    .reduce("", (acc, line) -> acc + line);
+            JSONArray observations = requestJson.getJSONArray("observations");
+            List<PriceHistory> rows = new ArrayList<>(observations.length());
+            JSONArray errors = new JSONArray();
+            for (int i = 0; i < observations.length(); i++) {
+                try {
+                    rows.add(parseObservation(observations.getJSONObject(i)));
+                } catch (JSONException | IllegalArgumentException e) {
+                    rows.add(null);
+                    errors.put(new JSONObject().put("index", i).put("error", e.getMessage()));
+                }
+            }
 
-            if (requestBody.isEmpty()) {
-                String errorResponse = "{\"success\": false, \"error\": \"Missing product_id in request body\"}";
-                sendResponse(exchange, 400, errorResponse);
-                return;
+            // Unknown products would fail the foreign key inside the writer's shared batch
+            Set<Integer> productIds = new HashSet<>();
+            for (PriceHistory ph : rows) {
+                if (ph != null) {
+                    productIds.add(ph.getProductId());
+                }
             }
-            
-            JSONObject requestJson = new JSONObject(requestBody);
-            if (!requestJson.has("product_id")) {
-                String errorResponse = "{\"success\": false, \"error\": \"Missing product_id in request body\"}";
-                sendResponse(exchange, 400, errorResponse);
+            Set<Integer> existing = new HashSet<>();
+            List<Integer> ids = new ArrayList<>(productIds);
+            for (int from = 0; from < ids.size(); from += INGEST_ID_CHECK_CHUNK) {
+                Set<Integer> found = productDAO.getExistingProductIds(
+                        ids.subList(from, Math.min(from + INGEST_ID_CHECK_CHUNK, ids.size())));
+                if (found == null) {
+                    sendResponse(exchange, 503, "{\"success\": false, \"error\": \"Could not validate product IDs\"}");
+                    return;
+                }
+                existing.addAll(found);
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                PriceHistory ph = rows.get(i);
+                if (ph != null && !existing.contains(ph.getProductId())) {
+                    errors.put(new JSONObject().put("index", i).put("error", "Unknown product_id " + ph.getProductId()));
+                }
+            }
+
+            if (!errors.isEmpty()) {
+                JSONObject response = new JSONObject();
+                response.put("success", false);
+                response.put("error", "Invalid observations; nothing was written");
+                response.put("received", rows.size());
+                response.put("errors", errors);
+                sendResponse(exchange, 400, response.toString());
                 return;
             }
-            
-            int productId = requestJson.getInt("product_id");
-            System.out.println("📥 Received product detail request - Product ID: " + productId);
 
-            JSONObject responseJson = handleGetProductDetail(productId);
-            
-            String response = responseJson.toString();
-            System.out.println("📤 Sending product detail response");
-            sendResponse(exchange, 200, response);
+            CompletableFuture<?>[] writes = new CompletableFuture<?>[rows.size()];
+            AtomicInteger written = new AtomicInteger();
+            for (int i = 0; i < rows.size(); i++) {
+                writes[i] = priceHistoryDAO.addPriceRecordAsync(rows.get(i))
+                        .handle((saved, error) -> {
+                            if (error == null && saved) {
+                                written.incrementAndGet();
+                            }
+                            return null;
+                        });
+            }
+
+            // Answer on an HTTP worker, not on the price writer thread that completes the writes
+            int total = rows.size();
+            CompletableFuture.allOf(writes).whenCompleteAsync((ignored, error) -> {
+                JSONObject response = new JSONObject();
+                response.put("success", written.get() == total);
+                response.put("received", total);
+                response.put("written", written.get());
+                try {
+                    sendResponse(exchange, written.get() == total ? 200 : 503, response.toString());
+                } catch (Exception e) {
+                    System.err.println("Error sending price ingest result: " + e.getMessage());
+                    exchange.close();
+                }
+            }, requestExecutor);
 
         } catch (Exception e) {
             e.printStackTrace();
             String errorResponse = String.format(
-                "{\"success\": false, \"error\": \"Server error: %s\"}", 
-                e.getMessage().replace("\"", "\\\"")
+                "{\"success\": false, \"error\": \"Bad request: %s\"}", 
+                String.valueOf(e.getMessage()).replace("\"", "\\\"")
             );
-            sendResponse(exchange, 500, errorResponse);
+            sendResponse(exchange, 400, errorResponse);
         }
     }
 
     /**
-     * NEW: Get detailed product information including price history, reviews, and similar products
-     * @param productId The product ID
-     * @return JSONObject with complete product details
+     * One /prices/ingest row as a price observation
+     * @throws IllegalArgumentException (or JSONException) describing what is wrong with the row
      */
-    private JSONObject handleGetProductDetail(int productId) {
-        JSONObject response = new JSONObject();
-        
-        try {
-            System.out.println("🔍 Fetching product detail - ID: " + productId);
-            
-            // Get product basic info
-            Product product = productDAO.getProductById(productId);
-            
-            if (product == null) {
-                response.put("success", false);
-                response.put("error", "Không tìm thấy sản phẩm này!");
-                return response;
+    private static PriceHistory parseObservation(JSONObject o) {
+        long productId = o.getLong("product_id");
+        if (productId <= 0 || productId > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid product_id " + productId);
+        }
+        double price = o.getDouble("price");
+        double originalPrice = o.optDouble("original_price", price);
+        if (!(price >= 0) || Double.isInfinite(price) || !(originalPrice >= 0) || Double.isInfinite(originalPrice)) {
+            throw new IllegalArgumentException("Invalid price or original_price");
+        }
+        String currency = o.optString("currency", "VND");
+        if (currency.isEmpty() || currency.length() > 10) {
+            throw new IllegalArgumentException("Invalid currency: " + currency);
+        }
+        String dealType = DealTypes.parse(o.optString("deal_type", DealTypes.NORMAL));
+        if (dealType == null) {
+            throw new IllegalArgumentException("Unknown deal_type: " + o.optString("deal_type")
+                    + " (allowed: " + DealTypes.VALUES + ")");
+        }
+
+        PriceHistory ph = new PriceHistory();
+        ph.setProductId((int) productId);
+        ph.setPrice(price);
+        ph.setOriginalPrice(originalPrice);
+        ph.setCurrency(currency);
+        ph.setDealType(dealType);
+        if (o.has("recorded_at")) {
+            long recordedAt = o.getLong("recorded_at");
+            if (recordedAt <= 0) {
+                throw new IllegalArgumentException("Invalid recorded_at " + recordedAt);
             }
-            
-            System.out.println("✓ Found product: " + product.getName());
-            
-            // Get current price
-            PriceHistory currentPrice = priceHistoryDAO.getCurrentPrice(productId);
-            
-            // Get price history
-            List<PriceHistory> priceHistory = priceHistoryDAO.getPriceHistoryByProductId(productId);
-            
-            // Get reviews
-            List<Review> reviews = reviewDAO.getReviewsByProductId(productId);
-            int reviewCount = reviewDAO.countReviewsByProductId(productId);
-            
-            // Get similar products (same group) - 16 products for 4 rows
-            List<Product> similarProducts = productDAO.getSimilarProducts(
-                product.getGroupId(), 
-                productId, 
-                16  // Limit to 16 similar products (4 rows x 4 columns)
-            );
-            
-            // Get group name
+            ph.setCapturedAt(new Timestamp(recordedAt));
+        }
+        return ph;
+    }
+
+    /**
+     * Build the client view of an ingestion job
+     * Finished jobs carry the same "product" card as a synchronous SEARCH_BY_URL
+     */
+    private JSONObject buildJobJSON(IngestionJob job) {
+        JSONObject json = new JSONObject();
+        // Read once: the job may finish while this runs
+        IngestionJob.Status status = job.getStatus();
+        json.put("job_id", job.getJobId());
+        json.put("status", status.name());
+        json.put("isNew", true);
+
+        if (status == IngestionJob.Status.DONE) {
+            Product product = job.getProduct();
+            PriceHistory currentPrice = priceHistoryDAO.getCurrentPrice(product.getProductId());
             String groupName = productGroupDAO.getGroupNameById(product.getGroupId());
+
+            json.put("success", true);
+            json.put("product", buildProductJSON(product, currentPrice, groupName));
+        } else if (status == IngestionJob.Status.FAILED) {
+            json.put("success", false);
+            json.put("error", job.getError());
+        } else {
+            json.put("success", true);
+        }
+
+        return json;
+    }
+
+    /**
+     * NEW: Handle deals endpoint - Get products with discounts
+     * Supports filtering by deal_type: FLASH_SALE, HOT_DEAL, TRENDING, or ALL
+     */
+    private void handleDeals(HttpExchange exchange) throws IOException {
+        // Add CORS headers
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+        headers.add("Access-Control-Expose-Headers", "ETag");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        // Handle preflight OPTIONS request
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        try {
+            String dealType = "ALL"; // Default: get all deals
+            String cursor = null;
+            int limit = DEALS_PAGE_SIZE;
             
-            // Build response JSON
-            response.put("success", true);
-            
-            // Product info
-            JSONObject productJson = new JSONObject();
-            productJson.put("product_id", product.getProductId());
-            productJson.put("group_id", product.getGroupId());
-            productJson.put("group_name", groupName);
-            productJson.put("name", product.getName());
-            productJson.put("brand", product.getBrand() != null ? product.getBrand() : "");
-            productJson.put("url", product.getUrl());
-            productJson.put("image_url", product.getImageUrl());
-            productJson.put("description", product.getDescription() != null ? product.getDescription() : "");
-            productJson.put("source", product.getSource());
-            
-            response.put("product", productJson);
-            
-            // Current price info
-            JSONObject priceJson = new JSONObject();
-            if (currentPrice != null) {
-                priceJson.put("current_price", currentPrice.getPrice());
-                priceJson.put("original_price", currentPrice.getOriginalPrice());
-                priceJson.put("currency", currentPrice.getCurrency());
-                priceJson.put("deal_type", currentPrice.getDealType() != null ? currentPrice.getDealType() : "Normal");
-                
-                // Calculate discount percentage
-                int discountPercent = 0;
-                if (currentPrice.getOriginalPrice() > currentPrice.getPrice() && currentPrice.getOriginalPrice() > 0) {
-                    discountPercent = (int) Math.round(((currentPrice.getOriginalPrice() - currentPrice.getPrice()) / currentPrice.getOriginalPrice()) * 100);
+            // Check if POST request with body
+            if ("POST".equals(exchange.getRequestMethod())) {
+                JSONObject requestJson = readJsonBody(exchange);
+                if (requestJson == null) {
+                    return;
                 }
-                priceJson.put("discount_percent", discountPercent);
-            } else {
-                priceJson.put("current_price", 0);
-                priceJson.put("original_price", 0);
-                priceJson.put("currency", "VND");
-                priceJson.put("deal_type", "Normal");
-                priceJson.put("discount_percent", 0);
+                if (requestJson.has("deal_type")) {
+                    dealType = requestJson.getString("deal_type");
+                }
+                cursor = requestJson.optString("cursor", null);
+                limit = pageLimit(requestJson, DEALS_PAGE_SIZE);
             }
-            response.put("price", priceJson);
-            
-            // Price history array
-            JSONArray priceHistoryArray = new JSONArray();
-            for (PriceHistory ph : priceHistory) {
-                JSONObject phJson = new JSONObject();
-                phJson.put("price", ph.getPrice());
-                phJson.put("original_price", ph.getOriginalPrice());
-                phJson.put("captured_at", ph.getCapturedAt().toString());
-                phJson.put("deal_type", ph.getDealType() != null ? ph.getDealType() : "Normal");
-                priceHistoryArray.put(phJson);
-            }
-            response.put("price_history", priceHistoryArray);
-            
-            // Reviews
-            JSONObject reviewsJson = new JSONObject();
-            reviewsJson.put("count", reviewCount);
             
-            JSONArray reviewsArray = new JSONArray();
-            for (Review review : reviews) {
-                JSONObject rJson = new JSONObject();
-                rJson.put("reviewer_name", review.getReviewerName());
-                rJson.put("rating", review.getRating());
-                rJson.put("review_text", review.getReviewText());
-                rJson.put("review_date", review.getReviewDate().toString());
-                reviewsArray.put(rJson);
-            }
-            reviewsJson.put("reviews", reviewsArray);
-            response.put("reviews", reviewsJson);
-            
-            // Similar products
-            JSONArray similarProductsArray = new JSONArray();
-            for (Product sp : similarProducts) {
-                PriceHistory spPrice = priceHistoryDAO.getCurrentPrice(sp.getProductId());
-                JSONObject spJson = buildProductJSON(sp, spPrice, groupName);
-                similarProductsArray.put(spJson);
-            }
-            response.put("similar_products", similarProductsArray);
+            System.out.println("📥 Received deals request - Deal type: " + dealType);
+            sendDeals(exchange, dealType, cursor, limit, READ_CACHE_CONTROL);
+
+        } catch (Exception e) {
+            e.printStackTrace();
+            String errorResponse = String.format(
+                "{\"success\": false, \"error\": \"Server error: %s\"}", 
+                e.getMessage().replace("\"", "\\\"")
+            );
+            sendResponse(exchange, 500, errorResponse);
+        }
+    }
+
+    /**
+     * One page of deals with validators - shared by POST /deals and GET /api/deals
+     * Ranked sections come from the in-memory deals index; other deal_type values (and the
+     * first seconds after startup, before the first build) still go to MySQL
+     */
+    private void sendDeals(HttpExchange exchange, String dealType, String cursor, int limit, String cacheControl)
+            throws IOException {
+        // Pages served from the deals index are versioned by it; answer 304 before building anything
+        DealsIndex deals = dealsEngine.getIndex();
+        boolean indexed = deals != null && deals.supports(dealType);
+        String etag = indexed ? dealsETag(deals, dealType + "|" + cursor + "|" + limit) : null;
+        if (etag != null && ifNoneMatch(exchange, etag)) {
+            sendNotModified(exchange, etag, cacheControl);
+            return;
+        }
+
+        System.out.println("🎁 Fetching deals - Type: " + dealType);
+        Page<ProductSummary> page;
+        try {
+            page = indexed
+                    ? deals.page(dealType, cursor, limit)
+                    : productDAO.getProductsByDealType(dealType, cursor, limit);
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 200, "{\"success\": false, \"error\": \"Invalid cursor\"}");
+            return;
+        }
+        List<ProductSummary> products = page.getItems();
+        
+        if (products.isEmpty() && cursor == null) {
+            JSONObject response = new JSONObject();
+            response.put("success", false);
+            response.put("error", "Hiện tại chưa có sản phẩm giảm giá nào. Vui lòng quay lại sau!");
+            sendResponse(exchange, 200, response.toString());
+            return;
+        }
+        System.out.println("✓ Found " + products.size() + " deal products");
+        
+        if (etag != null) {
+            setValidators(exchange.getResponseHeaders(), etag, cacheControl);
+        }
+        System.out.println("📤 Sending deals response with " + products.size() + " products");
+        sendStreaming(exchange, 200, out -> {
+            out.beginObject();
+            out.name("success").value(true);
+            out.name("count").value(products.size());
+            out.name("deal_type").value(dealType);
+            out.name("products").beginArray();
+            for (ProductSummary product : products) {
+                writeSummary(out, product);
+            }
+            out.endArray();
+            if (indexed) {
+                out.name("generated_at").value(deals.getGeneratedAt());
+                out.name("updated_at").value(deals.getUpdatedAt());
+            }
+            writeNextCursor(out, page);
+            out.endObject();
+        });
+    }
+
+
+    /**
+     * NEW: Handle product detail endpoint - Get detailed product information
+     * Requires product_id in request body; optional "include" selects sections, e.g.
+     * "price,history:90d,reviews:10,similar:8" (see DetailSections)
+     */
+    private void handleProductDetail(HttpExchange exchange) throws IOException {
+        // Add CORS headers
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "GET, POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type, If-None-Match");
+        headers.add("Access-Control-Expose-Headers", "ETag");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        // Handle preflight OPTIONS request
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                String errorResponse = "{\"success\": false, \"error\": \"Method not allowed. Use POST.\"}";
+                sendResponse(exchange, 405, errorResponse);
+                return;
+            }
             
-            System.out.println("✓ Product detail prepared: " + reviewCount + " reviews, " + 
-                             priceHistory.size() + " price records, " + 
-                             similarProducts.size() + " similar products");
+            // Read request body
+            JSONObject requestJson = readJsonBody(exchange);
+            if (requestJson == null) {
+                return;
+            }
+            if (!requestJson.has("product_id")) {
+                String errorResponse = "{\"success\": false, \"error\": \"Missing product_id in request body\"}";
+                sendResponse(exchange, 400, errorResponse);
+                return;
+            }
             
+            int productId = requestJson.getInt("product_id");
+            System.out.println("📥 Received product detail request - Product ID: " + productId);
+            sendProductDetail(exchange, productId, requestJson, READ_CACHE_CONTROL);
+
+        } catch (IllegalArgumentException e) {
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", e.getMessage());
+            sendResponse(exchange, 400, error.toString());
         } catch (Exception e) {
             e.printStackTrace();
+            String errorResponse = String.format(
+                "{\"success\": false, \"error\": \"Server error: %s\"}", 
+                e.getMessage().replace("\"", "\\\"")
+            );
+            sendResponse(exchange, 500, errorResponse);
+        }
+    }
+
+    /**
+     * Product detail with validators, from the detail cache or freshly assembled -
+     * shared by POST /product-detail and GET /api/products/{id}
+     * The body is cached, so it is encoded into one byte[] (straight from the loaded data,
+     * without a JSONObject tree or String) instead of being streamed.
+     * @param params History params ("resolution", "from", "to", "max_points") and the sections to
+     *               return ("include", or its alias "fields" - see DetailSections; default all)
+     * @throws IllegalArgumentException if "include" is invalid
+     */
+    private void sendProductDetail(HttpExchange exchange, int productId, JSONObject params, String cacheControl)
+            throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+
+        DetailSections sections = DetailSections.parse(params.has("include") ? params.opt("include") : params.opt("fields"));
+        if (sections.history) {
+            // Reject a bad resolution with 400 here, not as a failed history sub-query
+            PriceRollupDAO.parseResolution(params.optString("resolution", PriceRollupDAO.AUTO));
+        }
+        // A relative history range is resolved once, so its bounds are part of the cache key and ETag
+        params = sections.historyParams(params);
+        String cacheKey = detailCacheKey(productId, params, sections);
+        CachedResponse cached = detailCache.get(cacheKey);
+        long stamp = detailCache.stamp();
+        
+        // A cached body carries its ETag; otherwise one cheap version query decides whether
+        // the client's copy is still current, before any of the detail queries run
+        String etag = cached != null ? cached.etag : detailETag(productId, cacheKey, sections.similar);
+        if (etag != null && ifNoneMatch(exchange, etag)) {
+            sendNotModified(exchange, etag, cacheControl);
+            return;
+        }
+        if (cached != null) {
+            setValidators(headers, etag, cacheControl);
+            headers.add("X-Cache", "HIT");
+            System.out.println("📤 Sending cached product detail response");
+            sendResponse(exchange, 200, cached.body, cached.gzipBody);
+            return;
+        }
+        headers.add("X-Cache", "MISS");
+
+        ProductDetail detail = null;
+        String error = null;
+        int status = 200;
+        try (FanOut scope = new FanOut(detailExecutor, DETAIL_DEADLINE_MS)) {
+            try {
+                detail = loadProductDetail(productId, params, sections, scope);
+                if (detail == null) {
+                    error = "Không tìm thấy sản phẩm này!";
+                }
+            } catch (TimeoutException e) {
+                status = 504;
+                error = "Hết thời gian xử lý, vui lòng thử lại!";
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                cause.printStackTrace();
+                error = "Lỗi hệ thống: " + cause.getMessage();
+            } catch (Exception e) {
+                e.printStackTrace();
+                error = "Lỗi hệ thống: " + e.getMessage();
+            }
+            headers.add("Server-Timing", scope.serverTiming());
+        }
+        
+        if (error != null) {
+            JSONObject response = new JSONObject();
             response.put("success", false);
-            response.put("error", "Lỗi hệ thống: " + e.getMessage());
+            response.put("error", error);
+            sendResponse(exchange, status, response.toString());
+            return;
         }
         
-        return response;
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(16 * 1024);
+        try (JsonStreamWriter out = new JsonStreamWriter(buffer)) {
+            writeProductDetail(out, detail);
+        }
+        byte[] response = buffer.toByteArray();
+        byte[] gzipped = null;
+        if (etag != null) {
+            CachedResponse fresh = new CachedResponse(response, etag);
+            if (detail.similarProducts != null) {
+                detailCache.put(cacheKey, fresh, stamp, similarGroup(detail.product.getGroupId()));
+            } else {
+                detailCache.put(cacheKey, fresh, stamp);
+            }
+            gzipped = fresh.gzipBody;
+            setValidators(headers, etag, cacheControl);
+        }
+        System.out.println("📤 Sending product detail response");
+        sendResponse(exchange, status, response, gzipped);
+    }
+
+    /**
+     * Drop the cached details whose similar products include any of these products
+     * (same group); everything if the groups cannot be looked up
+     */
+    private void invalidateSimilarSections(Set<Integer> productIds) {
+        ExecutorService executor = detailExecutor;
+        if (executor == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                Set<Integer> groupIds = productDAO.getGroupIds(productIds);
+                if (groupIds == null) {
+                    detailCache.clear();
+                    return;
+                }
+                for (int groupId : groupIds) {
+                    detailCache.invalidateGroup(similarGroup(groupId));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Extra invalidation group of cached details that show this group's products as similar products
+     */
+    private static String similarGroup(int groupId) {
+        return "g" + groupId;
+    }
+
+    /**
+     * Strong ETag of a product detail response: data version (current price interval, review count,
+     * group name, and the group's latest price interval when similar products are included)
+     * plus a hash of the request params (including the resolved history range)
+     * @return null if the product does not exist (or the version query failed)
+     */
+    private String detailETag(int productId, String cacheKey, boolean withSimilar) {
+        String version = productDAO.getDetailVersion(productId, withSimilar);
+        if (version == null) {
+            return null;
+        }
+        return "\"p" + productId + "-" + version + "-" + Integer.toHexString(cacheKey.hashCode()) + "\"";
+    }
+
+    /**
+     * Strong ETag of a response built from the deals index: index build + update count, plus a hash of the request params
+     */
+    private static String dealsETag(DealsIndex deals, String params) {
+        return "\"d" + deals.getGeneratedAt() + "." + deals.getVersion() + "-" +
+               Integer.toHexString(params.hashCode()) + "\"";
+    }
+
+    /**
+     * Cache key for a product detail response: product ID first (the invalidation group),
+     * then every request param that changes the response
+     */
+    private static String detailCacheKey(int productId, JSONObject params, DetailSections sections) {
+        return productId + "|" + sections + "|" + params.opt("resolution") + "|" + params.opt("from") + "|" +
+               params.opt("to") + "|" + params.opt("max_points");
+    }
+
+    /**
+     * NEW: Load the product detail sections: product + group name (always), and - as requested -
+     * current price, price history, first page of reviews + review stats, similar products.
+     * Sections not requested cost no query.
+     * @param productId The product ID
+     * @param params Request body - optional history "resolution", "from", "to", "max_points"
+     *               (see buildPriceHistorySeries)
+     * @param sections Sections to load (see DetailSections)
+     * @return The loaded sections, or null if the product does not exist
+     * @throws TimeoutException if the sub-queries did not finish within the deadline
+     * @throws ExecutionException if a sub-query failed
+     */
+    private ProductDetail loadProductDetail(int productId, JSONObject params, DetailSections sections,
+                                            FanOut scope) throws Exception {
+        System.out.println("🔍 Fetching product detail - ID: " + productId + " [" + sections + "]");
+        
+        // Everything keyed by productId alone starts at once; only similar products and the
+        // group name wait for the product row (they need its group_id)
+        CompletableFuture<Product> productTask = scope.fork("product", () -> productDAO.getProductById(productId));
+        
+        // Current price
+        CompletableFuture<PriceHistory> priceTask = sections.price
+                ? scope.fork("price", () -> priceHistoryDAO.getCurrentPrice(productId)) : null;
+        
+        // Price history (raw intervals or daily/weekly rollups, whichever covers the range cheapest)
+        JSONObject historyParams = sections.historyParams(params);
+        CompletableFuture<PriceSeries> historyTask = sections.history
+                ? scope.fork("history", () -> buildPriceHistorySeries(productId, historyParams)) : null;
+        
+        // Reviews (first page; more via /reviews) + count / rating stats in one row
+        CompletableFuture<Page<Review>> reviewsTask = null;
+        CompletableFuture<ReviewAggregate> reviewStatsTask = null;
+        if (sections.reviews) {
+            reviewsTask = scope.fork("reviews",
+                    () -> reviewDAO.getReviewsByProductId(productId, null, sections.reviewsLimit));
+            reviewStatsTask = scope.fork("review_stats", () -> reviewDAO.getReviewAggregate(productId));
+        }
+        
+        Product product = scope.join(productTask);
+        if (product == null) {
+            return null;
+        }
+        
+        System.out.println("✓ Found product: " + product.getName());
+        
+        // Similar products (same group) - 16 by default, for 4 rows x 4 columns
+        CompletableFuture<List<ProductSummary>> similarTask = sections.similar
+                ? scope.fork("similar", () -> productDAO.getSimilarProducts(
+                        product.getGroupId(), productId, sections.similarLimit))
+                : null;
+        
+        // Group name
+        CompletableFuture<String> groupNameTask = scope.fork("group",
+                () -> productGroupDAO.getGroupNameById(product.getGroupId()));
+        
+        ProductDetail detail = new ProductDetail();
+        detail.sections = sections;
+        detail.product = product;
+        detail.groupName = scope.join(groupNameTask);
+        if (priceTask != null) {
+            detail.currentPrice = scope.join(priceTask);
+        }
+        if (historyTask != null) {
+            detail.history = scope.join(historyTask);
+        }
+        if (reviewsTask != null) {
+            detail.reviews = scope.join(reviewsTask);
+            detail.reviewStats = scope.join(reviewStatsTask);
+        }
+        if (similarTask != null) {
+            detail.similarProducts = scope.join(similarTask);
+        }
+        
+        System.out.println("✓ Product detail prepared: " +
+                         (detail.reviewStats != null ? detail.reviewStats.getReviewCount() + " reviews, " : "") +
+                         (detail.history != null ? detail.history.kept.length + " price points, " : "") +
+                         (detail.similarProducts != null ? detail.similarProducts.size() + " similar products" : ""));
+        return detail;
+    }
+
+    /**
+     * Product detail response JSON
+     */
+    private void writeProductDetail(JsonStreamWriter out, ProductDetail detail) throws IOException {
+        Product product = detail.product;
+        PriceHistory currentPrice = detail.currentPrice;
+        ReviewAggregate reviewStats = detail.reviewStats;
+        
+        out.beginObject();
+        out.name("success").value(true);
+        
+        // Product info
+        out.name("product").beginObject();
+        out.name("product_id").value(product.getProductId());
+        out.name("group_id").value(product.getGroupId());
+        out.name("group_name").value(detail.groupName);
+        out.name("name").value(product.getName());
+        out.name("brand").value(product.getBrand() != null ? product.getBrand() : "");
+        out.name("url").value(product.getUrl());
+        out.name("image_url").value(product.getImageUrl());
+        out.name("description").value(product.getDescription() != null ? product.getDescription() : "");
+        out.name("source").value(product.getSource());
+        out.endObject();
+        
+        // Current price info
+        if (detail.sections.price) {
+            out.name("price");
+            writeCurrentPrice(out, currentPrice);
+        }
+        
+        // Price history array
+        if (detail.history != null) {
+            out.name("price_history");
+            writePriceSeriesPoints(out, detail.history);
+            out.name("price_history_resolution").value(detail.history.resolution);
+            out.name("price_history_total").value(detail.history.totalPoints);
+        }
+        
+        // Reviews
+        if (detail.reviews != null) {
+            out.name("reviews").beginObject();
+            writeReviewStats(out, reviewStats);
+            out.name("reviews").beginArray();
+            for (Review review : detail.reviews.getItems()) {
+                writeReview(out, review);
+            }
+            out.endArray();
+            writeNextCursor(out, detail.reviews);
+            out.endObject();
+        }
+        
+        // Similar products
+        if (detail.similarProducts != null) {
+            out.name("similar_products").beginArray();
+            for (ProductSummary sp : detail.similarProducts) {
+                writeSummary(out, sp);
+            }
+            out.endArray();
+        }
+        
+        out.endObject();
+    }
+
+    /**
+     * Current price object of a detail / batch result (zero price in VND if the product has none)
+     */
+    private static void writeCurrentPrice(JsonStreamWriter out, PriceHistory currentPrice) throws IOException {
+        out.beginObject();
+        if (currentPrice != null) {
+            out.name("current_price").value(currentPrice.getPrice());
+            out.name("original_price").value(currentPrice.getOriginalPrice());
+            out.name("currency").value(currentPrice.getCurrency());
+            out.name("deal_type").value(currentPrice.getDealType() != null ? currentPrice.getDealType() : "Normal");
+            
+            // Calculate discount percentage
+            int discountPercent = 0;
+            if (currentPrice.getOriginalPrice() > currentPrice.getPrice() && currentPrice.getOriginalPrice() > 0) {
+                discountPercent = (int) Math.round(((currentPrice.getOriginalPrice() - currentPrice.getPrice()) / currentPrice.getOriginalPrice()) * 100);
+            }
+            out.name("discount_percent").value(discountPercent);
+        } else {
+            out.name("current_price").value(0);
+            out.name("original_price").value(0);
+            out.name("currency").value("VND");
+            out.name("deal_type").value("Normal");
+            out.name("discount_percent").value(0);
+        }
+        out.endObject();
+    }
+
+    /**
+     * Review count / rating members (inside an already open object)
+     */
+    private static void writeReviewStats(JsonStreamWriter out, ReviewAggregate reviewStats) throws IOException {
+        out.name("count").value(reviewStats.getReviewCount());
+        out.name("average_rating").value(Math.round(reviewStats.getAverageRating() * 10) / 10.0);
+        out.name("rating_histogram").beginObject();
+        for (int stars = 1; stars <= 5; stars++) {
+            out.name(String.valueOf(stars)).value(reviewStats.getStarCount(stars));
+        }
+        out.endObject();
+        out.name("latest_review_date").value(reviewStats.getLatestReviewDate() != null
+                ? reviewStats.getLatestReviewDate().toString() : null);
     }
 
     private JSONObject buildProductJSON(Product product, PriceHistory priceHistory, String groupName) {
@@ -574,10 +1556,959 @@ public class SimpleHttpServer {
         return json;
     }
 
-    public void stop() {
-        if (server != null) {
-            server.stop(0);
-            System.out.println("HTTP Server stopped");
+    /**
+     * Product card JSON for list endpoints - same keys as buildProductJSON minus "description",
+     * with group name and current price already joined in by the summary query
+     */
+    private JSONObject buildSummaryJSON(ProductSummary product) {
+        JSONObject json = new JSONObject();
+        
+        json.put("product_id", product.getProductId());
+        json.put("group_id", product.getGroupId());
+        json.put("group_name", product.getGroupName());
+        json.put("name", product.getName());
+        json.put("brand", product.getBrand() != null ? product.getBrand() : "");
+        json.put("url", product.getUrl());
+        json.put("image_url", product.getImageUrl());
+        json.put("source", product.getSource());
+        
+        if (product.hasPrice()) {
+            json.put("price", product.getPrice());
+            json.put("original_price", product.getOriginalPrice());
+            json.put("currency", product.getCurrency());
+            json.put("deal_type", product.getDealType() != null ? product.getDealType() : "Normal");
+        } else {
+            json.put("price", 0);
+            json.put("original_price", 0);
+            json.put("currency", "VND");
+            json.put("deal_type", "Normal");
+        }
+        json.put("discount_percent", product.getDiscountPercent());
+        
+        return json;
+    }
+
+    /**
+     * Streaming form of buildSummaryJSON (same keys and values)
+     */
+    private static void writeSummary(JsonStreamWriter out, ProductSummary product) throws IOException {
+        out.beginObject();
+        out.name("product_id").value(product.getProductId());
+        out.name("group_id").value(product.getGroupId());
+        out.name("group_name").value(product.getGroupName());
+        out.name("name").value(product.getName());
+        out.name("brand").value(product.getBrand() != null ? product.getBrand() : "");
+        out.name("url").value(product.getUrl());
+        out.name("image_url").value(product.getImageUrl());
+        out.name("source").value(product.getSource());
+        
+        if (product.hasPrice()) {
+            out.name("price").value(product.getPrice());
+            out.name("original_price").value(product.getOriginalPrice());
+            out.name("currency").value(product.getCurrency());
+            out.name("deal_type").value(product.getDealType() != null ? product.getDealType() : "Normal");
+        } else {
+            out.name("price").value(0);
+            out.name("original_price").value(0);
+            out.name("currency").value("VND");
+            out.name("deal_type").value("Normal");
+        }
+        out.name("discount_percent").value(product.getDiscountPercent());
+        out.endObject();
+    }
+
+    /**
+     * Build a price history series for charts
+     * params: "resolution" = AUTO (default) | RAW | DAY | WEEK,
+     *         "from" / "to" = epoch millis or "yyyy-MM-dd" (optional),
+     *         "max_points" = downsample to at most this many points with LTTB (optional)
+     * RAW points carry price/original_price/deal_type; DAY/WEEK points carry the bucket's
+     * close as "price" plus open/min/max/avg.
+     * Downsampling always keeps the first and last point (exact latest price) and the
+     * lowest and highest price of the range.
+     * @return The loaded points and which of them to send (see writePriceSeriesPoints)
+     */
+    private PriceSeries buildPriceHistorySeries(int productId, JSONObject params) {
+        Timestamp from = parseTimeParam(params.opt("from"), false);
+        Timestamp to = parseTimeParam(params.opt("to"), true);
+        String resolution = PriceRollupDAO.chooseResolution(
+                params.optString("resolution", PriceRollupDAO.AUTO), from, to,
+                from == null ? priceHistoryDAO.getFirstObservedAt(productId) : null);
+
+        PriceSeries series = new PriceSeries();
+        series.resolution = resolution;
+        double[] times;
+        double[] prices;
+        double[] lows;
+        double[] highs;
+
+        if (PriceRollupDAO.RAW.equals(resolution)) {
+            series.raw = priceHistoryDAO.getPriceHistoryByProductId(productId, from, to);
+            int n = series.raw.size();
+            times = new double[n];
+            prices = new double[n];
+            for (int i = 0; i < n; i++) {
+                PriceHistory ph = series.raw.get(i);
+                times[i] = ph.getCapturedAt().getTime();
+                prices[i] = ph.getPrice();
+            }
+            lows = prices;
+            highs = prices;
+        } else {
+            series.rollups = priceRollupDAO.getRollups(productId, resolution, from, to);
+            int n = series.rollups.size();
+            times = new double[n];
+            prices = new double[n];
+            lows = new double[n];
+            highs = new double[n];
+            for (int i = 0; i < n; i++) {
+                PriceRollup rollup = series.rollups.get(i);
+                times[i] = rollup.getBucketStart().getTime();
+                prices[i] = rollup.getClosePrice();
+                lows[i] = rollup.getMinPrice();
+                highs[i] = rollup.getMaxPrice();
+            }
+        }
+
+        series.totalPoints = times.length;
+        series.kept = LttbDownsampler.downsampleKeeping(times, prices, params.optInt("max_points", 0),
+                LttbDownsampler.argMin(lows), LttbDownsampler.argMax(highs));
+        return series;
+    }
+
+    /**
+     * The kept points of a series as a JSON array
+     */
+    private static void writePriceSeriesPoints(JsonStreamWriter out, PriceSeries series) throws IOException {
+        out.beginArray();
+        for (int index : series.kept) {
+            if (series.raw != null) {
+                writePricePoint(out, series.raw.get(index));
+            } else {
+                PriceRollup rollup = series.rollups.get(index);
+                out.beginObject();
+                out.name("price").value(rollup.getClosePrice());
+                out.name("open_price").value(rollup.getOpenPrice());
+                out.name("min_price").value(rollup.getMinPrice());
+                out.name("max_price").value(rollup.getMaxPrice());
+                out.name("avg_price").value(rollup.getAvgPrice());
+                out.name("samples").value(rollup.getSampleCount());
+                out.name("captured_at").value(rollup.getBucketStart().toString());
+                out.endObject();
+            }
+        }
+        out.endArray();
+    }
+
+    private static void writePricePoint(JsonStreamWriter out, PriceHistory ph) throws IOException {
+        out.beginObject();
+        out.name("price").value(ph.getPrice());
+        out.name("original_price").value(ph.getOriginalPrice());
+        out.name("captured_at").value(ph.getCapturedAt().toString());
+        out.name("deal_type").value(ph.getDealType() != null ? ph.getDealType() : "Normal");
+        out.endObject();
+    }
+
+    /**
+     * Parse "from"/"to": epoch millis or "yyyy-MM-dd" (a date "to" covers the whole day)
+     */
+    private static Timestamp parseTimeParam(Object value, boolean endOfDay) {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            return null;
+        }
+        if (value instanceof Number) {
+            return new Timestamp(((Number) value).longValue());
+        }
+        LocalDate date = LocalDate.parse(value.toString().trim());
+        return Timestamp.valueOf(endOfDay ? date.atTime(23, 59, 59) : date.atStartOfDay());
+    }
+
+    /**
+     * NEW: Handle price history endpoint - chart series only, without the rest of the detail page
+     * Body: {"product_id": 1, "resolution": "AUTO", "from": "2024-01-01", "to": 1735689600000, "max_points": 400}
+     *   or, to page through raw history: {"product_id": 1, "limit": 500, "cursor": "..."}
+     */
+    private void handlePriceHistory(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            String response = "{\"success\": false, \"error\": \"Method not allowed\"}";
+            sendResponse(exchange, 405, response);
+            return;
+        }
+
+        try {
+            JSONObject requestJson = readJsonBody(exchange);
+            if (requestJson == null) {
+                return;
+            }
+            if (!requestJson.has("product_id")) {
+                String errorResponse = "{\"success\": false, \"error\": \"Missing product_id in request body\"}";
+                sendResponse(exchange, 400, errorResponse);
+                return;
+            }
+
+            int productId = requestJson.getInt("product_id");
+
+            // Paged mode: raw points page by page ("cursor" / "limit"), no downsampling
+            if (requestJson.has("cursor") || requestJson.has("limit")) {
+                Page<PriceHistory> page = priceHistoryDAO.getPriceHistoryPage(productId,
+                        requestJson.optString("cursor", null), pageLimit(requestJson, HISTORY_PAGE_SIZE));
+                sendStreaming(exchange, 200, out -> {
+                    out.beginObject();
+                    out.name("success").value(true);
+                    out.name("product_id").value(productId);
+                    out.name("resolution").value(PriceRollupDAO.RAW);
+                    out.name("price_history").beginArray();
+                    for (PriceHistory ph : page.getItems()) {
+                        writePricePoint(out, ph);
+                    }
+                    out.endArray();
+                    writeNextCursor(out, page);
+                    out.endObject();
+                });
+                return;
+            }
+
+            PriceSeries series = buildPriceHistorySeries(productId, requestJson);
+            sendStreaming(exchange, 200, out -> {
+                out.beginObject();
+                out.name("success").value(true);
+                out.name("product_id").value(productId);
+                out.name("resolution").value(series.resolution);
+                out.name("price_history");
+                writePriceSeriesPoints(out, series);
+                out.name("total_points").value(series.totalPoints);
+                out.endObject();
+            });
+
+        } catch (DateTimeParseException e) {
+            String errorResponse = "{\"success\": false, \"error\": \"from/to must be epoch millis or yyyy-MM-dd\"}";
+            sendResponse(exchange, 400, errorResponse);
+        } catch (IllegalArgumentException e) {
+            // Unknown resolution, malformed cursor, out-of-range time...
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", String.valueOf(e.getMessage()));
+            sendResponse(exchange, 400, error.toString());
+        } catch (Exception e) {
+            e.printStackTrace();
+            String errorResponse = String.format(
+                "{\"success\": false, \"error\": \"Server error: %s\"}", 
+                String.valueOf(e.getMessage()).replace("\"", "\\\"")
+            );
+            sendResponse(exchange, 500, errorResponse);
+        }
+    }
+
+    /**
+     * NEW: Handle reviews endpoint - next pages of a product's reviews (newest first)
+     * Body: {"product_id": 1, "cursor": "...", "limit": 20}
+     */
+    private void handleReviews(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            String response = "{\"success\": false, \"error\": \"Method not allowed\"}";
+            sendResponse(exchange, 405, response);
+            return;
+        }
+
+        try {
+            JSONObject requestJson = readJsonBody(exchange);
+            if (requestJson == null) {
+                return;
+            }
+            if (!requestJson.has("product_id")) {
+                String errorResponse = "{\"success\": false, \"error\": \"Missing product_id in request body\"}";
+                sendResponse(exchange, 400, errorResponse);
+                return;
+            }
+
+            int productId = requestJson.getInt("product_id");
+            Page<Review> page = reviewDAO.getReviewsByProductId(productId,
+                    requestJson.optString("cursor", null), pageLimit(requestJson, REVIEWS_PAGE_SIZE));
+
+            sendStreaming(exchange, 200, out -> {
+                out.beginObject();
+                out.name("success").value(true);
+                out.name("product_id").value(productId);
+                out.name("reviews").beginArray();
+                for (Review review : page.getItems()) {
+                    writeReview(out, review);
+                }
+                out.endArray();
+                writeNextCursor(out, page);
+                out.endObject();
+            });
+
+        } catch (IllegalArgumentException e) {
+            sendResponse(exchange, 400, "{\"success\": false, \"error\": \"Invalid cursor\"}");
+        } catch (Exception e) {
+            e.printStackTrace();
+            String errorResponse = String.format(
+                "{\"success\": false, \"error\": \"Server error: %s\"}", 
+                String.valueOf(e.getMessage()).replace("\"", "\\\"")
+            );
+            sendResponse(exchange, 500, errorResponse);
+        }
+    }
+
+    /**
+     * NEW: Handle batch product lookup - many products in one round-trip
+     * Body: {"product_ids": [1, 2, 3], "fields": ["product", "price", "reviews", "group"]}
+     * fields (array or comma-separated, default product,price,reviews,group):
+     *   product = name, brand, url, image_url, source, group_id; description = long description;
+     *   price = current price object; reviews = count / rating stats; group = group_name
+     * Every section is one set-based query (WHERE ... IN) for the whole batch, so the number of
+     * queries does not grow with the number of products.
+     * Response: {"success": true, "products": {"1": {...}, ...}, "missing": [ids not found]}
+     */
+    private void handleProductsBatch(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "POST, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "Content-Type");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return;
+        }
+
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            String response = "{\"success\": false, \"error\": \"Method not allowed\"}";
+            sendResponse(exchange, 405, response);
+            return;
+        }
+
+        try {
+            JSONObject requestJson = readJsonBody(exchange);
+            if (requestJson == null) {
+                return;
+            }
+            JSONArray idsJson = requestJson.optJSONArray("product_ids");
+            if (idsJson == null || idsJson.isEmpty()) {
+                String errorResponse = "{\"success\": false, \"error\": \"Missing product_ids in request body\"}";
+                sendResponse(exchange, 400, errorResponse);
+                return;
+            }
+
+            // Distinct IDs, in request order
+            Set<Integer> productIds = new LinkedHashSet<>();
+            for (int i = 0; i < idsJson.length(); i++) {
+                productIds.add(idsJson.getInt(i));
+            }
+            if (productIds.size() > MAX_BATCH_IDS) {
+                String errorResponse = "{\"success\": false, \"error\": \"At most " + MAX_BATCH_IDS + " product_ids per batch\"}";
+                sendResponse(exchange, 400, errorResponse);
+                return;
+            }
+            Set<String> fields = parseBatchFields(requestJson.opt("fields"));
+
+            System.out.println("📥 Received batch request - " + productIds.size() + " products, fields " + fields);
+            ProductBatch batch;
+            try (FanOut scope = new FanOut(detailExecutor, DETAIL_DEADLINE_MS)) {
+                try {
+                    batch = loadProductBatch(productIds, fields, scope);
+                } finally {
+                    headers.add("Server-Timing", scope.serverTiming());
+                }
+            }
+
+            sendStreaming(exchange, 200, out -> writeProductBatch(out, batch, productIds, fields));
+
+        } catch (IllegalArgumentException e) {
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", e.getMessage());
+            sendResponse(exchange, 400, error.toString());
+        } catch (TimeoutException e) {
+            sendResponse(exchange, 504, "{\"success\": false, \"error\": \"Hết thời gian xử lý, vui lòng thử lại!\"}");
+        } catch (Exception e) {
+            Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+            cause.printStackTrace();
+            JSONObject error = new JSONObject();
+            error.put("success", false);
+            error.put("error", "Server error: " + cause.getMessage());
+            sendResponse(exchange, 500, error.toString());
+        }
+    }
+
+    /**
+     * "fields" of a batch request: JSON array or comma-separated string, default BATCH_DEFAULT_FIELDS
+     * @throws IllegalArgumentException on an unknown field
+     */
+    private static Set<String> parseBatchFields(Object value) {
+        if (value == null) {
+            return BATCH_DEFAULT_FIELDS;
+        }
+        List<Object> names = value instanceof JSONArray
+                ? ((JSONArray) value).toList()
+                : Arrays.asList((Object[]) value.toString().split(","));
+        Set<String> fields = new LinkedHashSet<>();
+        for (Object name : names) {
+            String field = name.toString().trim().toLowerCase();
+            if (field.isEmpty()) {
+                continue;
+            }
+            if (!BATCH_FIELDS.contains(field)) {
+                throw new IllegalArgumentException("Unknown field: " + field + " (allowed: " + BATCH_FIELDS + ")");
+            }
+            fields.add(field);
+        }
+        return fields;
+    }
+
+    /**
+     * Run the batch queries: products first (existence + group IDs) alongside prices and review stats,
+     * then group names for the groups found - at most four queries whatever the batch size
+     * @throws Exception TimeoutException / ExecutionException from the scope, or SQLException if a query failed
+     */
+    private ProductBatch loadProductBatch(Set<Integer> productIds, Set<String> fields, FanOut scope) throws Exception {
+        CompletableFuture<Map<Integer, Product>> productsTask = scope.fork("products",
+                () -> productDAO.getProductsByIds(productIds));
+        CompletableFuture<Map<Integer, PriceHistory>> pricesTask = fields.contains("price")
+                ? scope.fork("prices", () -> priceHistoryDAO.getCurrentPrices(productIds)) : null;
+        CompletableFuture<Map<Integer, ReviewAggregate>> reviewsTask = fields.contains("reviews")
+                ? scope.fork("review_stats", () -> reviewDAO.getReviewAggregates(productIds)) : null;
+
+        ProductBatch batch = new ProductBatch();
+        batch.products = requireLoaded(scope.join(productsTask), "products");
+        if (fields.contains("group")) {
+            Set<Integer> groupIds = new HashSet<>();
+            for (Product product : batch.products.values()) {
+                groupIds.add(product.getGroupId());
+            }
+            batch.groupNames = requireLoaded(
+                    scope.join(scope.fork("groups", () -> productGroupDAO.getGroupNamesByIds(groupIds))), "group names");
+        }
+        if (pricesTask != null) {
+            batch.prices = requireLoaded(scope.join(pricesTask), "prices");
+        }
+        if (reviewsTask != null) {
+            batch.reviewStats = requireLoaded(scope.join(reviewsTask), "review stats");
+        }
+        return batch;
+    }
+
+    // Batch DAO methods return null when their query failed
+    private static <T> T requireLoaded(T result, String what) throws SQLException {
+        if (result == null) {
+            throw new SQLException("Could not load " + what);
+        }
+        return result;
+    }
+
+    private static void writeProductBatch(JsonStreamWriter out, ProductBatch batch, Set<Integer> productIds,
+                                          Set<String> fields) throws IOException {
+        out.beginObject();
+        out.name("success").value(true);
+        out.name("products").beginObject();
+        for (int productId : productIds) {
+            Product product = batch.products.get(productId);
+            if (product == null) {
+                continue;
+            }
+            out.name(String.valueOf(productId)).beginObject();
+            out.name("product_id").value(productId);
+            if (fields.contains("product")) {
+                out.name("group_id").value(product.getGroupId());
+                out.name("name").value(product.getName());
+                out.name("brand").value(product.getBrand() != null ? product.getBrand() : "");
+                out.name("url").value(product.getUrl());
+                out.name("image_url").value(product.getImageUrl());
+                out.name("source").value(product.getSource());
+            }
+            if (fields.contains("description")) {
+                out.name("description").value(product.getDescription() != null ? product.getDescription() : "");
+            }
+            if (fields.contains("group")) {
+                out.name("group_name").value(batch.groupNames.getOrDefault(product.getGroupId(), "Sản phẩm mới"));
+            }
+            if (fields.contains("price")) {
+                out.name("price");
+                writeCurrentPrice(out, batch.prices.get(productId));
+            }
+            if (fields.contains("reviews")) {
+                out.name("reviews").beginObject();
+                writeReviewStats(out, batch.reviewStats.get(productId));
+                out.endObject();
+            }
+            out.endObject();
+        }
+        out.endObject();
+
+        out.name("missing").beginArray();
+        for (int productId : productIds) {
+            if (!batch.products.containsKey(productId)) {
+                out.value(productId);
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    private static void writeReview(JsonStreamWriter out, Review review) throws IOException {
+        out.beginObject();
+        out.name("reviewer_name").value(review.getReviewerName());
+        out.name("rating").value(review.getRating());
+        out.name("review_text").value(review.getReviewText());
+        out.name("review_date").value(review.getReviewDate() != null ? review.getReviewDate().toString() : "");
+        out.endObject();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            System.out.println("HTTP Server stopped");
+        }
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+        if (detailExecutor != null) {
+            detailExecutor.shutdown();
+        }
+        PriceHistoryBatchWriter.getInstance().removeListener(detailPriceInvalidator);
+        ReviewDAO.removeListener(detailReviewInvalidator);
+        ingestionJobManager.shutdown();
+        PriceHistoryBatchWriter.getInstance().removeListener(priceEventHub);
+        priceEventHub.shutdown();
+        dealsEngine.shutdown();
+        // Flush queued price observations before exit
+        PriceHistoryBatchWriter.getInstance().shutdown(5000);
+    }
+
+    /**
+     * NEW: GET /api/products/{id}?max_points=&resolution=&from=&to= - product detail (same as POST /product-detail)
+     */
+    private void handleApiProduct(HttpExchange exchange) throws IOException {
+        if (!acceptApiGet(exchange)) {
+            return;
+        }
+        try {
+            String path = exchange.getRequestURI().getPath();
+            String id = path.substring("/api/products/".length());
+            if (id.endsWith("/")) {
+                id = id.substring(0, id.length() - 1);
+            }
+            int productId;
+            try {
+                productId = Integer.parseInt(id);
+            } catch (NumberFormatException e) {
+                sendResponse(exchange, 404, "{\"success\": false, \"error\": \"Unknown product\"}");
+                return;
+            }
+            
+            System.out.println("📥 Received product detail GET - Product ID: " + productId);
+            sendProductDetail(exchange, productId, queryParams(exchange), API_DETAIL_CACHE_CONTROL);
+
+        } catch (Exception e) {
+            sendApiError(exchange, e);
+        }
+    }
+
+    /**
+     * NEW: GET /api/deals?type=HOT_DEAL&limit=&cursor= - one page of a deals section (same as POST /deals)
+     */
+    private void handleApiDeals(HttpExchange exchange) throws IOException {
+        if (!acceptApiGet(exchange)) {
+            return;
+        }
+        try {
+            JSONObject params = queryParams(exchange);
+            String dealType = params.optString("type", DealsIndex.ALL);
+            System.out.println("📥 Received deals GET - Deal type: " + dealType);
+            sendDeals(exchange, dealType, params.optString("cursor", null), pageLimit(params, DEALS_PAGE_SIZE),
+                    API_DEALS_CACHE_CONTROL);
+
+        } catch (Exception e) {
+            sendApiError(exchange, e);
+        }
+    }
+
+    /**
+     * NEW: GET /api/deals/page?limit= - first page of every deals section (same as /deals/page)
+     */
+    private void handleApiDealsPage(HttpExchange exchange) throws IOException {
+        if (!acceptApiGet(exchange)) {
+            return;
+        }
+        try {
+            sendDealsPage(exchange, pageLimit(queryParams(exchange), DEALS_PAGE_SIZE), API_DEALS_CACHE_CONTROL);
+        } catch (Exception e) {
+            sendApiError(exchange, e);
+        }
+    }
+
+    /**
+     * NEW: GET /api/search?q=&limit=&cursor= - name search (same as POST /search with SEARCH_BY_NAME)
+     * Searching by Tiki URL stays POST-only: it may scrape and insert a new product.
+     */
+    private void handleApiSearch(HttpExchange exchange) throws IOException {
+        if (!acceptApiGet(exchange)) {
+            return;
+        }
+        try {
+            JSONObject params = queryParams(exchange);
+            String query = params.optString("q", "").trim();
+            if (query.isEmpty()) {
+                sendResponse(exchange, 400, "{\"success\": false, \"error\": \"Missing q\"}");
+                return;
+            }
+            
+            JSONObject responseJson = searchByName(query, params.optString("cursor", null),
+                    pageLimit(params, SEARCH_PAGE_SIZE));
+            byte[] response = responseJson.toString().getBytes(StandardCharsets.UTF_8);
+            
+            // No cheap data version for a LIKE search - the ETag hashes the body, which still saves the transfer
+            String etag = "\"s" + Integer.toHexString(Arrays.hashCode(response)) + "-" + response.length + "\"";
+            if (ifNoneMatch(exchange, etag)) {
+                sendNotModified(exchange, etag, API_SEARCH_CACHE_CONTROL);
+                return;
+            }
+            if (responseJson.optBoolean("success", false)) {
+                setValidators(exchange.getResponseHeaders(), etag, API_SEARCH_CACHE_CONTROL);
+            }
+            sendResponse(exchange, 200, response);
+
+        } catch (Exception e) {
+            sendApiError(exchange, e);
+        }
+    }
+
+    /**
+     * NEW: GET /api/stream/prices?products=1,2,3&deal_type=FLASH_SALE - live price changes as
+     * Server-Sent Events (EventSource). Follows the listed products and/or every product entering,
+     * moving in or leaving the listed deal sections; at least one of the two is required.
+     * Events: "ready" (the subscription), then one "price" per committed change (see PriceEventHub).
+     * A reconnecting EventSource sends Last-Event-ID and gets the events it missed, if still recent.
+     */
+    private void handlePriceStream(HttpExchange exchange) throws IOException {
+        if (!acceptApiGet(exchange)) {
+            return;
+        }
+        try {
+            JSONObject params = queryParams(exchange);
+            Set<Integer> productIds = new LinkedHashSet<>();
+            for (String id : params.optString("products", "").split(",")) {
+                if (!id.trim().isEmpty()) {
+                    productIds.add(Integer.parseInt(id.trim()));
+                }
+            }
+            Set<String> dealTypes = new LinkedHashSet<>();
+            for (String type : params.optString("deal_type", "").split(",")) {
+                String dealType = type.trim().toUpperCase();
+                if (dealType.isEmpty()) {
+                    continue;
+                }
+                if (!DealsIndex.TYPES.contains(dealType)) {
+                    throw new IllegalArgumentException("Unknown deal_type: " + dealType + " (allowed: " + DealsIndex.TYPES + ")");
+                }
+                dealTypes.add(dealType);
+            }
+            if (productIds.isEmpty() && dealTypes.isEmpty()) {
+                throw new IllegalArgumentException("Subscribe to products=<ids> and/or deal_type=<type>");
+            }
+            if (productIds.size() > MAX_STREAM_PRODUCTS) {
+                throw new IllegalArgumentException("At most " + MAX_STREAM_PRODUCTS + " products per stream");
+            }
+
+            String lastEventId = exchange.getRequestHeaders().getFirst("Last-Event-ID");
+            if (lastEventId == null) {
+                lastEventId = params.optString("last_event_id", null);
+            }
+
+            Headers headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "text/event-stream; charset=UTF-8");
+            headers.set("Cache-Control", "no-cache");
+            headers.set("X-Accel-Buffering", "no");  // nginx: do not buffer the stream
+            if (!priceEventHub.subscribe(exchange, productIds, dealTypes, parseEventId(lastEventId))) {
+                headers.set("Content-Type", "application/json; charset=UTF-8");
+                headers.set("Retry-After", "30");
+                sendResponse(exchange, 503, "{\"success\": false, \"error\": \"Too many live subscribers\"}");
+                return;
+            }
+            System.out.println("📡 Price stream opened - products " + productIds + ", deal types " + dealTypes);
+            // The exchange stays open: the hub writes to it and closes it
+
+        } catch (NumberFormatException e) {
+            sendApiError(exchange, new IllegalArgumentException("Invalid product ID in products"));
+        } catch (Exception e) {
+            sendApiError(exchange, e);
+        }
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Common part of the GET /api/... handlers: CORS headers, preflight, GET only
+     * @return true if the handler should go on; false if a response was already sent
+     */
+    private boolean acceptApiGet(HttpExchange exchange) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.add("Access-Control-Allow-Origin", "*");
+        headers.add("Access-Control-Allow-Methods", "GET, OPTIONS");
+        headers.add("Access-Control-Allow-Headers", "If-None-Match");
+        headers.add("Access-Control-Expose-Headers", "ETag");
+        headers.add("Content-Type", "application/json; charset=UTF-8");
+
+        if ("OPTIONS".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            return false;
+        }
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            headers.add("Allow", "GET, OPTIONS");
+            sendResponse(exchange, 405, "{\"success\": false, \"error\": \"Method not allowed. Use GET.\"}");
+            return false;
+        }
+        return true;
+    }
+
+    private void sendApiError(HttpExchange exchange, Exception e) throws IOException {
+        int status = e instanceof IllegalArgumentException ? 400 : 500;
+        if (status == 500) {
+            e.printStackTrace();
+        }
+        JSONObject error = new JSONObject();
+        error.put("success", false);
+        error.put("error", (status == 400 ? "Bad request: " : "Server error: ") + e.getMessage());
+        sendResponse(exchange, status, error.toString());
+    }
+
+    /**
+     * Query string as a JSONObject, so GET handlers can share the POST handlers' param parsing;
+     * all-digit values become numbers (e.g. max_points, limit, epoch-millis from/to)
+     */
+    private static JSONObject queryParams(HttpExchange exchange) {
+        JSONObject params = new JSONObject();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq >= 0 ? pair.substring(0, eq) : pair, StandardCharsets.UTF_8);
+            String value = eq >= 0 ? URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8) : "";
+            if (!value.isEmpty() && value.length() <= 18 && value.chars().allMatch(Character::isDigit)) {
+                params.put(name, Long.parseLong(value));
+            } else {
+                params.put(name, value);
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Sections loaded for one batch lookup, keyed by product ID (null = section not requested)
+     */
+    private static final class ProductBatch {
+        Map<Integer, Product> products;
+        Map<Integer, String> groupNames;
+        Map<Integer, PriceHistory> prices;
+        Map<Integer, ReviewAggregate> reviewStats;
+    }
+
+    /**
+     * Which optional sections a product detail request wants ("include" / "fields" param)
+     * Comma-separated (or a JSON array) of: price, history[:range], reviews[:count], similar[:count]
+     * - range = number + d/w/m/y back from now (e.g. 90d), or "all"; an explicit "from" param wins
+     * - counts are clamped to 1..MAX_PAGE_SIZE (reviews) and 1..MAX_SIMILAR_PRODUCTS (similar)
+     * No include = every section with the default sizes. The product itself (with its group name)
+     * is always returned, so include=price is the page header alone.
+     */
+    private static final class DetailSections {
+        boolean price;
+        boolean history;
+        boolean reviews;
+        boolean similar;
+        String historyRange;     // e.g. "90d"; null = whole history
+        long historyRangeMs;
+        int reviewsLimit = REVIEWS_PAGE_SIZE;
+        int similarLimit = SIMILAR_PRODUCTS;
+
+        static DetailSections parse(Object include) {
+            DetailSections sections = new DetailSections();
+            if (include == null || JSONObject.NULL.equals(include) || include.toString().trim().isEmpty()) {
+                sections.price = sections.history = sections.reviews = sections.similar = true;
+                return sections;
+            }
+            List<Object> parts = include instanceof JSONArray
+                    ? ((JSONArray) include).toList()
+                    : Arrays.asList((Object[]) include.toString().split(","));
+            for (Object part : parts) {
+                String token = part.toString().trim().toLowerCase();
+                if (token.isEmpty()) {
+                    continue;
+                }
+                int colon = token.indexOf(':');
+                String name = colon < 0 ? token : token.substring(0, colon);
+                String arg = colon < 0 ? null : token.substring(colon + 1);
+                switch (name) {
+                    case "price":
+                        sections.price = true;
+                        break;
+                    case "history":
+                        sections.history = true;
+                        if (arg != null && !"all".equals(arg)) {
+                            sections.historyRangeMs = parseRange(arg);
+                            sections.historyRange = arg;
+                        }
+                        break;
+                    case "reviews":
+                        sections.reviews = true;
+                        if (arg != null) {
+                            sections.reviewsLimit = Math.max(1, Math.min(parseCount(token, arg), MAX_PAGE_SIZE));
+                        }
+                        break;
+                    case "similar":
+                        sections.similar = true;
+                        if (arg != null) {
+                            sections.similarLimit = Math.max(1, Math.min(parseCount(token, arg), MAX_SIMILAR_PRODUCTS));
+                        }
+                        break;
+                    default:
+                        throw new IllegalArgumentException(
+                                "Unknown section: " + name + " (allowed: price, history, reviews, similar)");
+                }
+            }
+            return sections;
+        }
+
+        private static long parseRange(String range) {
+            long days;
+            try {
+                days = Long.parseLong(range.substring(0, range.length() - 1));
+            } catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+                days = -1;
+            }
+            switch (range.isEmpty() ? ' ' : range.charAt(range.length() - 1)) {
+                case 'd': break;
+                case 'w': days *= 7; break;
+                case 'm': days *= 30; break;
+                case 'y': days *= 365; break;
+                default: days = -1;
+            }
+            if (days <= 0) {
+                throw new IllegalArgumentException("Invalid history range: " + range + " (e.g. 90d, 12w, 6m, 1y, all)");
+            }
+            return TimeUnit.DAYS.toMillis(days);
+        }
+
+        private static int parseCount(String token, String count) {
+            try {
+                return Integer.parseInt(count);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid count in " + token);
+            }
+        }
+
+        /**
+         * History params with the relative range applied as "from" (unless the request set one)
+         * The start is rounded down to HISTORY_RANGE_STEP_MS, so the resolved bounds - part of the
+         * cache key and ETag - stay the same between steps instead of changing every millisecond.
+         */
+        JSONObject historyParams(JSONObject params) {
+            if (historyRangeMs == 0 || params.has("from")) {
+                return params;
+            }
+            long from = System.currentTimeMillis() - historyRangeMs;
+            JSONObject withRange = new JSONObject(params.toMap());
+            withRange.put("from", from - from % HISTORY_RANGE_STEP_MS);
+            return withRange;
+        }
+
+        /**
+         * Canonical form (part of the detail cache key): equal selections give equal strings
+         */
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            if (price) {
+                sb.append("price,");
+            }
+            if (history) {
+                sb.append("history").append(historyRange != null ? ":" + historyRange : "").append(',');
+            }
+            if (reviews) {
+                sb.append("reviews:").append(reviewsLimit).append(',');
+            }
+            if (similar) {
+                sb.append("similar:").append(similarLimit).append(',');
+            }
+            return sb.length() > 0 ? sb.substring(0, sb.length() - 1) : "product";
+        }
+    }
+
+    /**
+     * Sections loaded for one product detail response (null = not requested)
+     */
+    private static final class ProductDetail {
+        DetailSections sections;
+        Product product;
+        String groupName;
+        PriceHistory currentPrice;
+        PriceSeries history;
+        Page<Review> reviews;
+        ReviewAggregate reviewStats;
+        List<ProductSummary> similarProducts;
+    }
+
+    /**
+     * A chart series: either raw points or rollups (per resolution), and the indices kept after downsampling
+     */
+    private static final class PriceSeries {
+        String resolution;
+        List<PriceHistory> raw;
+        List<PriceRollup> rollups;
+        int[] kept;
+        int totalPoints;
+    }
+
+    /**
+     * A cached response body with the ETag it was served under, plus its gzip form
+     * (compressed once when cached, so hits are sent without recompressing)
+     */
+    private static final class CachedResponse {
+        final byte[] body;
+        final byte[] gzipBody;
+        final String etag;
+
+        CachedResponse(byte[] body, String etag) {
+            this.body = body;
+            this.gzipBody = body.length >= ContentEncoding.MIN_SIZE
+                    ? ContentEncoding.encode(body, ContentEncoding.GZIP) : null;
+            this.etag = etag;
         }
     }
 
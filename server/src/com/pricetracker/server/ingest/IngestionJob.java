@@ -0,0 +1,102 @@
+package com.pricetracker.server.ingest;
+
+import com.pricetracker.models.Product;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A background scrape-and-insert job for a Tiki URL that is not in the database yet.
+ * Callers poll the status or attach to {@link #getFuture()} to be notified on completion.
+ */
+public class IngestionJob {
+
+    public enum Status {
+        PENDING,   // Queued on the ingestion pool
+        RUNNING,   // Scraping / inserting
+        DONE,      // Product inserted
+        FAILED     // Scrape or insert failed
+    }
+
+    private final String jobId;
+    private final String url;
+    private final String key;
+    private final long createdAt;
+    private final CompletableFuture<Product> future = new CompletableFuture<>();
+
+    // Written before status: whoever sees DONE / FAILED also sees the result
+    private volatile Product product;
+    private volatile Status status = Status.PENDING;
+    private volatile String error;
+    private volatile long finishedAt;
+
+    IngestionJob(String jobId, String url, String key) {
+        this.jobId = jobId;
+        this.url = url;
+        this.key = key;
+        this.createdAt = System.currentTimeMillis();
+    }
+
+    void markRunning() {
+        status = Status.RUNNING;
+    }
+
+    void complete(Product product) {
+        finishedAt = System.currentTimeMillis();
+        this.product = product;
+        status = Status.DONE;
+        future.complete(product);
+    }
+
+    void fail(String message) {
+        finishedAt = System.currentTimeMillis();
+        error = message;
+        status = Status.FAILED;
+        future.complete(null);
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    String getKey() {
+        return key;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return The inserted product once the status is DONE, otherwise null
+     */
+    public Product getProduct() {
+        return product;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public boolean isFinished() {
+        return status == Status.DONE || status == Status.FAILED;
+    }
+
+    /**
+     * Completes with the inserted product, or with null when the job failed
+     */
+    public CompletableFuture<Product> getFuture() {
+        return future;
+    }
+}
@@ -0,0 +1,132 @@
+package com.pricetracker.server.ingest;
+
+import com.pricetracker.models.Product;
+import com.pricetracker.server.db.ProductDAO;
+import com.pricetracker.server.utils.TikiScraperUtil;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs new-product ingestion (scrape from Tiki + insert) on a bounded pool
+ * so HTTP request threads can answer immediately with a job ID.
+ *
+ * Identical concurrent submissions (same Tiki product) attach to the same job.
+ */
+public class IngestionJobManager {
+
+    private static final int POOL_SIZE = 4;
+    private static final int QUEUE_CAPACITY = 100;
+
+    // How long finished jobs stay pollable
+    private static final long FINISHED_JOB_TTL_MS = 10 * 60 * 1000;
+
+    private final ProductDAO productDAO;
+    private final ThreadPoolExecutor pool;
+
+    // Jobs still queued or running, keyed by normalized URL
+    private final Map<String, IngestionJob> inFlight = new ConcurrentHashMap<>();
+
+    // All jobs (including recently finished ones), keyed by job ID
+    private final Map<String, IngestionJob> jobs = new ConcurrentHashMap<>();
+
+    public IngestionJobManager(ProductDAO productDAO) {
+        this.productDAO = productDAO;
+
+        AtomicInteger threadCounter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(
+                POOL_SIZE, POOL_SIZE,
+                30, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                r -> {
+                    Thread t = new Thread(r, "ingestion-" + threadCounter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        this.pool.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Submit a URL for ingestion, or attach to the job already running for it
+     * @param tikiUrl The Tiki product URL
+     * @return The (possibly shared) job
+     * @throws RejectedExecutionException if the ingestion queue is full
+     */
+    public IngestionJob submit(String tikiUrl) {
+        purgeFinishedJobs();
+
+        String key = TikiScraperUtil.normalizeUrl(tikiUrl);
+
+        IngestionJob job = new IngestionJob(UUID.randomUUID().toString(), tikiUrl, key);
+        IngestionJob existing = inFlight.putIfAbsent(key, job);
+        if (existing != null) {
+            return existing;
+        }
+
+        // Submitted outside the map's lock: a job that finishes at once can still remove its entry
+        jobs.put(job.getJobId(), job);
+        try {
+            pool.execute(() -> run(job));
+        } catch (RejectedExecutionException e) {
+            // Saturated - unregister so the next submission retries
+            jobs.remove(job.getJobId());
+            inFlight.remove(key, job);
+            throw e;
+        }
+        System.out.println("📝 Ingestion job " + job.getJobId() + " queued for " + tikiUrl);
+        return job;
+    }
+
+    /**
+     * @return The job, or null if unknown / expired
+     */
+    public IngestionJob getJob(String jobId) {
+        return jobId == null ? null : jobs.get(jobId);
+    }
+
+    private void run(IngestionJob job) {
+        job.markRunning();
+        try {
+            // Another request may have inserted it between the lookup and this job
+            Product product = productDAO.searchByUrl(job.getUrl());
+            if (product == null) {
+                product = productDAO.insertProductFromTiki(job.getUrl());
+            }
+
+            if (product != null) {
+                System.out.println("✓ Ingestion job " + job.getJobId() + " done: " + product.getName());
+                job.complete(product);
+            } else {
+                job.fail("Không thể lấy thông tin sản phẩm từ Tiki. Vui lòng kiểm tra lại URL.");
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+            job.fail("Lỗi hệ thống: " + e.getMessage());
+        } finally {
+            inFlight.remove(job.getKey(), job);
+        }
+    }
+
+    private void purgeFinishedJobs() {
+        long cutoff = System.currentTimeMillis() - FINISHED_JOB_TTL_MS;
+        jobs.values().removeIf(job -> job.isFinished() && job.getFinishedAt() < cutoff);
+    }
+
+    public int getQueuedCount() {
+        return pool.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    public void shutdown() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,475 @@
+package com.pricetracker.server.live;
+
+import com.pricetracker.models.PriceHistory;
+import com.pricetracker.server.db.PriceChangeListener;
+import com.pricetracker.server.deals.DealsEngine;
+import com.pricetracker.server.deals.DealsIndex;
+import com.pricetracker.server.utils.DealTypes;
+import com.sun.net.httpserver.HttpExchange;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fans committed price changes out to Server-Sent Events subscribers.
+ *
+ * One PriceChangeListener feeds every subscriber. All price producers (scrapes, ingestion jobs and
+ * scraper.py's /prices/ingest batches) commit through PriceHistoryBatchWriter, so its listeners see
+ * every price change. Each change is encoded once into an SSE frame,
+ * then handed only to the subscribers of that product or of a deal section it enters or leaves
+ * (subscriptions are indexed by product ID and by section, so publishing costs O(matching
+ * subscribers), not O(all subscribers)).
+ *
+ * Subscribers do not hold a request thread. The handler sends the headers and returns; frames go
+ * into a bounded per-subscriber queue drained by a small writer pool. A subscriber whose queue
+ * overflows, or whose socket write stalls, is disconnected (it reconnects with Last-Event-ID and
+ * is replayed what it missed from a short in-memory backlog). Heartbeat comments keep idle
+ * connections open through proxies and reveal dead ones.
+ *
+ * Only writer threads touch the sockets. A write to a client that stopped reading blocks, so the
+ * stall check (on the heartbeat thread, never on the writer pool it is rescuing) interrupts the
+ * blocked writer: the JDK server's socket channel is interruptible, so the write aborts with the
+ * connection closed and the writer thread goes back to the pool at once.
+ */
+public class PriceEventHub implements PriceChangeListener {
+
+    private static final int BUFFER_EVENTS = Integer.getInteger("sse.bufferEvents", 256);
+    private static final int MAX_SUBSCRIBERS = Integer.getInteger("sse.maxSubscribers", 10_000);
+    private static final int WRITER_THREADS = Integer.getInteger("sse.writerThreads", 8);
+    private static final long HEARTBEAT_MS = Long.getLong("sse.heartbeatMs", 15_000);
+    // A single write blocked this long means the client stopped reading
+    private static final long STALL_MS = Long.getLong("sse.stallMs", 10_000);
+    private static final long STALL_CHECK_MS = Math.max(250, STALL_MS / 4);
+    // Recent events kept for Last-Event-ID replay after a reconnect
+    private static final int BACKLOG_EVENTS = 1024;
+    // Client reconnect delay announced in the stream
+    private static final long RETRY_MS = 3000;
+
+    private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+    private final DealsEngine dealsEngine;
+    private final ExecutorService publisher;
+    private final ExecutorService writers;
+    private final ScheduledExecutorService heartbeats;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Map<Integer, Set<Subscriber>> byProduct = new ConcurrentHashMap<>();
+    private final Map<String, Set<Subscriber>> bySection = new ConcurrentHashMap<>();
+    // Subscribers with a socket operation in progress (including ones already unsubscribed)
+    private final Set<Subscriber> inIo = ConcurrentHashMap.newKeySet();
+    // Publisher thread only
+    private final Deque<Event> backlog = new ArrayDeque<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+    private final AtomicLong droppedSlow = new AtomicLong();
+    private final AtomicLong droppedStalled = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public PriceEventHub(DealsEngine dealsEngine) {
+        this.dealsEngine = dealsEngine;
+        this.publisher = Executors.newSingleThreadExecutor(daemon("price-events"));
+        this.writers = Executors.newFixedThreadPool(WRITER_THREADS, daemon("sse-writer"));
+        this.heartbeats = Executors.newSingleThreadScheduledExecutor(daemon("sse-heartbeat"));
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    public void start() {
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+        heartbeats.scheduleWithFixedDelay(this::abortStalledWrites, STALL_CHECK_MS, STALL_CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Open an event stream on the exchange: sends the headers, the "ready" event and any missed
+     * events, then keeps the exchange open after the handler returns
+     * @param productIds Products to follow (may be empty)
+     * @param sections Deal sections to follow (DealsIndex.TYPES, may be empty)
+     * @param lastEventId Last-Event-ID of a reconnecting client, or -1
+     * @return false if the hub is full (nothing has been sent; answer 503)
+     */
+    public boolean subscribe(HttpExchange exchange, Set<Integer> productIds, Set<String> sections,
+                             long lastEventId) throws IOException {
+        if (subscribers.size() >= MAX_SUBSCRIBERS) {
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        exchange.sendResponseHeaders(200, 0);
+        Subscriber subscriber = new Subscriber(exchange, productIds, sections);
+
+        JSONObject ready = new JSONObject();
+        ready.put("products", new JSONArray(productIds));
+        ready.put("deal_types", new JSONArray(sections));
+        ready.put("heartbeat_ms", HEARTBEAT_MS);
+        subscriber.send(("retry: " + RETRY_MS + "\nevent: ready\ndata: " + ready + "\n\n")
+                .getBytes(StandardCharsets.UTF_8));
+
+        // Registered and replayed on the publisher thread, between two publishes: every event is
+        // then either in the backlog already or delivered live - never lost, never sent twice, in order
+        subscribers.add(subscriber);
+        try {
+            publisher.execute(() -> register(subscriber, lastEventId));
+        } catch (RejectedExecutionException e) {
+            close(subscriber);
+        }
+        return true;
+    }
+
+    private void register(Subscriber subscriber, long lastEventId) {
+        for (int productId : subscriber.productIds) {
+            byProduct.computeIfAbsent(productId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        for (String section : subscriber.sections) {
+            bySection.computeIfAbsent(section, s -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        }
+        if (subscriber.closed.get()) {
+            unindex(subscriber); // Dropped meanwhile; close() may have run before the adds above
+            return;
+        }
+        if (lastEventId < 0) {
+            return;
+        }
+        for (Event event : backlog) {
+            if (event.id > lastEventId && subscriber.matches(event)) {
+                subscriber.send(event.frame);
+                replayed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Called on the price writer thread after a batch commits. Only reads the sections each product
+     * was ranked in before the change (the deals engine applies it later, on its own thread - this
+     * hub must be registered before the engine), then hands the fan-out to the publisher thread.
+     */
+    @Override
+    public void onPricesChanged(List<PriceHistory> currentPrices) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        DealsIndex index = dealsEngine.getIndex();
+        List<List<String>> before = new ArrayList<>(currentPrices.size());
+        for (PriceHistory price : currentPrices) {
+            before.add(index != null ? index.sectionsOf(price.getProductId()) : List.of());
+        }
+        try {
+            publisher.execute(() -> publish(currentPrices, before));
+        } catch (RejectedExecutionException e) {
+            // Shutting down
+        }
+    }
+
+    private void publish(List<PriceHistory> currentPrices, List<List<String>> before) {
+        for (int i = 0; i < currentPrices.size(); i++) {
+            Event event = encode(currentPrices.get(i), before.get(i));
+            backlog.addLast(event);
+            if (backlog.size() > BACKLOG_EVENTS) {
+                backlog.removeFirst();
+            }
+            events.incrementAndGet();
+
+            Set<Subscriber> targets = new LinkedHashSet<>();
+            addAll(targets, byProduct.get(event.productId));
+            for (String section : event.sections) {
+                addAll(targets, bySection.get(section));
+            }
+            for (Subscriber subscriber : targets) {
+                subscriber.send(event.frame);
+            }
+        }
+    }
+
+    private static void addAll(Set<Subscriber> targets, Set<Subscriber> subscribers) {
+        if (subscribers != null) {
+            targets.addAll(subscribers);
+        }
+    }
+
+    /**
+     * One "price" event: the new current price, and the deal sections the product is in now
+     * ("deal_types") - a section subscriber that no longer finds its own type there saw the product leave
+     */
+    private Event encode(PriceHistory price, List<String> before) {
+        List<String> after = DealsIndex.sectionsFor(price.getPrice(), price.getOriginalPrice(), price.getDealType());
+        Set<String> affected = new LinkedHashSet<>(before);
+        affected.addAll(after);
+
+        int discountPercent = 0;
+        if (price.getOriginalPrice() > price.getPrice() && price.getOriginalPrice() > 0) {
+            discountPercent = (int) Math.round((price.getOriginalPrice() - price.getPrice()) / price.getOriginalPrice() * 100);
+        }
+        JSONObject data = new JSONObject();
+        data.put("product_id", price.getProductId());
+        data.put("current_price", price.getPrice());
+        data.put("original_price", price.getOriginalPrice());
+        data.put("currency", price.getCurrency());
+        data.put("deal_type", DealTypes.normalize(price.getDealType()));
+        data.put("discount_percent", discountPercent);
+        data.put("deal_types", new JSONArray(after));
+        data.put("changed_at", price.getCapturedAt() != null ? price.getCapturedAt().toString() : JSONObject.NULL);
+
+        long id = sequence.incrementAndGet();
+        byte[] frame = ("id: " + id + "\nevent: price\ndata: " + data + "\n\n").getBytes(StandardCharsets.UTF_8);
+        return new Event(id, price.getProductId(), affected, frame);
+    }
+
+    private void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.send(HEARTBEAT);
+        }
+    }
+
+    /**
+     * Drop subscribers whose socket operation has been blocked longer than STALL_MS, and free the
+     * writer thread stuck in it (also covers the final close of an already dropped subscriber)
+     */
+    private void abortStalledWrites() {
+        long now = System.currentTimeMillis();
+        for (Subscriber subscriber : inIo) {
+            long startedAt = subscriber.ioStartedAt;
+            if (startedAt != 0 && now - startedAt > STALL_MS) {
+                if (close(subscriber)) {
+                    droppedStalled.incrementAndGet();
+                }
+                subscriber.abortIo();
+            }
+        }
+    }
+
+    /**
+     * Unsubscribe now. A write in progress is aborted (the client is being dropped anyway);
+     * the exchange is then closed by the subscriber's drain, under the same stall watch.
+     * @return false if it was already closed
+     */
+    private boolean close(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return false;
+        }
+        subscribers.remove(subscriber);
+        unindex(subscriber);
+        subscriber.queue.clear();
+        subscriber.abortIo();
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                writers.execute(subscriber::drain);
+            } catch (RejectedExecutionException e) {
+                // Shutting down - the server stop closes the connection
+            }
+        }
+        return true;
+    }
+
+    private void unindex(Subscriber subscriber) {
+        for (int productId : subscriber.productIds) {
+            byProduct.computeIfPresent(productId, (id, set) -> set.remove(subscriber) && set.isEmpty() ? null : set);
+        }
+        for (String section : subscriber.sections) {
+            bySection.computeIfPresent(section, (s, set) -> set.remove(subscriber) && set.isEmpty() ? null : set);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("subscribers", subscribers.size());
+        stats.put("followed_products", byProduct.size());
+        stats.put("events", events.get());
+        stats.put("delivered", delivered.get());
+        stats.put("replayed", replayed.get());
+        stats.put("dropped_slow", droppedSlow.get());
+        stats.put("dropped_stalled", droppedStalled.get());
+        stats.put("rejected", rejected.get());
+        stats.put("max_subscribers", MAX_SUBSCRIBERS);
+        stats.put("buffer_events", BUFFER_EVENTS);
+        return stats;
+    }
+
+    public void shutdown() {
+        heartbeats.shutdownNow();
+        publisher.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            close(subscriber);
+        }
+        writers.shutdown();
+    }
+
+    private static final class Event {
+        final long id;
+        final int productId;
+        final Collection<String> sections;
+        final byte[] frame;
+
+        Event(long id, int productId, Collection<String> sections, byte[] frame) {
+            this.id = id;
+            this.productId = productId;
+            this.sections = sections;
+            this.frame = frame;
+        }
+    }
+
+    private final class Subscriber {
+        final HttpExchange exchange;
+        final OutputStream out;
+        final Set<Integer> productIds;
+        final Set<String> sections;
+        final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<>(BUFFER_EVENTS);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicBoolean closed = new AtomicBoolean();
+        // Start of the socket operation in progress (0 = none), for stall detection
+        volatile long ioStartedAt;
+        // Writer thread inside that operation; guarded by this
+        private Thread ioThread;
+
+        Subscriber(HttpExchange exchange, Set<Integer> productIds, Set<String> sections) {
+            this.exchange = exchange;
+            this.out = exchange.getResponseBody();
+            this.productIds = productIds;
+            this.sections = sections;
+        }
+
+        boolean matches(Event event) {
+            if (productIds.contains(event.productId)) {
+                return true;
+            }
+            for (String section : event.sections) {
+                if (sections.contains(section)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        void send(byte[] frame) {
+            if (closed.get()) {
+                return;
+            }
+            if (!queue.offer(frame)) {
+                // Not keeping up: drop it rather than buffer without bound (it reconnects and replays)
+                droppedSlow.incrementAndGet();
+                close(this);
+                return;
+            }
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    close(this);
+                }
+            }
+        }
+
+        // At most one drain per subscriber runs at a time (the scheduled flag)
+        private void drain() {
+            try {
+                while (true) {
+                    byte[] frame;
+                    while (!closed.get() && (frame = queue.poll()) != null) {
+                        beginIo();
+                        try {
+                            out.write(frame);
+                        } finally {
+                            endIo();
+                        }
+                        if (frame != HEARTBEAT) {
+                            delivered.incrementAndGet();
+                        }
+                    }
+                    if (closed.get()) {
+                        closeExchange();
+                        return;
+                    }
+                    beginIo();
+                    try {
+                        out.flush();
+                    } finally {
+                        endIo();
+                    }
+                    scheduled.set(false);
+                    // A frame offered after the last poll but before the flag was cleared
+                    if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                // Includes ClosedByInterruptException from abortIo(). This drain still holds the
+                // scheduled flag, so close() does not start another one: close the exchange here.
+                close(this);
+                closeExchange();
+            }
+        }
+
+        /**
+         * Closing writes the last chunk, so it can block on a stalled client like any write
+         */
+        private void closeExchange() {
+            beginIo();
+            try {
+                exchange.close();
+            } finally {
+                endIo();
+            }
+        }
+
+        private void beginIo() {
+            synchronized (this) {
+                ioThread = Thread.currentThread();
+                ioStartedAt = System.currentTimeMillis();
+            }
+            inIo.add(this);
+        }
+
+        private void endIo() {
+            inIo.remove(this);
+            synchronized (this) {
+                ioThread = null;
+                ioStartedAt = 0;
+                // An abort that arrived just after the operation finished must not leak
+                // into the next task of this pool thread
+                Thread.interrupted();
+            }
+        }
+
+        /**
+         * Abort the socket operation in progress, if any: interrupting a thread blocked on an
+         * interruptible channel closes the channel and throws in that thread
+         */
+        synchronized void abortIo() {
+            if (ioThread != null) {
+                ioThread.interrupt();
+            }
+        }
+    }
+}
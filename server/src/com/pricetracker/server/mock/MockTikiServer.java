@@ -0,0 +1,340 @@
+package com.pricetracker.server.mock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embeddable mock of the Tiki product API for offline scrape benchmarks
+ * Serves recorded /api/v2/products/{id} payloads (one {id}.json file per product) with
+ * configurable latency, random 500 errors, 429 throttling and scripted price changes.
+ * All randomness comes from one seeded Random, so runs are reproducible.
+ *
+ * Usage:
+ *   MockTikiServer mock = new MockTikiServer()
+ *           .loadFixtures(Path.of("server/fixtures/tiki"))
+ *           .setLatency(MockTikiServer.LatencyModel.exponential(80))
+ *           .setErrorRate(0.02)
+ *           .setRateLimit(50, 20);
+ *   mock.start(0);
+ *   TikiScraperUtil.setApiBase(mock.getApiBase());
+ */
+public class MockTikiServer {
+
+    private static final String PRODUCTS_PATH = "/api/v2/products/";
+
+    static {
+        // Without TCP_NODELAY the JDK server adds ~40ms (Nagle + delayed ACK) to every response,
+        // which would swamp the latency model. Only effective before the first HttpServer is created.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Response delay model (milliseconds)
+     */
+    public interface LatencyModel {
+        long sampleMillis(Random random);
+
+        static LatencyModel none() {
+            return random -> 0;
+        }
+
+        static LatencyModel fixed(long millis) {
+            return random -> millis;
+        }
+
+        static LatencyModel uniform(long minMillis, long maxMillis) {
+            return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+        }
+
+        /**
+         * Long-tailed: most responses fast, a few very slow
+         */
+        static LatencyModel exponential(double meanMillis) {
+            return random -> (long) (-meanMillis * Math.log(1 - random.nextDouble()));
+        }
+
+        static LatencyModel normal(double meanMillis, double stdDevMillis) {
+            return random -> Math.max(0, (long) (meanMillis + random.nextGaussian() * stdDevMillis));
+        }
+    }
+
+    /**
+     * Scripted price change: from the Nth request for a product on, serve these prices
+     */
+    public static final class PriceStep {
+        final int fromRequest;
+        final double price;
+        final double originalPrice;
+        final String badgeCode;
+
+        /**
+         * @param fromRequest 1-based request count for the product at which this step applies
+         * @param price New price
+         * @param originalPrice New original price
+         * @param badgeCode Badge code to serve (e.g. "flash_sale"), or null to keep the fixture's badges
+         */
+        public PriceStep(int fromRequest, double price, double originalPrice, String badgeCode) {
+            this.fromRequest = fromRequest;
+            this.price = price;
+            this.originalPrice = originalPrice;
+            this.badgeCode = badgeCode;
+        }
+    }
+
+    private final Map<Integer, String> fixtures = new ConcurrentHashMap<>();
+    private final Map<Integer, List<PriceStep>> priceScripts = new ConcurrentHashMap<>();
+    private final Map<Integer, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+    private final Random random;
+    private LatencyModel latency = LatencyModel.none();
+    private double errorRate;
+
+    // Token bucket for 429 throttling (disabled when ratePerSecond <= 0)
+    private double ratePerSecond;
+    private double burst;
+    private double tokens;
+    private long lastRefillNanos;
+
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public MockTikiServer() {
+        this(42);
+    }
+
+    /**
+     * @param seed Seed for latency / error sampling
+     */
+    public MockTikiServer(long seed) {
+        this.random = new Random(seed);
+    }
+
+    // ===== Configuration =====
+
+    /**
+     * Load every {id}.json file in a directory
+     */
+    public MockTikiServer loadFixtures(Path directory) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.json")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                int productId = Integer.parseInt(name.substring(0, name.length() - ".json".length()));
+                addFixture(productId, Files.readString(file, StandardCharsets.UTF_8));
+            }
+        }
+        return this;
+    }
+
+    public MockTikiServer addFixture(int productId, String json) {
+        fixtures.put(productId, json);
+        return this;
+    }
+
+    public MockTikiServer setLatency(LatencyModel latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param errorRate Fraction of requests (0..1) answered with HTTP 500
+     */
+    public MockTikiServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    /**
+     * Answer 429 (with Retry-After) once requests exceed this rate
+     * @param ratePerSecond Sustained requests per second, or 0 to disable
+     * @param burst Requests allowed in a burst
+     */
+    public synchronized MockTikiServer setRateLimit(double ratePerSecond, int burst) {
+        this.ratePerSecond = ratePerSecond;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefillNanos = System.nanoTime();
+        return this;
+    }
+
+    public MockTikiServer addPriceStep(int productId, PriceStep step) {
+        List<PriceStep> steps = priceScripts.computeIfAbsent(productId, id -> new ArrayList<>());
+        synchronized (steps) {
+            steps.add(step);
+            steps.sort((a, b) -> Integer.compare(a.fromRequest, b.fromRequest));
+        }
+        return this;
+    }
+
+    // ===== Lifecycle =====
+
+    /**
+     * @param port Port to listen on, 0 for any free port
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext(PRODUCTS_PATH, this::handleProduct);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("✓ Mock Tiki API on " + getApiBase() + " (" + fixtures.size() + " fixtures)");
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return Base URL to pass to TikiScraperUtil.setApiBase
+     */
+    public String getApiBase() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + PRODUCTS_PATH;
+    }
+
+    public long getServedCount() {
+        return served.get();
+    }
+
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    public long getThrottledCount() {
+        return throttled.get();
+    }
+
+    public long getNotFoundCount() {
+        return notFound.get();
+    }
+
+    // ===== Request handling =====
+
+    private void handleProduct(HttpExchange exchange) throws IOException {
+        try {
+            if (!tryAcquireToken()) {
+                throttled.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", "1");
+                send(exchange, 429, "{\"error\":\"Too Many Requests\"}");
+                return;
+            }
+
+            long delay;
+            boolean fail;
+            synchronized (random) {
+                delay = latency.sampleMillis(random);
+                fail = random.nextDouble() < errorRate;
+            }
+            if (delay > 0) {
+                Thread.sleep(delay);
+            }
+
+            if (fail) {
+                errors.incrementAndGet();
+                send(exchange, 500, "{\"error\":\"Internal Server Error\"}");
+                return;
+            }
+
+            int productId;
+            try {
+                productId = Integer.parseInt(exchange.getRequestURI().getPath().substring(PRODUCTS_PATH.length()));
+            } catch (NumberFormatException e) {
+                productId = -1;
+            }
+
+            String fixture = fixtures.get(productId);
+            if (fixture == null) {
+                notFound.incrementAndGet();
+                send(exchange, 404, "{\"error\":\"Product not found\"}");
+                return;
+            }
+
+            int requestNumber = requestCounts.computeIfAbsent(productId, id -> new AtomicInteger()).incrementAndGet();
+            served.incrementAndGet();
+            send(exchange, 200, applyPriceScript(productId, fixture, requestNumber));
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        }
+    }
+
+    private String applyPriceScript(int productId, String fixture, int requestNumber) {
+        List<PriceStep> steps = priceScripts.get(productId);
+        if (steps == null) {
+            return fixture;
+        }
+
+        PriceStep active = null;
+        synchronized (steps) {
+            for (PriceStep step : steps) {
+                if (step.fromRequest <= requestNumber) {
+                    active = step;
+                }
+            }
+        }
+        if (active == null) {
+            return fixture;
+        }
+
+        JSONObject json = new JSONObject(fixture);
+        json.put("price", active.price);
+        json.put("original_price", active.originalPrice);
+        if (active.badgeCode != null) {
+            json.put("badges", new JSONArray().put(new JSONObject().put("code", active.badgeCode)));
+        }
+        return json.toString();
+    }
+
+    private synchronized boolean tryAcquireToken() {
+        if (ratePerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * ratePerSecond);
+        lastRefillNanos = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream os = exchange.getResponseBody()) {
+            os.write(bytes);
+        }
+    }
+}
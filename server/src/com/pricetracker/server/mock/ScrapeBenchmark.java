@@ -0,0 +1,171 @@
+package com.pricetracker.server.mock;
+
+import com.pricetracker.server.utils.TikiScraperUtil;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Offline scrape benchmark against MockTikiServer
+ *
+ * Compile (from server/ - start-server.bat does not build this package):
+ *   javac -encoding UTF-8 -d bin -cp "lib/*;../shared/src" src/com/pricetracker/server/mock/*.java \
+ *         src/com/pricetracker/server/utils/*.java ../shared/src/com/pricetracker/models/*.java
+ *
+ * Run (from server/):
+ *   java -cp "bin;lib/*" com.pricetracker.server.mock.ScrapeBenchmark \
+ *        fixtures=fixtures/tiki requests=2000 threads=16 latency=exp:80 errors=0.02 rate=200:50
+ *
+ * Record fresh fixtures from tiki.vn (one request per product):
+ *   java -cp "bin;lib/*" com.pricetracker.server.mock.ScrapeBenchmark record=184059211,273258825 fixtures=fixtures/tiki
+ *
+ * Options (key=value):
+ *   fixtures  Directory with {id}.json payloads (default fixtures/tiki)
+ *   requests  Total scrapes (default 1000)
+ *   threads   Concurrent scrapers (default 8)
+ *   latency   none | fixed:MS | uniform:MIN:MAX | exp:MEAN | normal:MEAN:STDDEV (default none)
+ *   errors    HTTP 500 rate 0..1 (default 0)
+ *   rate      RPS:BURST token bucket for 429s (default off)
+ *   seed      Random seed (default 42)
+ */
+public class ScrapeBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq > 0) {
+                options.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+        }
+
+        Path fixtureDir = Path.of(options.getOrDefault("fixtures", "fixtures/tiki"));
+
+        if (options.containsKey("record")) {
+            record(options.get("record").split(","), fixtureDir);
+            return;
+        }
+
+        int requests = Integer.parseInt(options.getOrDefault("requests", "1000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "8"));
+
+        MockTikiServer mock = new MockTikiServer(Long.parseLong(options.getOrDefault("seed", "42")))
+                .loadFixtures(fixtureDir)
+                .setLatency(parseLatency(options.getOrDefault("latency", "none")))
+                .setErrorRate(Double.parseDouble(options.getOrDefault("errors", "0")));
+        if (options.containsKey("rate")) {
+            String[] rate = options.get("rate").split(":");
+            mock.setRateLimit(Double.parseDouble(rate[0]), Integer.parseInt(rate[1]));
+        }
+
+        List<Integer> productIds = new ArrayList<>();
+        try (var files = Files.newDirectoryStream(fixtureDir, "*.json")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                productIds.add(Integer.parseInt(name.substring(0, name.length() - ".json".length())));
+            }
+        }
+        if (productIds.isEmpty()) {
+            System.err.println("✗ No fixtures in " + fixtureDir);
+            return;
+        }
+
+        mock.start(0);
+        TikiScraperUtil.setApiBase(mock.getApiBase());
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        long[] latenciesNanos = new long[requests];
+        List<Future<Boolean>> results = new ArrayList<>(requests);
+
+        long started = System.nanoTime();
+        for (int i = 0; i < requests; i++) {
+            int index = i;
+            String url = "https://tiki.vn/mock-p" + productIds.get(i % productIds.size()) + ".html";
+            results.add(pool.submit(() -> {
+                long t0 = System.nanoTime();
+                Object[] priceData = TikiScraperUtil.scrapePriceData(url);
+                latenciesNanos[index] = System.nanoTime() - t0;
+                return priceData != null;
+            }));
+        }
+
+        int ok = 0;
+        for (Future<Boolean> result : results) {
+            if (result.get()) {
+                ok++;
+            }
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        pool.shutdown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+        mock.stop();
+        TikiScraperUtil.setApiBase(null);
+
+        Arrays.sort(latenciesNanos);
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("================ SCRAPE BENCHMARK ================");
+        System.out.printf("  Requests:    %d (%d threads, %d fixtures)%n", requests, threads, productIds.size());
+        System.out.printf("  Succeeded:   %d%n", ok);
+        System.out.printf("  Mock:        served=%d errors=%d throttled=%d notFound=%d%n",
+                mock.getServedCount(), mock.getErrorCount(), mock.getThrottledCount(), mock.getNotFoundCount());
+        System.out.printf("  Throughput:  %.1f scrapes/s (%.2f s)%n", requests / seconds, seconds);
+        System.out.printf("  Latency ms:  p50=%.1f p95=%.1f p99=%.1f max=%.1f%n",
+                percentile(latenciesNanos, 50), percentile(latenciesNanos, 95),
+                percentile(latenciesNanos, 99), latenciesNanos[requests - 1] / 1e6);
+        System.out.println("==================================================");
+    }
+
+    private static MockTikiServer.LatencyModel parseLatency(String spec) {
+        String[] parts = spec.split(":");
+        switch (parts[0]) {
+            case "fixed":
+                return MockTikiServer.LatencyModel.fixed(Long.parseLong(parts[1]));
+            case "uniform":
+                return MockTikiServer.LatencyModel.uniform(Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            case "exp":
+                return MockTikiServer.LatencyModel.exponential(Double.parseDouble(parts[1]));
+            case "normal":
+                return MockTikiServer.LatencyModel.normal(Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+            default:
+                return MockTikiServer.LatencyModel.none();
+        }
+    }
+
+    private static double percentile(long[] sortedNanos, int p) {
+        int index = (int) Math.ceil(p / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, index)] / 1e6;
+    }
+
+    /**
+     * Save live tiki.vn responses as fixtures
+     */
+    private static void record(String[] productIds, Path fixtureDir) throws Exception {
+        Files.createDirectories(fixtureDir);
+        for (String id : productIds) {
+            HttpURLConnection conn = (HttpURLConnection) new URL("https://tiki.vn/api/v2/products/" + id.trim()).openConnection();
+            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
+            if (conn.getResponseCode() != 200) {
+                System.err.println("✗ " + id + ": HTTP " + conn.getResponseCode());
+                continue;
+            }
+            try (InputStream in = conn.getInputStream()) {
+                Path file = fixtureDir.resolve(id.trim() + ".json");
+                Files.copy(in, file, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+                System.out.println("✓ Recorded " + file);
+            }
+            Thread.sleep(1000); // Be polite to tiki.vn
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.pricetracker.server.utils;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Multi-keyword category classifier (Aho-Corasick automaton)
+ * Finds every keyword occurrence in a category string in one pass, then picks one group
+ * deterministically:
+ *   1. highest priority
+ *   2. longest keyword
+ *   3. earliest position
+ *   4. smallest group_id
+ * Keywords only match whole words, so "son" (lipstick) does not fire inside "sony".
+ *
+ * Instances are immutable - build a new one to reload keywords.
+ */
+public class CategoryClassifier {
+
+    /**
+     * One keyword -> group_id rule
+     */
+    public static final class Keyword {
+        private final String keyword;
+        private final int groupId;
+        private final int priority;
+
+        public Keyword(String keyword, int groupId, int priority) {
+            this.keyword = keyword;
+            this.groupId = groupId;
+            this.priority = priority;
+        }
+
+        public String getKeyword() {
+            return keyword;
+        }
+
+        public int getGroupId() {
+            return groupId;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+
+    private final int defaultGroupId;
+    private final int[] keywordLength;
+    private final int[] keywordGroup;
+    private final int[] keywordPriority;
+
+    // Automaton: goto transitions, failure links and keywords ending at each state
+    private final List<Map<Character, Integer>> transitions = new ArrayList<>();
+    private final int[] fail;
+    private final int[][] outputs;
+
+    private CategoryClassifier(List<Keyword> keywords, int defaultGroupId) {
+        this.defaultGroupId = defaultGroupId;
+
+        List<String> patterns = new ArrayList<>();
+        List<Keyword> accepted = new ArrayList<>();
+        for (Keyword k : keywords) {
+            String pattern = normalize(k.getKeyword());
+            if (!pattern.isEmpty()) {
+                patterns.add(pattern);
+                accepted.add(k);
+            }
+        }
+
+        keywordLength = new int[accepted.size()];
+        keywordGroup = new int[accepted.size()];
+        keywordPriority = new int[accepted.size()];
+
+        // Trie
+        transitions.add(new HashMap<>());
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        nodeOutputs.add(new ArrayList<>());
+
+        for (int i = 0; i < accepted.size(); i++) {
+            String pattern = patterns.get(i);
+            keywordLength[i] = pattern.length();
+            keywordGroup[i] = accepted.get(i).getGroupId();
+            keywordPriority[i] = accepted.get(i).getPriority();
+
+            int node = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                Integer next = transitions.get(node).get(pattern.charAt(j));
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new HashMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    transitions.get(node).put(pattern.charAt(j), next);
+                }
+                node = next;
+            }
+            nodeOutputs.get(node).add(i);
+        }
+
+        // Failure links (BFS); outputs inherit the keywords of their failure state
+        fail = new int[transitions.size()];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int child : transitions.get(0).values()) {
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(node).entrySet()) {
+                int child = edge.getValue();
+                int f = fail[node];
+                while (f != 0 && !transitions.get(f).containsKey(edge.getKey())) {
+                    f = fail[f];
+                }
+                Integer target = transitions.get(f).get(edge.getKey());
+                fail[child] = target != null && target != child ? target : 0;
+                nodeOutputs.get(child).addAll(nodeOutputs.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        outputs = new int[nodeOutputs.size()][];
+        for (int i = 0; i < outputs.length; i++) {
+            outputs[i] = nodeOutputs.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * Compile a classifier
+     * @param keywords Keyword rules (case and Unicode form do not matter)
+     * @param defaultGroupId Group returned when nothing matches
+     */
+    public static CategoryClassifier build(List<Keyword> keywords, int defaultGroupId) {
+        return new CategoryClassifier(keywords, defaultGroupId);
+    }
+
+    /**
+     * Classify a category string
+     * @param category Category name from Tiki (e.g. breadcrumbs[0].name)
+     * @return Best matching group_id, or the default group
+     */
+    public int classify(String category) {
+        if (category == null || category.isEmpty()) {
+            return defaultGroupId;
+        }
+
+        String text = normalize(category);
+        int best = -1;
+        int bestStart = -1;
+        int node = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != 0 && !transitions.get(node).containsKey(c)) {
+                node = fail[node];
+            }
+            Integer next = transitions.get(node).get(c);
+            node = next != null ? next : 0;
+
+            for (int k : outputs[node]) {
+                int start = i - keywordLength[k] + 1;
+                if (!isWordBoundary(text, start - 1) || !isWordBoundary(text, i + 1)) {
+                    continue;
+                }
+                if (best == -1 || isBetter(k, start, best, bestStart)) {
+                    best = k;
+                    bestStart = start;
+                }
+            }
+        }
+
+        return best == -1 ? defaultGroupId : keywordGroup[best];
+    }
+
+    public int getKeywordCount() {
+        return keywordLength.length;
+    }
+
+    private boolean isBetter(int k, int start, int best, int bestStart) {
+        if (keywordPriority[k] != keywordPriority[best]) {
+            return keywordPriority[k] > keywordPriority[best];
+        }
+        if (keywordLength[k] != keywordLength[best]) {
+            return keywordLength[k] > keywordLength[best];
+        }
+        if (start != bestStart) {
+            return start < bestStart;
+        }
+        return keywordGroup[k] < keywordGroup[best];
+    }
+
+    private static boolean isWordBoundary(String text, int index) {
+        return index < 0 || index >= text.length() || !Character.isLetterOrDigit(text.charAt(index));
+    }
+
+    /**
+     * Lowercase + NFC so "Điện" typed with combining marks matches the precomposed keyword
+     */
+    private static String normalize(String s) {
+        return Normalizer.normalize(s.trim(), Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,243 @@
+package com.pricetracker.server.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * HTTP response compression (Content-Encoding: gzip / deflate)
+ * - negotiate() picks an encoding from the request's Accept-Encoding (gzip preferred, q=0 honoured)
+ * - bodies below the minimum size are sent as-is; the headers would eat the savings
+ * - Deflater instances (and their native zlib buffers) are pooled instead of created per response
+ *
+ * gzip output is built directly (10-byte header + raw deflate + CRC32/length trailer) so it can reuse
+ * a pooled Deflater; GZIPOutputStream always allocates its own.
+ */
+public final class ContentEncoding {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    // Smaller bodies are not worth compressing (TCP packet overhead, CPU)
+    public static final int MIN_SIZE = Integer.getInteger("http.compressMinBytes", 1024);
+    private static final int LEVEL = Integer.getInteger("http.compressLevel", 6);
+    private static final int POOL_SIZE = 32;
+
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    // nowrap = raw deflate for gzip; zlib-wrapped for Content-Encoding: deflate
+    private static final BlockingQueue<Deflater> RAW_POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Deflater> ZLIB_POOL = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static final AtomicLong compressed = new AtomicLong();
+    private static final AtomicLong bytesIn = new AtomicLong();
+    private static final AtomicLong bytesOut = new AtomicLong();
+    private static final AtomicLong compressNanos = new AtomicLong();
+
+    private ContentEncoding() {
+    }
+
+    /**
+     * @param acceptEncoding Accept-Encoding request header (may be null)
+     * @return GZIP, DEFLATE, or null for identity
+     */
+    public static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        double gzip = -1;
+        double deflate = -1;
+        double any = -1;
+        for (String part : acceptEncoding.toLowerCase(Locale.ROOT).split(",")) {
+            String[] tokens = part.trim().split(";");
+            String coding = tokens[0].trim();
+            double q = quality(tokens);
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzip = q;
+            } else if (DEFLATE.equals(coding)) {
+                deflate = q;
+            } else if ("*".equals(coding)) {
+                any = q;
+            }
+        }
+        // Codings not listed fall back to "*", if present
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return GZIP;
+        }
+        return deflate > 0 ? DEFLATE : null;
+    }
+
+    private static double quality(String[] tokens) {
+        for (int i = 1; i < tokens.length; i++) {
+            String param = tokens[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Compress a whole body
+     * @param encoding GZIP or DEFLATE
+     */
+    public static byte[] encode(byte[] body, String encoding) {
+        long started = System.nanoTime();
+        boolean gzip = GZIP.equals(encoding);
+        BlockingQueue<Deflater> pool = gzip ? RAW_POOL : ZLIB_POOL;
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(LEVEL, gzip);
+        }
+
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+            if (gzip) {
+                out.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+            }
+            deflater.setInput(body);
+            deflater.finish();
+            byte[] buffer = new byte[Math.min(16 * 1024, body.length + 64)];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            if (gzip) {
+                CRC32 crc = new CRC32();
+                crc.update(body, 0, body.length);
+                writeIntLE(out, (int) crc.getValue());
+                writeIntLE(out, body.length);
+            }
+
+            byte[] result = out.toByteArray();
+            compressed.incrementAndGet();
+            bytesIn.addAndGet(body.length);
+            bytesOut.addAndGet(result.length);
+            compressNanos.addAndGet(System.nanoTime() - started);
+            return result;
+        } finally {
+            deflater.reset();
+            if (!pool.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    /**
+     * Compressing stream for a body of unknown length (streamed responses)
+     * Closing it finishes the encoding, closes the underlying stream and returns the Deflater to the pool.
+     * @param encoding GZIP or DEFLATE
+     */
+    public static OutputStream wrap(OutputStream out, String encoding) throws IOException {
+        boolean gzip = GZIP.equals(encoding);
+        BlockingQueue<Deflater> pool = gzip ? RAW_POOL : ZLIB_POOL;
+        Deflater deflater = pool.poll();
+        if (deflater == null) {
+            deflater = new Deflater(LEVEL, gzip);
+        }
+        if (gzip) {
+            out.write(GZIP_HEADER);
+        }
+        return new PooledDeflaterOutputStream(out, deflater, pool, gzip);
+    }
+
+    private static final class PooledDeflaterOutputStream extends DeflaterOutputStream {
+        private final BlockingQueue<Deflater> pool;
+        private final CRC32 crc;
+        private long uncompressed;
+        private boolean closed;
+
+        PooledDeflaterOutputStream(OutputStream out, Deflater deflater, BlockingQueue<Deflater> pool, boolean gzip) {
+            super(out, deflater, 8192);
+            this.pool = pool;
+            this.crc = gzip ? new CRC32() : null;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.write(b, off, len);
+            if (crc != null) {
+                crc.update(b, off, len);
+            }
+            uncompressed += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                finish();
+                long written = def.getBytesWritten();
+                if (crc != null) {
+                    byte[] trailer = new byte[8];
+                    putIntLE(trailer, 0, (int) crc.getValue());
+                    putIntLE(trailer, 4, (int) uncompressed);
+                    out.write(trailer);
+                    written += 18;
+                }
+                compressed.incrementAndGet();
+                bytesIn.addAndGet(uncompressed);
+                bytesOut.addAndGet(written);
+                out.close();
+            } finally {
+                def.reset();
+                if (!pool.offer(def)) {
+                    def.end();
+                }
+            }
+        }
+    }
+
+    private static void putIntLE(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >>> 8);
+        bytes[offset + 2] = (byte) (value >>> 16);
+        bytes[offset + 3] = (byte) (value >>> 24);
+    }
+
+    private static void writeIntLE(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+
+    /**
+     * @return Counters: compressed (responses), bytes_in, bytes_out, ratio, compress_ms
+     */
+    public static Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long in = bytesIn.get();
+        long out = bytesOut.get();
+        stats.put("compressed", compressed.get());
+        stats.put("bytes_in", in);
+        stats.put("bytes_out", out);
+        stats.put("ratio", in > 0 ? Math.round(out * 1000.0 / in) / 1000.0 : 0.0);
+        stats.put("compress_ms", compressNanos.get() / 1_000_000L);
+        stats.put("min_size", MIN_SIZE);
+        return stats;
+    }
+}
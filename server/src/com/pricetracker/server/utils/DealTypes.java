@@ -0,0 +1,55 @@
+package com.pricetracker.server.utils;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Values of the price_interval.deal_type column (ENUM('NORMAL','FLASH_SALE','HOT_DEAL','TRENDING'))
+ * Producers may carry display labels ("Flash Sale", "Deal HOT", "Normal"); everything that is
+ * written, compared or ranked goes through these values instead.
+ */
+public final class DealTypes {
+
+    public static final String NORMAL = "NORMAL";
+    public static final String FLASH_SALE = "FLASH_SALE";
+    public static final String HOT_DEAL = "HOT_DEAL";
+    public static final String TRENDING = "TRENDING";
+
+    public static final List<String> VALUES = List.of(NORMAL, FLASH_SALE, HOT_DEAL, TRENDING);
+
+    private DealTypes() {
+    }
+
+    /**
+     * @param label Column value (any case) or display label, e.g. "Flash Sale", "Deal HOT"
+     * @return The column value, or null if the label is not a known deal type
+     */
+    public static String parse(String label) {
+        if (label == null) {
+            return null;
+        }
+        String key = label.trim().toUpperCase(Locale.ROOT).replace(' ', '_');
+        switch (key) {
+            case NORMAL:
+            case "FREESHIP":  // A shipping badge, not a price deal
+                return NORMAL;
+            case FLASH_SALE:
+                return FLASH_SALE;
+            case HOT_DEAL:
+            case "DEAL_HOT":
+                return HOT_DEAL;
+            case TRENDING:
+                return TRENDING;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Lenient form of {@link #parse}: missing or unknown labels become NORMAL
+     */
+    public static String normalize(String label) {
+        String value = parse(label);
+        return value != null ? value : NORMAL;
+    }
+}
@@ -0,0 +1,166 @@
+package com.pricetracker.server.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the independent lookups of one request concurrently, scoped to that request:
+ * - every subtask shares one deadline, counted from when the scope was opened
+ * - the first failure (or the deadline) cancels and interrupts the subtasks still running
+ * - close() cancels anything left, so no subtask outlives the request
+ * Also records when each subtask started and how long it took, rendered as a Server-Timing header.
+ *
+ * Usage:
+ * <pre>
+ * try (FanOut scope = new FanOut(executor, 3000)) {
+ *     CompletableFuture&lt;A&gt; a = scope.fork("a", () -&gt; loadA());
+ *     CompletableFuture&lt;B&gt; b = scope.fork("b", () -&gt; loadB());
+ *     use(scope.join(a), scope.join(b));
+ * }
+ * </pre>
+ */
+public final class FanOut implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final long openedAt = System.nanoTime();
+    private final long deadline;
+
+    private final List<Timing> timings = new ArrayList<>();
+    private final List<Future<?>> handles = new ArrayList<>();
+    private final List<CompletableFuture<?>> results = new ArrayList<>();
+    private volatile Throwable failure;
+    private volatile boolean timedOut;
+
+    /**
+     * @param executor Pool the subtasks run on
+     * @param deadlineMs Time budget for the whole request
+     */
+    public FanOut(ExecutorService executor, long deadlineMs) {
+        this.executor = executor;
+        this.deadline = openedAt + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+    }
+
+    /**
+     * Start a subtask
+     * @param name Metric name for Server-Timing (token characters only)
+     */
+    public synchronized <T> CompletableFuture<T> fork(String name, Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Timing timing = new Timing(name);
+        timings.add(timing);
+        results.add(result);
+
+        if (failure != null) {
+            result.completeExceptionally(new CancellationException("Sibling subtask failed"));
+            return result;
+        }
+
+        handles.add(executor.submit(() -> {
+            timing.startedAt = System.nanoTime();
+            try {
+                result.complete(task.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+                fail(e);
+            } finally {
+                timing.finishedAt = System.nanoTime();
+            }
+        }));
+        return result;
+    }
+
+    /**
+     * Wait for a subtask within the remaining deadline
+     * @throws TimeoutException if the deadline passed (all subtasks are then cancelled)
+     * @throws ExecutionException if this or a sibling subtask failed
+     */
+    public <T> T join(CompletableFuture<T> future) throws TimeoutException, ExecutionException, InterruptedException {
+        try {
+            return future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            timedOut = true;
+            cancelAll();
+            throw e;
+        } catch (CancellationException e) {
+            throw new ExecutionException("Cancelled after a sibling subtask failed", failure);
+        } catch (InterruptedException e) {
+            cancelAll();
+            throw e;
+        }
+    }
+
+    /**
+     * @return true if join() gave up because the deadline passed
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    private void fail(Throwable e) {
+        synchronized (this) {
+            if (failure != null) {
+                return;
+            }
+            failure = e;
+        }
+        cancelAll();
+    }
+
+    private synchronized void cancelAll() {
+        for (Future<?> handle : handles) {
+            handle.cancel(true);
+        }
+        for (CompletableFuture<?> result : results) {
+            result.completeExceptionally(new CancellationException());
+        }
+    }
+
+    /**
+     * Server-Timing header value: one metric per subtask with its duration and, in desc, its start
+     * offset from the beginning of the request (the waterfall), plus "total"
+     * e.g. product;dur=2.1;desc="+0.1", price;dur=1.4;desc="+2.3", total;dur=4.0
+     */
+    public synchronized String serverTiming() {
+        StringBuilder sb = new StringBuilder();
+        for (Timing timing : timings) {
+            if (timing.startedAt == 0) {
+                continue; // Never started
+            }
+            long end = timing.finishedAt != 0 ? timing.finishedAt : System.nanoTime();
+            sb.append(timing.name)
+              .append(";dur=").append(millis(end - timing.startedAt))
+              .append(";desc=\"+").append(millis(timing.startedAt - openedAt)).append('"')
+              .append(", ");
+        }
+        sb.append("total;dur=").append(millis(System.nanoTime() - openedAt));
+        return sb.toString();
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / 1_000_000.0);
+    }
+
+    @Override
+    public void close() {
+        cancelAll();
+    }
+
+    private static final class Timing {
+        final String name;
+        volatile long startedAt;
+        volatile long finishedAt;
+
+        Timing(String name) {
+            this.name = name;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.pricetracker.server.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * Streaming JSON writer - encodes straight to UTF-8 bytes in an output stream
+ * No JSONObject tree, no intermediate String: values go through one small reusable buffer,
+ * so memory stays constant however large the document is.
+ *
+ * Commas are inserted automatically; the caller only has to nest begin/end calls correctly
+ * and call name() before each value inside an object.
+ *
+ * Numbers are written like org.json writes them (integral doubles without ".0"),
+ * so responses keep the exact shape the JSONObject-based handlers produced.
+ */
+public final class JsonStreamWriter implements Closeable {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = "null".getBytes();
+    private static final byte[] TRUE = "true".getBytes();
+    private static final byte[] FALSE = "false".getBytes();
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+
+    // Per nesting level: true until the first element has been written
+    private boolean[] first = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonStreamWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    public JsonStreamWriter beginObject() throws IOException {
+        beforeValue();
+        writeByte('{');
+        push();
+        return this;
+    }
+
+    public JsonStreamWriter endObject() throws IOException {
+        depth--;
+        writeByte('}');
+        return this;
+    }
+
+    public JsonStreamWriter beginArray() throws IOException {
+        beforeValue();
+        writeByte('[');
+        push();
+        return this;
+    }
+
+    public JsonStreamWriter endArray() throws IOException {
+        depth--;
+        writeByte(']');
+        return this;
+    }
+
+    /**
+     * Member name inside an object; the next call writes its value
+     */
+    public JsonStreamWriter name(String name) throws IOException {
+        separator();
+        writeString(name);
+        writeByte(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonStreamWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beforeValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonStreamWriter value(long value) throws IOException {
+        beforeValue();
+        writeAscii(Long.toString(value));
+        return this;
+    }
+
+    public JsonStreamWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return nullValue();
+        }
+        beforeValue();
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            writeAscii(Long.toString((long) value));
+        } else {
+            writeAscii(Double.toString(value));
+        }
+        return this;
+    }
+
+    public JsonStreamWriter value(boolean value) throws IOException {
+        beforeValue();
+        writeBytes(value ? TRUE : FALSE);
+        return this;
+    }
+
+    public JsonStreamWriter nullValue() throws IOException {
+        beforeValue();
+        writeBytes(NULL);
+        return this;
+    }
+
+    /**
+     * Any org.json-compatible value: null, String, Number, Boolean, JSONObject, JSONArray
+     * (nested objects are walked and written member by member, not via toString())
+     */
+    public JsonStreamWriter value(Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            return nullValue();
+        }
+        if (value instanceof String) {
+            return value((String) value);
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof Number) {
+            return value(((Number) value).doubleValue());
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                name(key).value(object.opt(key));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            return endArray();
+        }
+        return value(value.toString());
+    }
+
+    /**
+     * Push buffered bytes to the stream (e.g. so the client sees the first chunk early)
+     */
+    public void flush() throws IOException {
+        drain();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        out.close();
+    }
+
+    private void push() {
+        if (++depth == first.length) {
+            first = Arrays.copyOf(first, depth * 2);
+        }
+        first[depth] = true;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        separator();
+    }
+
+    private void separator() throws IOException {
+        if (depth == 0) {
+            return;
+        }
+        if (first[depth]) {
+            first[depth] = false;
+        } else {
+            writeByte(',');
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        writeByte('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"':
+                        writeByte('\\');
+                        writeByte('"');
+                        break;
+                    case '\\':
+                        writeByte('\\');
+                        writeByte('\\');
+                        break;
+                    case '\n':
+                        writeByte('\\');
+                        writeByte('n');
+                        break;
+                    case '\r':
+                        writeByte('\\');
+                        writeByte('r');
+                        break;
+                    case '\t':
+                        writeByte('\\');
+                        writeByte('t');
+                        break;
+                    case '\b':
+                        writeByte('\\');
+                        writeByte('b');
+                        break;
+                    case '\f':
+                        writeByte('\\');
+                        writeByte('f');
+                        break;
+                    case '/':
+                        // As org.json does, so "</script>" cannot end an inline script
+                        if (i > 0 && s.charAt(i - 1) == '<') {
+                            writeByte('\\');
+                        }
+                        writeByte('/');
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            writeUnicodeEscape(c);
+                        } else {
+                            writeByte(c);
+                        }
+                }
+            } else if (c < 0xA0) {
+                writeUnicodeEscape(c);  // C1 controls, escaped like org.json
+            } else if (c < 0x800) {
+                writeByte(0xC0 | (c >> 6));
+                writeByte(0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                writeByte(0xF0 | (cp >> 18));
+                writeByte(0x80 | ((cp >> 12) & 0x3F));
+                writeByte(0x80 | ((cp >> 6) & 0x3F));
+                writeByte(0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c) || (c >= 0x2000 && c < 0x2100)) {
+                // Lone surrogate (not encodable), or the range org.json escapes (incl. JS line separators)
+                writeUnicodeEscape(c);
+            } else {
+                writeByte(0xE0 | (c >> 12));
+                writeByte(0x80 | ((c >> 6) & 0x3F));
+                writeByte(0x80 | (c & 0x3F));
+            }
+        }
+        writeByte('"');
+    }
+
+    private void writeUnicodeEscape(char c) throws IOException {
+        writeByte('\\');
+        writeByte('u');
+        writeByte(HEX[(c >> 12) & 0xF]);
+        writeByte(HEX[(c >> 8) & 0xF]);
+        writeByte(HEX[(c >> 4) & 0xF]);
+        writeByte(HEX[c & 0xF]);
+    }
+
+    private void writeAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            writeByte(s.charAt(i));
+        }
+    }
+
+    private void writeBytes(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            writeByte(b);
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void drain() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
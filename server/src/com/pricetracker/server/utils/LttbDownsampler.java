@@ -0,0 +1,156 @@
+package com.pricetracker.server.utils;
+
+import java.util.Arrays;
+
+/**
+ * Largest-Triangle-Three-Buckets downsampling for chart series
+ * Picks, from each bucket, the point forming the largest triangle with the previously kept
+ * point and the average of the next bucket - so spikes and dips (e.g. a one-day flash-sale low)
+ * survive while flat stretches collapse. The first and last points are always kept, so the
+ * latest price in a downsampled series is exact.
+ *
+ * Works on primitive arrays in one O(n) pass and returns indices into the input,
+ * letting callers keep whatever per-point payload they have.
+ */
+public final class LttbDownsampler {
+
+    private LttbDownsampler() {
+    }
+
+    /**
+     * @param x Ascending x values (e.g. epoch millis)
+     * @param y Values
+     * @param threshold Maximum number of points to keep (&gt;= 3), or &lt;= 0 for no downsampling
+     * @return Ascending indices of the kept points
+     */
+    public static int[] downsample(double[] x, double[] y, int threshold) {
+        int n = x.length;
+        if (threshold <= 0 || threshold >= n || n <= 2) {
+            return identity(n);
+        }
+        threshold = Math.max(threshold, 3);
+
+        int[] kept = new int[threshold];
+        int count = 0;
+        kept[count++] = 0;
+
+        // Interior points are split into threshold - 2 buckets
+        double bucketSize = (double) (n - 2) / (threshold - 2);
+        int a = 0;
+
+        for (int bucket = 0; bucket < threshold - 2; bucket++) {
+            int start = (int) Math.floor(bucket * bucketSize) + 1;
+            int end = (int) Math.floor((bucket + 1) * bucketSize) + 1;
+
+            // Average of the next bucket (the last point for the final bucket)
+            int nextStart = end;
+            int nextEnd = Math.min((int) Math.floor((bucket + 2) * bucketSize) + 1, n);
+            if (nextStart >= n - 1) {
+                nextStart = n - 1;
+                nextEnd = n;
+            }
+            double avgX = 0;
+            double avgY = 0;
+            for (int i = nextStart; i < nextEnd; i++) {
+                avgX += x[i];
+                avgY += y[i];
+            }
+            avgX /= (nextEnd - nextStart);
+            avgY /= (nextEnd - nextStart);
+
+            double ax = x[a];
+            double ay = y[a];
+            double maxArea = -1;
+            int chosen = start;
+            for (int i = start; i < end; i++) {
+                // Twice the triangle area; the factor does not change the argmax
+                double area = Math.abs((ax - avgX) * (y[i] - ay) - (ax - x[i]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = i;
+                }
+            }
+
+            kept[count++] = chosen;
+            a = chosen;
+        }
+
+        kept[count++] = n - 1;
+        return kept;
+    }
+
+    /**
+     * LTTB that also guarantees the given indices (e.g. global min and max) are in the result,
+     * still returning at most threshold points (thresholds below 3 count as 3, as in downsample).
+     * The first and last points come first; if the budget is too small for every forced index,
+     * the earliest entries of mustKeep win.
+     */
+    public static int[] downsampleKeeping(double[] x, double[] y, int threshold, int... mustKeep) {
+        int n = x.length;
+        if (threshold <= 0 || threshold >= n || n <= 2) {
+            return identity(n);
+        }
+        threshold = Math.max(threshold, 3);
+
+        int[] forced = Arrays.stream(mustKeep).filter(i -> i > 0 && i < n - 1).distinct().toArray();
+        if (forced.length > threshold - 2) {
+            forced = Arrays.copyOf(forced, threshold - 2);
+        }
+        // Forced points count against the budget; LTTB needs 3 points, else keep just the ends
+        int budget = threshold - forced.length;
+        int[] base = budget >= 3 ? downsample(x, y, budget) : new int[]{0, n - 1};
+
+        // Merge two ascending index lists without duplicates
+        Arrays.sort(forced);
+        int[] merged = new int[base.length + forced.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < base.length || j < forced.length) {
+            int next;
+            if (j >= forced.length || (i < base.length && base[i] <= forced[j])) {
+                next = base[i++];
+            } else {
+                next = forced[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+
+    /**
+     * Index of the smallest value (first one on ties)
+     */
+    public static int argMin(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] < values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Index of the largest value (first one on ties)
+     */
+    public static int argMax(double[] values) {
+        int best = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] > values[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static int[] identity(int n) {
+        int[] all = new int[n];
+        for (int i = 0; i < n; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+}
@@ -0,0 +1,91 @@
+package com.pricetracker.server.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * LttbDownsamplerTest - checks the downsampling contract on small budgets
+ * Run this class directly; it exits with status 1 if a check fails.
+ */
+public class LttbDownsamplerTest {
+
+    private static int failures;
+
+    public static void main(String[] args) {
+        testSmallThresholdsKeepingMinMax();
+        testForcedPointsWithinBudget();
+        testNoDownsampling();
+
+        System.out.println(failures == 0 ? "✅ All LTTB checks passed" : "❌ " + failures + " LTTB check(s) failed");
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * max_points of 3-4 with min and max forced: never more than the threshold, ends always kept
+     */
+    private static void testSmallThresholdsKeepingMinMax() {
+        Random random = new Random(42);
+        for (int n = 5; n <= 60; n++) {
+            double[] x = new double[n];
+            double[] y = new double[n];
+            for (int i = 0; i < n; i++) {
+                x[i] = i * 1000.0;
+                y[i] = 100 + random.nextInt(50);
+            }
+            int min = LttbDownsampler.argMin(y);
+            int max = LttbDownsampler.argMax(y);
+            for (int threshold = 1; threshold < n && threshold <= 10; threshold++) {
+                int[] kept = LttbDownsampler.downsampleKeeping(x, y, threshold, min, max);
+                String label = "n=" + n + " threshold=" + threshold;
+                check(kept.length <= Math.max(threshold, 3), label + ": " + kept.length + " points");
+                check(kept[0] == 0 && kept[kept.length - 1] == n - 1, label + ": ends kept");
+                check(isStrictlyAscending(kept), label + ": ascending " + Arrays.toString(kept));
+            }
+        }
+    }
+
+    /**
+     * With room for them, the forced indices are in the result
+     */
+    private static void testForcedPointsWithinBudget() {
+        double[] x = new double[100];
+        double[] y = new double[100];
+        for (int i = 0; i < 100; i++) {
+            x[i] = i;
+            y[i] = 200;
+        }
+        y[37] = 50;   // A one-point dip on a flat line
+        y[61] = 400;  // and a spike
+
+        int[] kept = LttbDownsampler.downsampleKeeping(x, y, 4, 37, 61);
+        check(Arrays.equals(kept, new int[]{0, 37, 61, 99}), "threshold=4 keeps min and max: " + Arrays.toString(kept));
+
+        kept = LttbDownsampler.downsampleKeeping(x, y, 3, 37, 61);
+        check(Arrays.equals(kept, new int[]{0, 37, 99}), "threshold=3 keeps the first forced index: " + Arrays.toString(kept));
+    }
+
+    private static void testNoDownsampling() {
+        double[] x = {1, 2, 3, 4};
+        double[] y = {5, 6, 7, 8};
+        check(LttbDownsampler.downsampleKeeping(x, y, 0, 1, 2).length == 4, "threshold=0 keeps everything");
+        check(LttbDownsampler.downsampleKeeping(x, y, 10, 1, 2).length == 4, "threshold>=n keeps everything");
+    }
+
+    private static boolean isStrictlyAscending(int[] indices) {
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] <= indices[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void check(boolean ok, String description) {
+        if (!ok) {
+            failures++;
+            System.out.println("❌ " + description);
+        }
+    }
+}
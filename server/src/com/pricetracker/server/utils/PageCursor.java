@@ -0,0 +1,55 @@
+package com.pricetracker.server.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursors
+ * A cursor is the sort key of the last row of a page plus a scope naming the query it belongs to
+ * (e.g. "deals:FLASH_SALE"), base64url-encoded so clients treat it as a token rather than
+ * something to build by hand. A cursor from another scope is rejected.
+ */
+public final class PageCursor {
+
+    private static final char SEPARATOR = '\u001F';
+
+    private PageCursor() {
+    }
+
+    /**
+     * @param scope Query the cursor belongs to
+     * @param keys Sort key values of the last row, in ORDER BY order
+     */
+    public static String encode(String scope, String... keys) {
+        StringBuilder sb = new StringBuilder(scope);
+        for (String key : keys) {
+            sb.append(SEPARATOR).append(key);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param cursor Cursor from a previous page, or null/empty for the first page
+     * @return The sort key values, or null for the first page
+     * @throws IllegalArgumentException if the cursor is malformed or belongs to another scope
+     */
+    public static String[] decode(String scope, String cursor, int keyCount) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+
+        String[] parts;
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            parts = raw.split(String.valueOf(SEPARATOR), -1);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+
+        if (parts.length != keyCount + 1 || !parts[0].equals(scope)) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        return Arrays.copyOfRange(parts, 1, parts.length);
+    }
+}
@@ -0,0 +1,132 @@
+package com.pricetracker.server.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * Bounded request body reading
+ * - Content-Length pre-sizes the buffer (one allocation, no copies); an oversized declared
+ *   length is rejected before a single byte is read
+ * - chunked bodies grow geometrically but never past the limit
+ * - the whole body must arrive within a deadline, so a client trickling bytes cannot hold
+ *   a request thread forever
+ * - JSON is parsed straight from the bytes (no String of the whole body)
+ *
+ * Failures are thrown as {@link BodyException} carrying the HTTP status to answer with.
+ */
+public final class RequestBodyReader {
+
+    public static final int MAX_BYTES = Integer.getInteger("http.maxBodyBytes", 1024 * 1024);
+    public static final long READ_TIMEOUT_MS = Long.getLong("http.bodyReadTimeoutMs", 10_000);
+
+    private static final int INITIAL_CHUNKED_SIZE = 4096;
+
+    private RequestBodyReader() {
+    }
+
+    /**
+     * Request body parsed as a JSON object; an empty body is an empty object
+     * @throws BodyException 400 (not a JSON object), 408 (too slow) or 413 (too large)
+     */
+    public static JSONObject readJson(HttpExchange exchange) throws IOException {
+        return readJson(exchange, MAX_BYTES);
+    }
+
+    public static JSONObject readJson(HttpExchange exchange, int maxBytes) throws IOException {
+        byte[] body = read(exchange, maxBytes);
+        if (body.length == 0) {
+            return new JSONObject();
+        }
+        try {
+            return new JSONObject(new JSONTokener(
+                    new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8)));
+        } catch (JSONException e) {
+            throw new BodyException(400, "Invalid JSON body: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Whole request body
+     * @param maxBytes Largest accepted body
+     * @throws BodyException 408 (too slow) or 413 (too large)
+     */
+    public static byte[] read(HttpExchange exchange, int maxBytes) throws IOException {
+        long declared = contentLength(exchange);
+        if (declared > maxBytes) {
+            throw new BodyException(413, "Request body too large (max " + maxBytes + " bytes)");
+        }
+
+        long deadline = System.currentTimeMillis() + READ_TIMEOUT_MS;
+        byte[] buffer = new byte[declared >= 0 ? (int) declared : Math.min(INITIAL_CHUNKED_SIZE, maxBytes)];
+        int length = 0;
+
+        // Not closed on failure: close() would drain the rest of the body, i.e. wait on the very
+        // client being rejected. Left unread, the server drops the connection after the response.
+        InputStream in = exchange.getRequestBody();
+        while (true) {
+            if (length == buffer.length) {
+                if (declared >= 0 || length == maxBytes) {
+                    // Declared length reached (the stream ends here), or probe one byte past the limit
+                    if (in.read() < 0) {
+                        break;
+                    }
+                    throw new BodyException(413, "Request body too large (max " + maxBytes + " bytes)");
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, maxBytes));
+            }
+            int n = in.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+            if (System.currentTimeMillis() > deadline) {
+                throw new BodyException(408, "Request body not received in time");
+            }
+        }
+        in.close();
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * @return Declared Content-Length, or -1 if absent (chunked) or malformed
+     */
+    private static long contentLength(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (header == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * The body could not be accepted; {@link #getStatus()} is the HTTP status to respond with
+     */
+    public static final class BodyException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        public BodyException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.pricetracker.server.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight request coalescing
+ * Concurrent calls with the same key share one in-flight computation and its result,
+ * e.g. many users pasting the same viral Tiki URL at once.
+ *
+ * Only calls that overlap in time are coalesced - nothing is cached after completion.
+ *
+ * @param <K> Normalized request key
+ * @param <V> Result type (shared between callers, so treat it as read-only)
+ */
+public class SingleFlight<K, V> {
+
+    // All instances, for the /metrics endpoint
+    private static final List<SingleFlight<?, ?>> REGISTRY = new CopyOnWriteArrayList<>();
+
+    private final String name;
+    private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public SingleFlight(String name) {
+        this.name = name;
+        REGISTRY.add(this);
+    }
+
+    /**
+     * Run the loader for this key, or wait for the identical call already running
+     * @param key Normalized request key
+     * @param loader Computation to run if no identical call is in flight
+     * @return The (possibly shared) result
+     * @throws Exception Whatever the shared loader threw
+     */
+    public V execute(K key, Callable<V> loader) throws Exception {
+        calls.incrementAndGet();
+
+        CompletableFuture<V> mine = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, mine);
+
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return existing.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Exception) {
+                    throw (Exception) cause;
+                }
+                throw e;
+            }
+        }
+
+        executions.incrementAndGet();
+        try {
+            V value = loader.call();
+            mine.complete(value);
+            return value;
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            mine.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            failures.incrementAndGet();
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Counters: calls, executions, coalesced, failures, in_flight
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("calls", calls.get());
+        stats.put("executions", executions.get());
+        stats.put("coalesced", coalesced.get());
+        stats.put("failures", failures.get());
+        stats.put("in_flight", inFlight.size());
+        return stats;
+    }
+
+    /**
+     * @return All SingleFlight instances created in this JVM
+     */
+    public static List<SingleFlight<?, ?>> getAll() {
+        return REGISTRY;
+    }
+}
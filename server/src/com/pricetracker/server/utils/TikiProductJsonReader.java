@@ -0,0 +1,416 @@
+package com.pricetracker.server.utils;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Streaming pull parser for Tiki product responses
+ * Reads only name, brand_name, price, original_price, thumbnail_url, short_description,
+ * breadcrumbs[0].name, category.name and badges[].code. Every other value (description HTML,
+ * specifications, images...) is scanned and skipped without building strings or a JSON tree,
+ * and parsing stops as soon as all wanted top-level fields have been seen.
+ */
+public class TikiProductJsonReader {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Bit per wanted top-level field - stop early once all are found
+    private static final int F_NAME = 1;
+    private static final int F_BRAND = 1 << 1;
+    private static final int F_PRICE = 1 << 2;
+    private static final int F_ORIGINAL_PRICE = 1 << 3;
+    private static final int F_THUMBNAIL = 1 << 4;
+    private static final int F_SHORT_DESCRIPTION = 1 << 5;
+    private static final int F_BREADCRUMBS = 1 << 6;
+    private static final int F_BADGES = 1 << 7;
+    private static final int ALL_FIELDS = (1 << 8) - 1;
+
+    private final Reader in;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int pos;
+    private int limit;
+
+    // Reused for the few strings we keep
+    private final StringBuilder text = new StringBuilder(256);
+
+    private TikiProductJsonReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Parse a Tiki product response
+     * @param in Character stream positioned at the top-level JSON object
+     * @return Extracted fields
+     * @throws IOException on read errors or malformed JSON
+     */
+    public static TikiProductPayload parse(Reader in) throws IOException {
+        return new TikiProductJsonReader(in).readProduct();
+    }
+
+    private TikiProductPayload readProduct() throws IOException {
+        TikiProductPayload payload = new TikiProductPayload();
+        String breadcrumbName = null;
+        String categoryName = null;
+        int found = 0;
+
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            return payload;
+        }
+
+        do {
+            String key = readKey();
+            switch (key) {
+                case "name":
+                    payload.name = readScalarAsString();
+                    found |= F_NAME;
+                    break;
+                case "brand_name":
+                    payload.brandName = readScalarAsString();
+                    found |= F_BRAND;
+                    break;
+                case "price":
+                    payload.price = readNumberOrNull();
+                    found |= F_PRICE;
+                    break;
+                case "original_price":
+                    payload.originalPrice = readNumberOrNull();
+                    found |= F_ORIGINAL_PRICE;
+                    break;
+                case "thumbnail_url":
+                    payload.thumbnailUrl = readScalarAsString();
+                    found |= F_THUMBNAIL;
+                    break;
+                case "short_description":
+                    payload.shortDescription = readScalarAsString();
+                    found |= F_SHORT_DESCRIPTION;
+                    break;
+                case "breadcrumbs":
+                    breadcrumbName = readFirstElementName();
+                    found |= F_BREADCRUMBS;
+                    break;
+                case "category":
+                    categoryName = readObjectField("name");
+                    break;
+                case "badges":
+                    readBadgeCodes(payload);
+                    found |= F_BADGES;
+                    break;
+                default:
+                    skipValue();
+            }
+
+            if (found == ALL_FIELDS && breadcrumbName != null) {
+                break; // Nothing left we care about
+            }
+        } while (nextMember('}'));
+
+        payload.categoryName = breadcrumbName != null ? breadcrumbName : categoryName;
+        return payload;
+    }
+
+    /**
+     * breadcrumbs: [{"name": "..."}, ...] - keep only the first element's name
+     */
+    private String readFirstElementName() throws IOException {
+        if (peekNonWhitespace() != '[') {
+            skipValue();
+            return null;
+        }
+        expect('[');
+        if (peekNonWhitespace() == ']') {
+            pos++;
+            return null;
+        }
+
+        String name = peekNonWhitespace() == '{' ? readObjectField("name") : skipValueReturningNull();
+        while (nextMember(']')) {
+            skipValue();
+        }
+        return name;
+    }
+
+    /**
+     * badges: [{"code": "flash_sale", ...}, ...]
+     */
+    private void readBadgeCodes(TikiProductPayload payload) throws IOException {
+        if (peekNonWhitespace() != '[') {
+            skipValue();
+            return;
+        }
+        expect('[');
+        if (peekNonWhitespace() == ']') {
+            pos++;
+            return;
+        }
+
+        do {
+            if (peekNonWhitespace() == '{') {
+                String code = readObjectField("code");
+                if (code != null) {
+                    payload.badgeCodes.add(code);
+                }
+            } else {
+                skipValue();
+            }
+        } while (nextMember(']'));
+    }
+
+    /**
+     * Read one scalar field of an object and skip the rest of it
+     */
+    private String readObjectField(String wanted) throws IOException {
+        if (peekNonWhitespace() != '{') {
+            skipValue();
+            return null;
+        }
+        expect('{');
+        if (peekNonWhitespace() == '}') {
+            pos++;
+            return null;
+        }
+
+        String value = null;
+        do {
+            String key = readKey();
+            if (value == null && wanted.equals(key)) {
+                value = readScalarAsString();
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+        return value;
+    }
+
+    // ===== Low-level tokenizer =====
+
+    private String readKey() throws IOException {
+        String key = readString();
+        expect(':');
+        return key;
+    }
+
+    /**
+     * After a member: consume ',' and return true, or consume the closing bracket and return false
+     */
+    private boolean nextMember(char close) throws IOException {
+        char c = nextNonWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw syntaxError("Expected ',' or '" + close + "' but found '" + c + "'");
+    }
+
+    /**
+     * Strings are decoded, numbers/booleans are returned as written, null/objects/arrays give null
+     */
+    private String readScalarAsString() throws IOException {
+        char c = peekNonWhitespace();
+        if (c == '"') {
+            return readString();
+        }
+        if (c == '{' || c == '[') {
+            skipValue();
+            return null;
+        }
+        String literal = readLiteral();
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private Double readNumberOrNull() throws IOException {
+        String value = readScalarAsString();
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        text.setLength(0);
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c == '\\') {
+                text.append(readEscape());
+            } else {
+                text.append(c);
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        char c = next();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int code = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Invalid \\u escape");
+                    }
+                    code = (code << 4) | digit;
+                }
+                return (char) code;
+            default:
+                throw syntaxError("Invalid escape '\\" + c + "'");
+        }
+    }
+
+    /**
+     * Unquoted token: number, true, false or null
+     */
+    private String readLiteral() throws IOException {
+        peekNonWhitespace();
+        text.setLength(0);
+        while (true) {
+            if (pos == limit && !fill()) {
+                break;
+            }
+            char c = buffer[pos];
+            if (c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            text.append(c);
+            pos++;
+        }
+        if (text.length() == 0) {
+            throw syntaxError("Expected a value");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Skip any value without materializing it (iterative, so deep nesting is fine)
+     */
+    private void skipValue() throws IOException {
+        int depth = 0;
+        do {
+            char c = nextNonWhitespace();
+            switch (c) {
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    break;
+                case '"':
+                    skipStringBody();
+                    break;
+                case ',':
+                case ':':
+                    break;
+                default:
+                    skipLiteralBody();
+            }
+        } while (depth > 0);
+    }
+
+    private String skipValueReturningNull() throws IOException {
+        skipValue();
+        return null;
+    }
+
+    private void skipStringBody() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            // Scan the buffer directly - this is where skipped description HTML goes
+            while (pos < limit) {
+                char c = buffer[pos++];
+                if (c == '"') {
+                    return;
+                }
+                if (c == '\\') {
+                    next(); // escaped char; hex digits of a unicode escape are skipped by the loop
+                }
+            }
+        }
+    }
+
+    private void skipLiteralBody() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return;
+            }
+            char c = buffer[pos];
+            if (c == ',' || c == '}' || c == ']' || c == ':' || Character.isWhitespace(c)) {
+                return;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(char expected) throws IOException {
+        char c = nextNonWhitespace();
+        if (c != expected) {
+            throw syntaxError("Expected '" + expected + "' but found '" + c + "'");
+        }
+    }
+
+    private char peekNonWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unexpected end of input");
+            }
+            char c = buffer[pos];
+            if (!Character.isWhitespace(c)) {
+                return c;
+            }
+            pos++;
+        }
+    }
+
+    private char nextNonWhitespace() throws IOException {
+        char c = peekNonWhitespace();
+        pos++;
+        return c;
+    }
+
+    private char next() throws IOException {
+        if (pos == limit && !fill()) {
+            throw syntaxError("Unexpected end of input");
+        }
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n <= 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException("Malformed Tiki JSON: " + message);
+    }
+}
@@ -0,0 +1,59 @@
+package com.pricetracker.server.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The handful of fields we actually use from a Tiki /api/v2/products/{id} response.
+ * Filled by {@link TikiProductJsonReader}; everything else in the payload is skipped.
+ */
+public class TikiProductPayload {
+
+    String name;
+    String brandName;
+    String thumbnailUrl;
+    String shortDescription;
+    Double price;
+    Double originalPrice;
+    // breadcrumbs[0].name, or category.name when there are no breadcrumbs
+    String categoryName;
+    final List<String> badgeCodes = new ArrayList<>();
+
+    public String getName() {
+        return name;
+    }
+
+    public String getBrandName() {
+        return brandName;
+    }
+
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public String getShortDescription() {
+        return shortDescription;
+    }
+
+    /**
+     * @return The price, or null if the payload has none
+     */
+    public Double getPrice() {
+        return price;
+    }
+
+    /**
+     * @return The original (list) price, or null if the payload has none
+     */
+    public Double getOriginalPrice() {
+        return originalPrice;
+    }
+
+    public String getCategoryName() {
+        return categoryName;
+    }
+
+    public List<String> getBadgeCodes() {
+        return badgeCodes;
+    }
+}
@@ -1,15 +1,15 @@
 package com.pricetracker.server.utils;
 
 import com.pricetracker.models.Product;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -19,64 +19,100 @@ import java.util.regex.Pattern;
  */
 public class TikiScraperUtil {
     
-    private static final String TIKI_API_BASE = "https://tiki.vn/api/v2/products/";
+    private static final String DEFAULT_TIKI_API_BASE = "https://tiki.vn/api/v2/products/";
+    
+    // Injectable for offline benchmarks (-Dtiki.api.base=http://localhost:9090/api/v2/products/ or setApiBase)
+    private static volatile String apiBase = withTrailingSlash(System.getProperty("tiki.api.base", DEFAULT_TIKI_API_BASE));
     private static final Pattern PRODUCT_ID_PATTERN = Pattern.compile("p(\\d+)\\.html");
     
-    // Category mapping to group_id (based on 8 groups in database)
-    private static final Map<String, Integer> CATEGORY_MAP = new HashMap<>();
+    // Group returned when no keyword matches: "Sản phẩm mới"
+    private static final int DEFAULT_GROUP_ID = 8;
+    
+    // Keyword priorities: category names beat product words, ambiguous short words lose ties
+    private static final int PRIORITY_CATEGORY = 30;
+    private static final int PRIORITY_PRODUCT = 20;
+    private static final int PRIORITY_AMBIGUOUS = 10;
+    
+    // Built-in category keywords (based on 8 groups in database)
+    // Used until / unless product_group_keyword has rows
+    private static final List<CategoryClassifier.Keyword> DEFAULT_KEYWORDS = new ArrayList<>();
     
     static {
         // Group 1: Điện tử
-        CATEGORY_MAP.put("điện thoại", 1);
-        CATEGORY_MAP.put("smartphone", 1);
-        CATEGORY_MAP.put("laptop", 1);
-        CATEGORY_MAP.put("máy tính", 1);
-        CATEGORY_MAP.put("tablet", 1);
-        CATEGORY_MAP.put("ipad", 1);
-        CATEGORY_MAP.put("điện tử", 1);
+        addKeyword("điện tử", 1, PRIORITY_CATEGORY);
+        addKeyword("điện thoại", 1, PRIORITY_PRODUCT);
+        addKeyword("smartphone", 1, PRIORITY_PRODUCT);
+        addKeyword("laptop", 1, PRIORITY_PRODUCT);
+        addKeyword("máy tính", 1, PRIORITY_PRODUCT);
+        addKeyword("tablet", 1, PRIORITY_PRODUCT);
+        addKeyword("ipad", 1, PRIORITY_PRODUCT);
         
         // Group 2: Điện gia dụng
-        CATEGORY_MAP.put("điện gia dụng", 2);
-        CATEGORY_MAP.put("tủ lạnh", 2);
-        CATEGORY_MAP.put("máy giặt", 2);
-        CATEGORY_MAP.put("lò vi sóng", 2);
-        CATEGORY_MAP.put("quạt", 2);
-        CATEGORY_MAP.put("nồi cơm", 2);
+        addKeyword("điện gia dụng", 2, PRIORITY_CATEGORY);
+        addKeyword("tủ lạnh", 2, PRIORITY_PRODUCT);
+        addKeyword("máy giặt", 2, PRIORITY_PRODUCT);
+        addKeyword("lò vi sóng", 2, PRIORITY_PRODUCT);
+        addKeyword("nồi cơm", 2, PRIORITY_PRODUCT);
+        addKeyword("quạt", 2, PRIORITY_AMBIGUOUS);
         
         // Group 3: Thời trang
-        CATEGORY_MAP.put("thời trang", 3);
-        CATEGORY_MAP.put("quần áo", 3);
-        CATEGORY_MAP.put("giày", 3);
-        CATEGORY_MAP.put("túi xách", 3);
-        CATEGORY_MAP.put("phụ kiện thời trang", 3);
+        addKeyword("thời trang", 3, PRIORITY_CATEGORY);
+        addKeyword("phụ kiện thời trang", 3, PRIORITY_CATEGORY);
+        addKeyword("quần áo", 3, PRIORITY_PRODUCT);
+        addKeyword("túi xách", 3, PRIORITY_PRODUCT);
+        addKeyword("giày", 3, PRIORITY_AMBIGUOUS);
         
         // Group 4: Làm đẹp
-        CATEGORY_MAP.put("làm đẹp", 4);
-        CATEGORY_MAP.put("mỹ phẩm", 4);
-        CATEGORY_MAP.put("chăm sóc da", 4);
-        CATEGORY_MAP.put("nước hoa", 4);
-        CATEGORY_MAP.put("son", 4);
+        addKeyword("làm đẹp", 4, PRIORITY_CATEGORY);
+        addKeyword("mỹ phẩm", 4, PRIORITY_PRODUCT);
+        addKeyword("chăm sóc da", 4, PRIORITY_PRODUCT);
+        addKeyword("nước hoa", 4, PRIORITY_PRODUCT);
+        addKeyword("son", 4, PRIORITY_AMBIGUOUS);
         
         // Group 5: Sách
-        CATEGORY_MAP.put("sách", 5);
-        CATEGORY_MAP.put("nhà sách", 5);
-        CATEGORY_MAP.put("văn học", 5);
-        CATEGORY_MAP.put("tiểu thuyết", 5);
+        addKeyword("nhà sách", 5, PRIORITY_CATEGORY);
+        addKeyword("văn học", 5, PRIORITY_PRODUCT);
+        addKeyword("tiểu thuyết", 5, PRIORITY_PRODUCT);
+        addKeyword("sách", 5, PRIORITY_AMBIGUOUS);
         
         // Group 6: Đồ chơi
-        CATEGORY_MAP.put("đồ chơi", 6);
-        CATEGORY_MAP.put("mẹ và bé", 6);
-        CATEGORY_MAP.put("đồ chơi trẻ em", 6);
+        addKeyword("đồ chơi", 6, PRIORITY_CATEGORY);
+        addKeyword("mẹ và bé", 6, PRIORITY_CATEGORY);
+        addKeyword("đồ chơi trẻ em", 6, PRIORITY_PRODUCT);
         
         // Group 7: Thể thao
-        CATEGORY_MAP.put("thể thao", 7);
-        CATEGORY_MAP.put("dụng cụ thể thao", 7);
-        CATEGORY_MAP.put("gym", 7);
-        CATEGORY_MAP.put("yoga", 7);
+        addKeyword("thể thao", 7, PRIORITY_CATEGORY);
+        addKeyword("dụng cụ thể thao", 7, PRIORITY_PRODUCT);
+        addKeyword("yoga", 7, PRIORITY_PRODUCT);
+        addKeyword("gym", 7, PRIORITY_AMBIGUOUS);
         
         // Group 8: Sản phẩm mới (default)
     }
     
+    private static void addKeyword(String keyword, int groupId, int priority) {
+        DEFAULT_KEYWORDS.add(new CategoryClassifier.Keyword(keyword, groupId, priority));
+    }
+    
+    // Compiled automaton; swapped atomically on reload
+    private static volatile CategoryClassifier categoryClassifier =
+            CategoryClassifier.build(DEFAULT_KEYWORDS, DEFAULT_GROUP_ID);
+    
+    /**
+     * Point the scraper at another product API, e.g. a MockTikiServer
+     * @param base Base URL ending in /products/ (a missing trailing slash is added), or null for tiki.vn
+     */
+    public static void setApiBase(String base) {
+        apiBase = withTrailingSlash(base != null ? base : DEFAULT_TIKI_API_BASE);
+    }
+    
+    public static String getApiBase() {
+        return apiBase;
+    }
+    
+    private static String withTrailingSlash(String base) {
+        return base.endsWith("/") ? base : base + "/";
+    }
+    
     /**
      * Extract product ID from Tiki URL
      * @param tikiUrl URL like https://tiki.vn/...p12345.html
@@ -89,7 +125,26 @@ public class TikiScraperUtil {
         }
         return -1;
     }
-    
+
+    /**
+     * Normalize a Tiki URL to a stable key, so tracking params (?spid=..., utm_...)
+     * and case differences map to the same product
+     * @param tikiUrl URL like https://tiki.vn/...p12345.html?spid=1
+     * @return "tiki:<id>" when the product ID is present, otherwise the trimmed lowercase URL without query
+     */
+    public static String normalizeUrl(String tikiUrl) {
+        if (tikiUrl == null) {
+            return "";
+        }
+        int productId = extractProductId(tikiUrl);
+        if (productId != -1) {
+            return "tiki:" + productId;
+        }
+        String url = tikiUrl.trim().toLowerCase();
+        int queryStart = url.indexOf('?');
+        return queryStart >= 0 ? url.substring(0, queryStart) : url;
+    }
+
     /**
      * Scrape product data from Tiki API
      * @param tikiUrl The Tiki product URL
@@ -103,39 +158,21 @@ public class TikiScraperUtil {
         }
         
         try {
-            String apiUrl = TIKI_API_BASE + productId;
-            URL url = new URL(apiUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
-                System.err.println("Tiki API returned code: " + responseCode);
+            TikiProductPayload payload = fetchProduct(productId);
+            if (payload == null) {
                 return null;
             }
             
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-            in.close();
-            
-            // Parse JSON response
-            JSONObject json = new JSONObject(response.toString());
-            
             Product product = new Product();
-            product.setName(json.optString("name", "Unknown Product"));
-            product.setBrand(json.optString("brand_name", ""));
+            product.setName(payload.getName() != null ? payload.getName() : "Unknown Product");
+            product.setBrand(payload.getBrandName() != null ? payload.getBrandName() : "");
             product.setUrl(tikiUrl);
-            product.setImageUrl(json.optString("thumbnail_url", ""));
-            product.setDescription(json.optString("short_description", ""));
+            product.setImageUrl(payload.getThumbnailUrl() != null ? payload.getThumbnailUrl() : "");
+            product.setDescription(payload.getShortDescription() != null ? payload.getShortDescription() : "");
             product.setSource("Tiki");
             
             // Map category to group_id
-            String category = extractCategory(json);
+            String category = payload.getCategoryName() != null ? payload.getCategoryName().toLowerCase() : "";
             product.setGroupId(mapCategoryToGroupId(category));
             
             return product;
@@ -160,30 +197,14 @@ public class TikiScraperUtil {
         }
         
         try {
-            String apiUrl = TIKI_API_BASE + productId;
-            URL url = new URL(apiUrl);
-            HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("User-Agent", "Mozilla/5.0");
-            
-            int responseCode = conn.getResponseCode();
-            if (responseCode != 200) {
+            TikiProductPayload payload = fetchProduct(productId);
+            if (payload == null) {
                 return null;
             }
             
-            BufferedReader in = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-            StringBuilder response = new StringBuilder();
-            String line;
-            while ((line = in.readLine()) != null) {
-                response.append(line);
-            }
-            in.close();
-            
-            JSONObject json = new JSONObject(response.toString());
-            
-            double price = json.optDouble("price", 0.0);
-            double originalPrice = json.optDouble("original_price", price);
-            String dealType = extractDealType(json);
+            double price = payload.getPrice() != null ? payload.getPrice() : 0.0;
+            double originalPrice = payload.getOriginalPrice() != null ? payload.getOriginalPrice() : price;
+            String dealType = extractDealType(payload);
             
             return new Object[]{price, originalPrice, dealType};
             
@@ -194,77 +215,65 @@ public class TikiScraperUtil {
     }
     
     /**
-     * Extract category from Tiki JSON response
+     * Call the Tiki product API and stream-parse only the fields we use
+     * The body (description HTML, specs, images...) is never held in memory as a whole.
+     * @param productId Tiki product ID
+     * @return Parsed fields, or null if the API did not answer 200
      */
-    private static String extractCategory(JSONObject json) {
-        try {
-            // Try to get from breadcrumbs or categories
-            if (json.has("breadcrumbs")) {
-                JSONArray breadcrumbs = json.getJSONArray("breadcrumbs");
-                if (breadcrumbs.length() > 0) {
-                    JSONObject firstCategory = breadcrumbs.getJSONObject(0);
-                    return firstCategory.optString("name", "").toLowerCase();
-                }
-            }
-            
-            // Fallback to category field
-            if (json.has("category")) {
-                JSONObject category = json.getJSONObject("category");
-                return category.optString("name", "").toLowerCase();
-            }
-            
-        } catch (Exception e) {
-            // Ignore parsing errors
+    private static TikiProductPayload fetchProduct(int productId) throws IOException {
+        String apiUrl = apiBase + productId;
+        URL url = new URL(apiUrl);
+        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+        conn.setRequestMethod("GET");
+        conn.setRequestProperty("User-Agent", "Mozilla/5.0");
+        
+        int responseCode = conn.getResponseCode();
+        if (responseCode != 200) {
+            System.err.println("Tiki API returned code: " + responseCode);
+            return null;
         }
         
-        return "";
+        try (Reader in = new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8)) {
+            return TikiProductJsonReader.parse(in);
+        }
     }
     
     /**
-     * Extract deal type from badges
+     * Extract deal type from badges, as a price_interval.deal_type value (see DealTypes)
      */
-    private static String extractDealType(JSONObject json) {
-        try {
-            if (json.has("badges")) {
-                JSONArray badges = json.getJSONArray("badges");
-                for (int i = 0; i < badges.length(); i++) {
-                    JSONObject badge = badges.getJSONObject(i);
-                    String code = badge.optString("code", "");
-                    if (code.equals("flash_sale")) {
-                        return "Flash Sale";
-                    } else if (code.equals("deal_1")) {
-                        return "Deal HOT";
-                    } else if (code.equals("freeship")) {
-                        return "Freeship";
-                    }
-                }
+    private static String extractDealType(TikiProductPayload payload) {
+        for (String code : payload.getBadgeCodes()) {
+            if (code.equals("flash_sale")) {
+                return DealTypes.FLASH_SALE;
+            } else if (code.equals("deal_1")) {
+                return DealTypes.HOT_DEAL;
             }
-        } catch (Exception e) {
-            // Ignore
         }
         
-        return "Normal";
+        return DealTypes.NORMAL;
     }
     
     /**
      * Map category string to group_id
+     * Single pass over the category via the compiled keyword automaton; overlapping hits
+     * are resolved by priority, then longest keyword (see CategoryClassifier)
      * @param category Category name from Tiki
      * @return group_id (1-8, default 8 for "Sản phẩm mới")
      */
     public static int mapCategoryToGroupId(String category) {
-        if (category == null || category.isEmpty()) {
-            return 8; // Sản phẩm mới
-        }
-        
-        String lowerCategory = category.toLowerCase();
-        
-        // Check each keyword in CATEGORY_MAP
-        for (Map.Entry<String, Integer> entry : CATEGORY_MAP.entrySet()) {
-            if (lowerCategory.contains(entry.getKey())) {
-                return entry.getValue();
-            }
+        return categoryClassifier.classify(category);
+    }
+    
+    /**
+     * Replace the category keywords, e.g. with rows loaded from product_group_keyword
+     * @param keywords Keyword rules; when empty the built-in keywords stay in use
+     * @return Number of keywords now active
+     */
+    public static int reloadCategoryKeywords(List<CategoryClassifier.Keyword> keywords) {
+        if (keywords == null || keywords.isEmpty()) {
+            return categoryClassifier.getKeywordCount();
         }
-        
-        return 8; // Default: Sản phẩm mới
+        categoryClassifier = CategoryClassifier.build(keywords, DEFAULT_GROUP_ID);
+        return categoryClassifier.getKeywordCount();
     }
 }
@@ -0,0 +1,434 @@
+package com.pricetracker.server.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Size-bounded in-process cache with W-TinyLFU admission and eviction
+ *
+ * Entries are weighed (e.g. payload bytes) and the cache keeps the total weight under a limit:
+ * - new entries land in a small LRU "window" (1% of the weight) so bursts of fresh keys get a chance
+ * - entries leaving the window only enter the main area if they are used more often than the
+ *   main area's eviction victim, according to a count-min frequency sketch
+ * - the main area is a segmented LRU: probation, and protected (80%) for entries hit at least twice
+ * A one-off scan over many keys therefore cannot flush out the frequently used ones.
+ *
+ * Each entry also expires after a fixed TTL, and entries can be dropped by group (e.g. every cached
+ * variant of one product) when the underlying data changes. An entry may belong to extra groups given
+ * on put (e.g. the product group whose prices it also shows). Loads that started before such an
+ * invalidation are refused on put (see {@link #stamp()}), so a slow load cannot re-insert stale data.
+ *
+ * All operations take one lock; they only touch a few map entries, so the lock is held briefly.
+ *
+ * @param <K> Cache key
+ * @param <V> Cached value (shared between callers, so treat it as read-only)
+ */
+public class TinyLfuCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    // Remembered group invalidations before the list is reset (see isStale)
+    private static final int MAX_TRACKED_INVALIDATIONS = 4096;
+
+    private final String name;
+    private final long maxWeight;
+    private final long windowMaxWeight;
+    private final long protectedMaxWeight;
+    private final long ttlNanos;
+    private final ToIntFunction<V> weigher;
+    private final Function<K, Object> groupOf;
+
+    private final Map<K, Node<K, V>> data = new HashMap<>();
+    // Insertion-ordered: head = least recently used, re-inserted on access to move to the tail
+    private final LinkedHashMap<K, Node<K, V>> window = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K, V>> probation = new LinkedHashMap<>();
+    private final LinkedHashMap<K, Node<K, V>> protectedSegment = new LinkedHashMap<>();
+    private final long[] segmentWeights = new long[3];
+    private final Map<Object, Set<K>> groups = new HashMap<>();
+    private final FrequencySketch<K> sketch;
+
+    // Invalidation sequence for stamp()/put()
+    private long sequence;
+    private long staleBefore;
+    private final Map<Object, Long> invalidatedAt = new HashMap<>();
+
+    private long hits;
+    private long misses;
+    private long puts;
+    private long evictions;
+    private long rejections;
+    private long expirations;
+    private long invalidations;
+    private long stalePuts;
+
+    /**
+     * @param name Name shown in stats
+     * @param maxWeight Upper bound for the sum of entry weights
+     * @param expectedEntries Rough number of entries that fit (sizes the frequency sketch)
+     * @param ttlMs Time to live of each entry after it was put
+     * @param weigher Weight of a value (e.g. its size in bytes)
+     * @param groupOf Invalidation group of a key (e.g. its product ID)
+     */
+    public TinyLfuCache(String name, long maxWeight, int expectedEntries, long ttlMs,
+                        ToIntFunction<V> weigher, Function<K, Object> groupOf) {
+        this.name = name;
+        this.maxWeight = maxWeight;
+        this.windowMaxWeight = Math.max(1, maxWeight / 100);
+        this.protectedMaxWeight = (maxWeight - windowMaxWeight) * 8 / 10;
+        this.ttlNanos = ttlMs * 1_000_000L;
+        this.weigher = weigher;
+        this.groupOf = groupOf;
+        this.sketch = new FrequencySketch<>(expectedEntries);
+    }
+
+    /**
+     * @return The cached value, or null if absent or expired
+     */
+    public synchronized V get(K key) {
+        sketch.increment(key);
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        if (System.nanoTime() - node.expiresAt > 0) {
+            remove(node);
+            expirations++;
+            misses++;
+            return null;
+        }
+        hits++;
+        onHit(node);
+        return node.value;
+    }
+
+    /**
+     * Take a stamp before loading a value, then pass it to put()
+     */
+    public synchronized long stamp() {
+        return sequence;
+    }
+
+    /**
+     * Cache a value loaded after stamp() was taken
+     * Refused if the key's group was invalidated since the stamp, or if the value alone is heavier than the cache.
+     * @return true if the value was stored
+     */
+    public synchronized boolean put(K key, V value, long stamp) {
+        return put(key, value, stamp, new Object[0]);
+    }
+
+    /**
+     * Like {@link #put(Object, Object, long)}, with extra invalidation groups for this entry
+     * (refused if any of them was invalidated since the stamp)
+     */
+    public synchronized boolean put(K key, V value, long stamp, Object... extraGroups) {
+        Object[] entryGroups = new Object[extraGroups.length + 1];
+        entryGroups[0] = groupOf.apply(key);
+        System.arraycopy(extraGroups, 0, entryGroups, 1, extraGroups.length);
+        for (Object group : entryGroups) {
+            if (isStale(group, stamp)) {
+                stalePuts++;
+                return false;
+            }
+        }
+        int weight = weigher.applyAsInt(value);
+        if (weight > maxWeight) {
+            rejections++;
+            return false;
+        }
+        puts++;
+
+        Node<K, V> node = data.get(key);
+        if (node != null && !Arrays.equals(node.groups, entryGroups)) {
+            remove(node);
+            node = null;
+        }
+        if (node != null) {
+            segmentWeights[node.segment] += weight - node.weight;
+            node.value = value;
+            node.weight = weight;
+            node.expiresAt = System.nanoTime() + ttlNanos;
+            onHit(node);
+        } else {
+            node = new Node<>(key, value, weight, entryGroups, System.nanoTime() + ttlNanos);
+            data.put(key, node);
+            for (Object group : entryGroups) {
+                groups.computeIfAbsent(group, g -> new HashSet<>()).add(key);
+            }
+            link(node, WINDOW);
+        }
+        evict();
+        return true;
+    }
+
+    /**
+     * Drop every entry of a group and refuse puts of loads that started before now
+     */
+    public synchronized void invalidateGroup(Object group) {
+        sequence++;
+        if (invalidatedAt.size() >= MAX_TRACKED_INVALIDATIONS) {
+            // Forget individual groups: anything stamped before now is treated as stale
+            invalidatedAt.clear();
+            staleBefore = sequence;
+        }
+        invalidatedAt.put(group, sequence);
+
+        Set<K> keys = groups.get(group);
+        if (keys == null) {
+            return;
+        }
+        for (K key : new ArrayList<>(keys)) {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                remove(node);
+                invalidations++;
+            }
+        }
+    }
+
+    /**
+     * Drop everything
+     */
+    public synchronized void clear() {
+        sequence++;
+        invalidatedAt.clear();
+        staleBefore = sequence;
+        data.clear();
+        window.clear();
+        probation.clear();
+        protectedSegment.clear();
+        groups.clear();
+        segmentWeights[WINDOW] = segmentWeights[PROBATION] = segmentWeights[PROTECTED] = 0;
+    }
+
+    private boolean isStale(Object group, long stamp) {
+        if (stamp < staleBefore) {
+            return true;
+        }
+        Long at = invalidatedAt.get(group);
+        return at != null && at > stamp;
+    }
+
+    private void onHit(Node<K, V> node) {
+        switch (node.segment) {
+            case WINDOW:
+                relink(node, WINDOW);
+                break;
+            case PROBATION:
+                // Second use: promote, demoting protected LRU entries back to probation if it overflows
+                relink(node, PROTECTED);
+                while (segmentWeights[PROTECTED] > protectedMaxWeight && protectedSegment.size() > 1) {
+                    Node<K, V> demoted = protectedSegment.values().iterator().next();
+                    relink(demoted, PROBATION);
+                }
+                break;
+            default:
+                relink(node, PROTECTED);
+                break;
+        }
+    }
+
+    private void evict() {
+        // Window overflow moves its LRU entries into probation, where they compete for admission
+        Node<K, V> candidate = null;
+        while (segmentWeights[WINDOW] > windowMaxWeight && window.size() > 1) {
+            candidate = window.values().iterator().next();
+            relink(candidate, PROBATION);
+        }
+
+        while (totalWeight() > maxWeight) {
+            Node<K, V> victim = head(probation);
+            if (victim == null) {
+                victim = head(protectedSegment);
+            }
+            if (victim == null) {
+                victim = head(window);
+            }
+
+            if (candidate != null && candidate != victim && data.containsKey(candidate.key)
+                    && candidate.segment == PROBATION
+                    && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                // Newcomer is used no more often than the entry it would replace - keep the incumbent
+                remove(candidate);
+                rejections++;
+                candidate = null;
+                continue;
+            }
+            if (victim == candidate) {
+                candidate = null;
+            }
+            remove(victim);
+            evictions++;
+        }
+    }
+
+    private long totalWeight() {
+        return segmentWeights[WINDOW] + segmentWeights[PROBATION] + segmentWeights[PROTECTED];
+    }
+
+    private Node<K, V> head(LinkedHashMap<K, Node<K, V>> segment) {
+        Iterator<Node<K, V>> it = segment.values().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    private LinkedHashMap<K, Node<K, V>> segment(int segment) {
+        switch (segment) {
+            case WINDOW:
+                return window;
+            case PROBATION:
+                return probation;
+            default:
+                return protectedSegment;
+        }
+    }
+
+    private void link(Node<K, V> node, int segment) {
+        node.segment = segment;
+        segment(segment).put(node.key, node);
+        segmentWeights[segment] += node.weight;
+    }
+
+    private void unlink(Node<K, V> node) {
+        segment(node.segment).remove(node.key);
+        segmentWeights[node.segment] -= node.weight;
+    }
+
+    private void relink(Node<K, V> node, int segment) {
+        unlink(node);
+        link(node, segment);
+    }
+
+    private void remove(Node<K, V> node) {
+        unlink(node);
+        data.remove(node.key);
+        for (Object group : node.groups) {
+            Set<K> keys = groups.get(group);
+            if (keys != null) {
+                keys.remove(node.key);
+                if (keys.isEmpty()) {
+                    groups.remove(group);
+                }
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Counters: hits, misses, hit_rate, evictions, rejections (lost admission or too large),
+     *         expirations, invalidations, stale_puts, entries, weight, max_weight
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        long lookups = hits + misses;
+        stats.put("hit_rate", lookups > 0 ? Math.round(hits * 1000.0 / lookups) / 1000.0 : 0.0);
+        stats.put("puts", puts);
+        stats.put("evictions", evictions);
+        stats.put("rejections", rejections);
+        stats.put("expirations", expirations);
+        stats.put("invalidations", invalidations);
+        stats.put("stale_puts", stalePuts);
+        stats.put("entries", data.size());
+        stats.put("weight", totalWeight());
+        stats.put("max_weight", maxWeight);
+        stats.put("ttl_ms", ttlNanos / 1_000_000L);
+        return stats;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final Object[] groups;
+        V value;
+        int weight;
+        long expiresAt;
+        int segment;
+
+        Node(K key, V value, int weight, Object[] groups, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.groups = groups;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters (4 rows) estimating how often each key was requested
+     * All counters are halved once the number of increments reaches 10x the width, so the
+     * estimate follows recent popularity instead of all-time totals.
+     */
+    private static final class FrequencySketch<K> {
+        private static final int DEPTH = 4;
+        private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+        private final byte[][] counters;
+        private final int mask;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int expectedEntries) {
+            int width = Integer.highestOneBit(Math.max(64, expectedEntries - 1)) << 1;
+            this.counters = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = 10 * width;
+        }
+
+        void increment(K key) {
+            int hash = spread(key.hashCode());
+            for (int row = 0; row < DEPTH; row++) {
+                int index = index(hash, row);
+                if (counters[row][index] < 15) {
+                    counters[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(K key) {
+            int hash = spread(key.hashCode());
+            int min = 15;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, counters[row][index(hash, row)]);
+            }
+            return min;
+        }
+
+        private void reset() {
+            for (byte[] row : counters) {
+                for (int i = 0; i < row.length; i++) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+
+        private int index(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * SEEDS[(row + 1) % DEPTH];
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 16;
+            h *= 0x45D9F3B;
+            return h ^ (h >>> 16);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package com.pricetracker.models;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * PriceRollup - Giá tổng hợp của một sản phẩm theo ngày hoặc theo tuần
+ * (open / close / min / max / trung bình của các lần quan sát trong khoảng thời gian)
+ */
+public class PriceRollup implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final String DAY = "DAY";
+    public static final String WEEK = "WEEK";
+
+    private int productId;
+    private String resolution;
+    private Timestamp bucketStart;
+    private double openPrice;
+    private double closePrice;
+    private double minPrice;
+    private double maxPrice;
+    private double sumPrice;
+    private int sampleCount;
+    private Timestamp closeAt;
+
+    public PriceRollup() {}
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public String getResolution() {
+        return resolution;
+    }
+
+    public void setResolution(String resolution) {
+        this.resolution = resolution;
+    }
+
+    public Timestamp getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Timestamp bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public double getOpenPrice() {
+        return openPrice;
+    }
+
+    public void setOpenPrice(double openPrice) {
+        this.openPrice = openPrice;
+    }
+
+    public double getClosePrice() {
+        return closePrice;
+    }
+
+    public void setClosePrice(double closePrice) {
+        this.closePrice = closePrice;
+    }
+
+    public double getMinPrice() {
+        return minPrice;
+    }
+
+    public void setMinPrice(double minPrice) {
+        this.minPrice = minPrice;
+    }
+
+    public double getMaxPrice() {
+        return maxPrice;
+    }
+
+    public void setMaxPrice(double maxPrice) {
+        this.maxPrice = maxPrice;
+    }
+
+    public double getSumPrice() {
+        return sumPrice;
+    }
+
+    public void setSumPrice(double sumPrice) {
+        this.sumPrice = sumPrice;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public void setSampleCount(int sampleCount) {
+        this.sampleCount = sampleCount;
+    }
+
+    public Timestamp getCloseAt() {
+        return closeAt;
+    }
+
+    public void setCloseAt(Timestamp closeAt) {
+        this.closeAt = closeAt;
+    }
+
+    /**
+     * Giá trung bình của các lần quan sát trong khoảng
+     */
+    public double getAvgPrice() {
+        return sampleCount > 0 ? sumPrice / sampleCount : closePrice;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceRollup{" +
+                "productId=" + productId +
+                ", resolution='" + resolution + '\'' +
+                ", bucketStart=" + bucketStart +
+                ", open=" + openPrice +
+                ", close=" + closePrice +
+                ", min=" + minPrice +
+                ", max=" + maxPrice +
+                ", samples=" + sampleCount +
+                '}';
+    }
+}
@@ -18,6 +18,7 @@ public class ProductData implements Serializable {
     private PriceHistory currentPrice;
     private double averageRating;
     private int totalReviews;
+    private ReviewAggregate reviewAggregate;
     
     /**
      * Constructor mặc định
@@ -100,6 +101,19 @@ public class ProductData implements Serializable {
         this.totalReviews = totalReviews;
     }
     
+    public ReviewAggregate getReviewAggregate() {
+        return reviewAggregate;
+    }
+    
+    /**
+     * Gán thống kê review có sẵn từ server - khi đó reviews chỉ là một trang review gần nhất
+     * và điểm trung bình / tổng số lấy từ thống kê thay vì tính lại từ danh sách
+     */
+    public void setReviewAggregate(ReviewAggregate reviewAggregate) {
+        this.reviewAggregate = reviewAggregate;
+        calculateAverageRating();
+    }
+    
     // Helper methods
     
     /**
@@ -144,7 +158,10 @@ public class ProductData implements Serializable {
      * Tính điểm đánh giá trung bình từ danh sách review
      */
     private void calculateAverageRating() {
-        if (reviews != null && !reviews.isEmpty()) {
+        if (reviewAggregate != null) {
+            this.averageRating = reviewAggregate.getAverageRating();
+            this.totalReviews = reviewAggregate.getReviewCount();
+        } else if (reviews != null && !reviews.isEmpty()) {
             double sum = 0;
             for (Review review : reviews) {
                 sum += review.getRating();
@@ -0,0 +1,176 @@
+package com.pricetracker.models;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * ProductSummary - Bản tóm tắt sản phẩm dùng cho các danh sách (tìm kiếm, giảm giá, sản phẩm tương tự)
+ * Chỉ gồm các trường mà thẻ sản phẩm hiển thị: không có description, kèm sẵn tên nhóm và giá hiện tại
+ * nên mỗi danh sách chỉ cần một truy vấn.
+ * Product đầy đủ chỉ dùng cho trang chi tiết.
+ */
+public class ProductSummary implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int productId;
+    private int groupId;
+    private String groupName;
+    private String name;
+    private String brand;
+    private String url;
+    private String imageUrl;
+    private String source;
+
+    // Giá hiện tại (khoảng giá mới nhất); hasPrice = false nếu sản phẩm chưa có giá
+    private boolean hasPrice;
+    private double price;
+    private double originalPrice;
+    private String currency;
+    private String dealType;
+    private Timestamp priceSince;  // valid_from của khoảng giá hiện tại
+
+    public ProductSummary() {
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getGroupId() {
+        return groupId;
+    }
+
+    public void setGroupId(int groupId) {
+        this.groupId = groupId;
+    }
+
+    public String getGroupName() {
+        return groupName;
+    }
+
+    public void setGroupName(String groupName) {
+        this.groupName = groupName;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public String getBrand() {
+        return brand;
+    }
+
+    public void setBrand(String brand) {
+        this.brand = brand;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getImageUrl() {
+        return imageUrl;
+    }
+
+    public void setImageUrl(String imageUrl) {
+        this.imageUrl = imageUrl;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public boolean hasPrice() {
+        return hasPrice;
+    }
+
+    public void setHasPrice(boolean hasPrice) {
+        this.hasPrice = hasPrice;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public void setPrice(double price) {
+        this.price = price;
+    }
+
+    public double getOriginalPrice() {
+        return originalPrice;
+    }
+
+    public void setOriginalPrice(double originalPrice) {
+        this.originalPrice = originalPrice;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public void setCurrency(String currency) {
+        this.currency = currency;
+    }
+
+    public String getDealType() {
+        return dealType;
+    }
+
+    public void setDealType(String dealType) {
+        this.dealType = dealType;
+    }
+
+    public Timestamp getPriceSince() {
+        return priceSince;
+    }
+
+    public void setPriceSince(Timestamp priceSince) {
+        this.priceSince = priceSince;
+    }
+
+    /**
+     * Tỉ lệ giảm giá (0..1, không làm tròn) - dùng để xếp hạng
+     */
+    public double getDiscountRatio() {
+        if (!hasPrice || originalPrice <= price || originalPrice <= 0) {
+            return 0;
+        }
+        return (originalPrice - price) / originalPrice;
+    }
+
+    /**
+     * Phần trăm giảm giá (làm tròn), 0 nếu không giảm
+     */
+    public int getDiscountPercent() {
+        if (!hasPrice || originalPrice <= price || originalPrice <= 0) {
+            return 0;
+        }
+        return (int) Math.round(((originalPrice - price) / originalPrice) * 100);
+    }
+
+    @Override
+    public String toString() {
+        return "ProductSummary{" +
+                "productId=" + productId +
+                ", name='" + name + '\'' +
+                ", price=" + price +
+                ", originalPrice=" + originalPrice +
+                '}';
+    }
+}
@@ -0,0 +1,85 @@
+package com.pricetracker.models;
+
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * ReviewAggregate - Thống kê review của một sản phẩm
+ * (số lượng, tổng điểm, phân bố 1-5 sao, ngày review mới nhất)
+ * Được cập nhật dần mỗi khi thêm review, nên không cần duyệt lại toàn bộ review để tính.
+ */
+public class ReviewAggregate implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int productId;
+    private int reviewCount;
+    private double ratingSum;
+    private int[] starCounts = new int[5];  // starCounts[0] = số review 1 sao, ... starCounts[4] = 5 sao
+    private Timestamp latestReviewDate;
+
+    public ReviewAggregate() {
+    }
+
+    public ReviewAggregate(int productId) {
+        this.productId = productId;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public void setProductId(int productId) {
+        this.productId = productId;
+    }
+
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public void setReviewCount(int reviewCount) {
+        this.reviewCount = reviewCount;
+    }
+
+    public double getRatingSum() {
+        return ratingSum;
+    }
+
+    public void setRatingSum(double ratingSum) {
+        this.ratingSum = ratingSum;
+    }
+
+    /**
+     * Số review có số sao = stars (1..5)
+     */
+    public int getStarCount(int stars) {
+        return starCounts[stars - 1];
+    }
+
+    public void setStarCount(int stars, int count) {
+        starCounts[stars - 1] = count;
+    }
+
+    public Timestamp getLatestReviewDate() {
+        return latestReviewDate;
+    }
+
+    public void setLatestReviewDate(Timestamp latestReviewDate) {
+        this.latestReviewDate = latestReviewDate;
+    }
+
+    /**
+     * Điểm trung bình, 0 nếu chưa có review
+     */
+    public double getAverageRating() {
+        return reviewCount > 0 ? ratingSum / reviewCount : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ReviewAggregate{" +
+                "productId=" + productId +
+                ", reviewCount=" + reviewCount +
+                ", averageRating=" + getAverageRating() +
+                '}';
+    }
+}
@@ -17,6 +17,9 @@ javac -encoding UTF-8 -d bin -cp "lib/*;../shared/src" ^
     src/com/pricetracker/server/crypto/*.java ^
     src/com/pricetracker/server/core/*.java ^
     src/com/pricetracker/server/handler/*.java ^
+    src/com/pricetracker/server/ingest/*.java ^
+    src/com/pricetracker/server/deals/*.java ^
+    src/com/pricetracker/server/live/*.java ^
     ../shared/src/com/pricetracker/models/*.java
 
 if %errorlevel% neq 0 (